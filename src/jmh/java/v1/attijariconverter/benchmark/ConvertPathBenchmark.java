@@ -0,0 +1,112 @@
+package v1.attijariconverter.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.xml.sax.InputSource;
+import v1.attijariconverter.model.MXMessage;
+import v1.attijariconverter.service.ConversionService;
+import v1.attijariconverter.service.MXParsingService;
+import v1.attijariconverter.service.Pain001StaxParser;
+import v1.attijariconverter.service.XSDValidationService;
+
+import java.io.StringReader;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chemin /api/conversion/convert hors cache et hors historique: ingestion du pain.001, génération MT101,
+ * validation du MT101 (méthodes privées de ConversionService appelées via MethodHandle).
+ *  - singlePass: ingestion actuelle (ConversionService.validateAndConvert), validation XSD et parsing
+ *    dans la même lecture SAX
+ *  - twoPass: ingestion d'origine, validatePain001 puis parsing séparé du document
+ * Avec xsd=false, twoPass reproduit le chemin d'avant la validation XSD stricte (contrôle DOM + String.contains).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class ConvertPathBenchmark {
+
+    private static final MethodHandle GENERATE_MT101;
+    private static final MethodHandle VALIDATE_MT101;
+
+    static {
+        try {
+            Method generate = ConversionService.class.getDeclaredMethod("generateMT101Message", MXMessage.class, List.class);
+            generate.setAccessible(true);
+            GENERATE_MT101 = MethodHandles.lookup().unreflect(generate);
+            Method validate = ConversionService.class.getDeclaredMethod("validateMT101Structure", String.class, List.class);
+            validate.setAccessible(true);
+            VALIDATE_MT101 = MethodHandles.lookup().unreflect(validate);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Param({"1", "100", "10000"})
+    public int transactions;
+
+    @Param({"true", "false"})
+    public boolean xsd;
+
+    private ConversionService conversionService;
+    private XSDValidationService validationService;
+    private MXParsingService parsingService;
+    private String xml;
+
+    @Setup
+    public void setUp() throws Throwable {
+        validationService = new XSDValidationService();
+        ReflectionTestUtils.setField(validationService, "xsdEnabled", xsd);
+        validationService.loadSchema();
+        parsingService = new MXParsingService();
+        conversionService = new ConversionService();
+        ReflectionTestUtils.setField(conversionService, "receiverBic", "BMCEMAMCXXX");
+        ReflectionTestUtils.setField(conversionService, "block2Suffix", "N");
+        ReflectionTestUtils.setField(conversionService, "parallelThreshold", 5000);
+        ReflectionTestUtils.setField(conversionService, "parallelChunkSize", 1000);
+        ReflectionTestUtils.setField(conversionService, "splitMaxChars", 10000);
+        ReflectionTestUtils.setField(conversionService, "splitMaxTransactions", 0);
+        xml = Pain001Fixtures.generate(transactions);
+        if (singlePass() == null || twoPass() == null) {
+            throw new IllegalStateException("Fixture pain.001 invalide");
+        }
+    }
+
+    @Benchmark
+    public String singlePass() throws Throwable {
+        MXMessage message = new MXMessage();
+        XSDValidationService.ValidationResult validation = validationService.validateAndParse(
+                new InputSource(new StringReader(xml)), new Pain001StaxParser(), message, message::addPaymentInstruction);
+        return validation.isValid() ? convert(message) : null;
+    }
+
+    @Benchmark
+    public String twoPass() throws Throwable {
+        XSDValidationService.ValidationResult validation = validationService.validatePain001(xml);
+        return validation.isValid() ? convert(parsingService.parseMXMessage(xml)) : null;
+    }
+
+    private String convert(MXMessage message) throws Throwable {
+        List<String> validationErrors = new ArrayList<>();
+        String mt101 = (String) GENERATE_MT101.invokeExact(conversionService, message, validationErrors);
+        boolean valid = (boolean) VALIDATE_MT101.invokeExact(conversionService, mt101, validationErrors);
+        return valid ? mt101 : null;
+    }
+}
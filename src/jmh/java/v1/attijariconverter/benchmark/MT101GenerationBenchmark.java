@@ -0,0 +1,74 @@
+package v1.attijariconverter.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+import v1.attijariconverter.model.MXMessage;
+import v1.attijariconverter.service.ConversionService;
+import v1.attijariconverter.service.MXParsingService;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Génération du texte MT101 à partir d'un MXMessage déjà parsé (ConversionService.generateMT101Message, privée:
+ * appelée via un MethodHandle), avec la configuration par défaut d'application.properties
+ * (Séquences B parallèles au-delà de 5000 transactions, découpage à 10000 caractères de bloc 4).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class MT101GenerationBenchmark {
+
+    private static final MethodHandle GENERATE_MT101;
+
+    static {
+        try {
+            Method method = ConversionService.class.getDeclaredMethod("generateMT101Message", MXMessage.class, List.class);
+            method.setAccessible(true);
+            GENERATE_MT101 = MethodHandles.lookup().unreflect(method);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Param({"1", "100", "10000", "100000"})
+    public int transactions;
+
+    private ConversionService service;
+    private MXMessage message;
+
+    @Setup
+    public void setUp() throws Exception {
+        service = new ConversionService();
+        ReflectionTestUtils.setField(service, "receiverBic", "BMCEMAMCXXX");
+        ReflectionTestUtils.setField(service, "block2Suffix", "N");
+        ReflectionTestUtils.setField(service, "parallelThreshold", 5000);
+        ReflectionTestUtils.setField(service, "parallelChunkSize", 1000);
+        ReflectionTestUtils.setField(service, "splitMaxChars", 10000);
+        ReflectionTestUtils.setField(service, "splitMaxTransactions", 0);
+        message = new MXParsingService().parseMXMessage(Pain001Fixtures.generate(transactions));
+    }
+
+    @Benchmark
+    public String generateMT101Message() throws Throwable {
+        List<String> validationErrors = new ArrayList<>();
+        return (String) GENERATE_MT101.invokeExact(service, message, validationErrors);
+    }
+}
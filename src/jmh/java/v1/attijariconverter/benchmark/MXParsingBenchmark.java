@@ -0,0 +1,55 @@
+package v1.attijariconverter.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+import v1.attijariconverter.model.MXMessage;
+import v1.attijariconverter.service.MXParsingService;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing pain.001 -> MXMessage (MXParsingService.parseMXMessage) en mode StAX (une passe) et DOM (historique).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class MXParsingBenchmark {
+
+    @Param({"1", "100", "10000", "100000"})
+    public int transactions;
+
+    @Param({"stax", "dom"})
+    public String parserMode;
+
+    private MXParsingService service;
+    private String xml;
+
+    @Setup
+    public void setUp() throws Exception {
+        service = new MXParsingService();
+        ReflectionTestUtils.setField(service, "parserMode", parserMode);
+        xml = Pain001Fixtures.generate(transactions);
+        MXMessage parsed = service.parseMXMessage(xml);
+        if (parsed == null || parsed.getPaymentInstructions().size() != transactions) {
+            throw new IllegalStateException("Parsing de la fixture pain.001 incomplet");
+        }
+    }
+
+    @Benchmark
+    public MXMessage parseMXMessage() throws Exception {
+        return service.parseMXMessage(xml);
+    }
+}
@@ -0,0 +1,47 @@
+package v1.attijariconverter.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import v1.attijariconverter.model.MXMessage;
+import v1.attijariconverter.service.MXParsingService;
+import v1.attijariconverter.service.MXToMTConversionService;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping MXMessage -> MT101 via l'objet intermédiaire MTMessage (MXToMTConversionService.convertMXToMT101).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class MXToMTConversionBenchmark {
+
+    @Param({"1", "100", "10000", "100000"})
+    public int transactions;
+
+    private MXToMTConversionService service;
+    private MXMessage message;
+
+    @Setup
+    public void setUp() throws Exception {
+        service = new MXToMTConversionService();
+        message = new MXParsingService().parseMXMessage(Pain001Fixtures.generate(transactions));
+    }
+
+    @Benchmark
+    public String convertMXToMT101() {
+        return service.convertMXToMT101(message);
+    }
+}
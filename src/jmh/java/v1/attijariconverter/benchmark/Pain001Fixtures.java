@@ -0,0 +1,89 @@
+package v1.attijariconverter.benchmark;
+
+/**
+ * Génère des fichiers pain.001.001.03 conformes au XSD (même forme que test_pain001_complet.xml)
+ * avec un nombre arbitraire de transactions, pour alimenter les benchmarks.
+ */
+public final class Pain001Fixtures {
+
+    private static final String[] CREDITOR_BICS = {"BMCEMAMC", "CIHBMAMC", "SGMBMAMC", "BCPOMAMC"};
+    private static final String[] CHARGE_BEARERS = {"SHAR", "DEBT", "CRED", "SLEV"};
+
+    private Pain001Fixtures() {
+    }
+
+    /**
+     * @param transactions nombre de &lt;CdtTrfTxInf&gt; (un seul &lt;PmtInf&gt;)
+     */
+    public static String generate(int transactions) {
+        StringBuilder xml = new StringBuilder(1024 + transactions * 900);
+        String ctrlSum = transactions * 100 + ".00";
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+           .append("<Document xmlns=\"urn:iso:std:iso:20022:tech:xsd:pain.001.001.03\">\n")
+           .append("    <CstmrCdtTrfInitn>\n")
+           .append("        <GrpHdr>\n")
+           .append("            <MsgId>MSGBENCH").append(transactions).append("</MsgId>\n")
+           .append("            <CreDtTm>2025-08-12T14:30:00</CreDtTm>\n")
+           .append("            <NbOfTxs>").append(transactions).append("</NbOfTxs>\n")
+           .append("            <CtrlSum>").append(ctrlSum).append("</CtrlSum>\n")
+           .append("            <InitgPty>\n")
+           .append("                <Nm>Attijariwafa Bank</Nm>\n")
+           .append("            </InitgPty>\n")
+           .append("        </GrpHdr>\n")
+           .append("        <PmtInf>\n")
+           .append("            <PmtInfId>PMTBENCH").append(transactions).append("</PmtInfId>\n")
+           .append("            <PmtMtd>TRF</PmtMtd>\n")
+           .append("            <NbOfTxs>").append(transactions).append("</NbOfTxs>\n")
+           .append("            <CtrlSum>").append(ctrlSum).append("</CtrlSum>\n")
+           .append("            <ReqdExctnDt>2025-08-13</ReqdExctnDt>\n")
+           .append("            <Dbtr>\n")
+           .append("                <Nm>Entreprise ABC SARL</Nm>\n")
+           .append("            </Dbtr>\n")
+           .append("            <DbtrAcct>\n")
+           .append("                <Id>\n")
+           .append("                    <IBAN>MA64011519000001205000000161</IBAN>\n")
+           .append("                </Id>\n")
+           .append("                <Ccy>MAD</Ccy>\n")
+           .append("            </DbtrAcct>\n")
+           .append("            <DbtrAgt>\n")
+           .append("                <FinInstnId>\n")
+           .append("                    <BIC>ATIJMAMC</BIC>\n")
+           .append("                </FinInstnId>\n")
+           .append("            </DbtrAgt>\n");
+
+        for (int i = 1; i <= transactions; i++) {
+            String n = String.format("%06d", i);
+            xml.append("            <CdtTrfTxInf>\n")
+               .append("                <PmtId>\n")
+               .append("                    <InstrId>INSTR").append(n).append("</InstrId>\n")
+               .append("                    <EndToEndId>E2E").append(n).append("</EndToEndId>\n")
+               .append("                </PmtId>\n")
+               .append("                <Amt>\n")
+               .append("                    <InstdAmt Ccy=\"MAD\">100.00</InstdAmt>\n")
+               .append("                </Amt>\n")
+               .append("                <ChrgBr>").append(CHARGE_BEARERS[i % CHARGE_BEARERS.length]).append("</ChrgBr>\n")
+               .append("                <CdtrAgt>\n")
+               .append("                    <FinInstnId>\n")
+               .append("                        <BIC>").append(CREDITOR_BICS[i % CREDITOR_BICS.length]).append("</BIC>\n")
+               .append("                    </FinInstnId>\n")
+               .append("                </CdtrAgt>\n")
+               .append("                <Cdtr>\n")
+               .append("                    <Nm>Fournisseur ").append(n).append(" SARL</Nm>\n")
+               .append("                </Cdtr>\n")
+               .append("                <CdtrAcct>\n")
+               .append("                    <Id>\n")
+               .append("                        <IBAN>MA640070070000000000").append(String.format("%08d", i)).append("</IBAN>\n")
+               .append("                    </Id>\n")
+               .append("                </CdtrAcct>\n")
+               .append("                <RmtInf>\n")
+               .append("                    <Ustrd>Paiement facture FAC-").append(n).append("</Ustrd>\n")
+               .append("                </RmtInf>\n")
+               .append("            </CdtTrfTxInf>\n");
+        }
+
+        xml.append("        </PmtInf>\n")
+           .append("    </CstmrCdtTrfInitn>\n")
+           .append("</Document>\n");
+        return xml.toString();
+    }
+}
@@ -0,0 +1,56 @@
+package v1.attijariconverter.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+import v1.attijariconverter.service.XSDValidationService;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare validatePain001 en mode XSD strict (schéma compilé + Validator par thread, StreamSource)
+ * au contrôle historique (DOM + String.contains), sur des fichiers de taille croissante.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class XSDValidationBenchmark {
+
+    @Param({"1", "100", "10000", "100000"})
+    public int transactions;
+
+    @Param({"true", "false"})
+    public boolean xsd;
+
+    private XSDValidationService service;
+    private String xml;
+
+    @Setup
+    public void setUp() {
+        service = new XSDValidationService();
+        ReflectionTestUtils.setField(service, "xsdEnabled", xsd);
+        service.loadSchema();
+        xml = Pain001Fixtures.generate(transactions);
+        XSDValidationService.ValidationResult result = service.validatePain001(xml);
+        if (!result.isValid()) {
+            throw new IllegalStateException("Fixture pain.001 invalide: " + result.getErrors());
+        }
+    }
+
+    @Benchmark
+    public XSDValidationService.ValidationResult validatePain001() {
+        return service.validatePain001(xml);
+    }
+}
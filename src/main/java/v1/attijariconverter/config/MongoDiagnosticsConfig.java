@@ -0,0 +1,67 @@
+package v1.attijariconverter.config;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.BsonValue;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import v1.attijariconverter.service.ConversionFlightEvents;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Diagnostic des accès MongoDB: chaque commande envoyée par le driver (repositories, MongoTemplate, GridFS)
+ * est émise en événement JFR (ConversionFlightEvents.MongoCommandEvent) pendant une recording.
+ * Hors recording, le listener se limite à un test par commande.
+ */
+@Configuration
+public class MongoDiagnosticsConfig {
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer flightRecorderCommandListener() {
+        return builder -> builder.addCommandListener(new FlightRecorderCommandListener());
+    }
+
+    /** Associe le début et la fin de chaque commande (requestId) à un événement JFR. */
+    static class FlightRecorderCommandListener implements CommandListener {
+
+        private final Map<Integer, ConversionFlightEvents.MongoCommandEvent> inFlight = new ConcurrentHashMap<>();
+
+        @Override
+        public void commandStarted(CommandStartedEvent started) {
+            if (!ConversionFlightEvents.mongoCommandEnabled()) return;
+            ConversionFlightEvents.MongoCommandEvent event = new ConversionFlightEvents.MongoCommandEvent();
+            event.command = started.getCommandName();
+            event.database = started.getDatabaseName();
+            BsonValue target = started.getCommand().get(started.getCommandName());
+            event.collection = target != null && target.isString() ? target.asString().getValue() : null;
+            event.requestId = started.getRequestId();
+            event.begin();
+            inFlight.put(started.getRequestId(), event);
+        }
+
+        @Override
+        public void commandSucceeded(CommandSucceededEvent succeeded) {
+            commit(succeeded.getRequestId(), true);
+        }
+
+        @Override
+        public void commandFailed(CommandFailedEvent failed) {
+            commit(failed.getRequestId(), false);
+        }
+
+        private void commit(int requestId, boolean success) {
+            ConversionFlightEvents.MongoCommandEvent event = inFlight.remove(requestId);
+            if (event == null) return;
+            event.end();
+            if (event.shouldCommit()) {
+                event.success = success;
+                event.commit();
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package v1.attijariconverter.config;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.core.userdetails.User;
@@ -35,6 +36,10 @@ public class SecurityConfig {
                 .requestMatchers("/css/**", "/images/**", "/js/**", "/static/**").permitAll()
                 // API REST ouvertes (attention: exposées sans authentification)
                 .requestMatchers("/api/**").permitAll()
+                // Supervision: santé publique; métriques Prometheus réservées aux administrateurs
+                // (scraping en HTTP Basic), les autres endpoints Actuator restent authentifiés
+                .requestMatchers("/actuator/health").permitAll()
+                .requestMatchers("/actuator/prometheus").hasRole("ADMIN")
                 // Page de login accessible
                 .requestMatchers("/login").permitAll()
                 // Toute autre requête nécessite authentification
@@ -44,6 +49,8 @@ public class SecurityConfig {
                 // Désactivation CSRF pour endpoints utilisés via AJAX / appels programme
                 .ignoringRequestMatchers("/api/**", "/convert", "/validate")
             )
+            // HTTP Basic pour les clients non interactifs (scraping Prometheus)
+            .httpBasic(Customizer.withDefaults())
             .formLogin((form) -> form
                 .loginPage("/login")
                 .permitAll()
@@ -0,0 +1,91 @@
+package v1.attijariconverter.controller;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+import v1.attijariconverter.service.FlightRecorderService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+/**
+ * Endpoints d'administration de diagnostic: recording JDK Flight Recorder (voir FlightRecorderService).
+ * Réservé aux utilisateurs ROLE_ADMIN (contrôle effectué manuellement dans chaque méthode).
+ */
+@RestController
+@RequestMapping("/api/admin/diagnostics")
+public class AdminDiagnosticsController {
+
+    @Autowired
+    private FlightRecorderService flightRecorderService;
+
+    private boolean isAdmin(Authentication auth){
+        return auth != null && auth.getAuthorities().stream().anyMatch(a -> "ROLE_ADMIN".equals(a.getAuthority()));
+    }
+
+    /** État de la recording JFR. */
+    @GetMapping("/jfr")
+    public ResponseEntity<?> status(){
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if(!isAdmin(auth)) return ResponseEntity.status(403).body("Accès refusé");
+        return ResponseEntity.ok(flightRecorderService.getStatus());
+    }
+
+    /**
+     * Démarre (ou redémarre) la recording JFR.
+     * @param settings réglages JDK: default (permanent) ou profile (plus détaillé, pour une session ciblée)
+     */
+    @PostMapping("/jfr/start")
+    public ResponseEntity<?> start(@RequestParam(value = "settings", defaultValue = "default") String settings){
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if(!isAdmin(auth)) return ResponseEntity.status(403).body("Accès refusé");
+        try {
+            return ResponseEntity.ok(flightRecorderService.start(settings));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        }
+    }
+
+    /** Arrête la recording JFR en cours. */
+    @PostMapping("/jfr/stop")
+    public ResponseEntity<?> stop(){
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if(!isAdmin(auth)) return ResponseEntity.status(403).body("Accès refusé");
+        return ResponseEntity.ok(flightRecorderService.stop());
+    }
+
+    /**
+     * Télécharge le contenu courant de la recording (fichier .jfr pour JDK Mission Control), sans l'arrêter.
+     * Le fichier est copié en flux dans la réponse puis supprimé.
+     */
+    @GetMapping("/jfr/dump")
+    public ResponseEntity<?> dump(HttpServletResponse response) throws IOException {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if(!isAdmin(auth)) return ResponseEntity.status(403).body("Accès refusé");
+        Path file = flightRecorderService.dump();
+        if (file == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Aucune recording JFR en cours");
+        }
+        try {
+            String filename = "attijari-converter_" + LocalDateTime.now().toString().replace(":", "-") + ".jfr";
+            response.setStatus(HttpStatus.OK.value());
+            response.setContentType("application/octet-stream");
+            response.setContentLengthLong(Files.size(file));
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"");
+            Files.copy(file, response.getOutputStream());
+            response.flushBuffer();
+            return null; // réponse déjà écrite
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
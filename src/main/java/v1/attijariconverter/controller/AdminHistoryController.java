@@ -5,6 +5,9 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import v1.attijariconverter.service.ConversionContentStore;
+import v1.attijariconverter.service.ConversionDailyStatsService;
+import v1.attijariconverter.service.ConversionHistoryWriter;
 import v1.attijariconverter.service.ConversionService;
 
 /**
@@ -18,6 +21,15 @@ public class AdminHistoryController {
     @Autowired
     private ConversionService conversionService;
 
+    @Autowired
+    private ConversionDailyStatsService dailyStatsService;
+
+    @Autowired
+    private ConversionContentStore contentStore;
+
+    @Autowired
+    private ConversionHistoryWriter historyWriter;
+
     private boolean isAdmin(Authentication auth){
         return auth != null && auth.getAuthorities().stream().anyMatch(a -> "ROLE_ADMIN".equals(a.getAuthority()));
     }
@@ -58,4 +70,55 @@ public class AdminHistoryController {
         if(ok) return ResponseEntity.ok("Entrée supprimée: " + id);
         return ResponseEntity.status(404).body("Entrée introuvable: " + id);
     }
+
+    /**
+     * Recalcule les compteurs journaliers (conversion_daily_stats) depuis l'historique complet.
+     * À lancer hors charge: les conversions enregistrées pendant le recalcul peuvent être mal comptées.
+     */
+    @PostMapping("/stats/rebuild")
+    public ResponseEntity<?> rebuildStats(){
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if(!isAdmin(auth)) return ResponseEntity.status(403).body("Accès refusé");
+        historyWriter.flush();
+        long count = dailyStatsService.rebuild();
+        return ResponseEntity.ok("Compteurs journaliers reconstruits: " + count + " documents");
+    }
+
+    /**
+     * Volumes des contenus MX / MT stockés: octets d'origine, octets stockés (compressés) et taux de compression.
+     */
+    @GetMapping("/content/stats")
+    public ResponseEntity<?> contentStats(){
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if(!isAdmin(auth)) return ResponseEntity.status(403).body("Accès refusé");
+        return ResponseEntity.ok(contentStore.getCompressionStats());
+    }
+
+    /**
+     * Écriture différée de l'historique: profondeur de la file, entrées écrites / perdues, lots, écritures directes.
+     */
+    @GetMapping("/writer/stats")
+    public ResponseEntity<?> writerStats(){
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if(!isAdmin(auth)) return ResponseEntity.status(403).body("Accès refusé");
+        return ResponseEntity.ok(historyWriter.getStats());
+    }
+
+    /**
+     * Historique des autres utilisateurs, page par curseur (voir GET /api/conversion/history).
+     * Le total (includeTotal) est un comptage sur toute la collection: à ne demander qu'au besoin.
+     */
+    @GetMapping("/others")
+    public ResponseEntity<?> othersHistory(@RequestParam(value = "after", required = false) String after,
+                                           @RequestParam(value = "before", required = false) String before,
+                                           @RequestParam(value = "size", defaultValue = "20") int size,
+                                           @RequestParam(value = "includeTotal", defaultValue = "false") boolean includeTotal){
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if(!isAdmin(auth)) return ResponseEntity.status(403).body("Accès refusé");
+        try {
+            return ResponseEntity.ok(conversionService.getOtherUsersHistoryPage(after, before, Math.min(Math.max(size, 1), 100), includeTotal));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
 }
@@ -1,12 +1,18 @@
 package v1.attijariconverter.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import v1.attijariconverter.service.BatchConversionService;
+import v1.attijariconverter.service.ConversionContentStore;
+import v1.attijariconverter.service.ConversionMetrics;
 import v1.attijariconverter.service.ConversionService;
 import v1.attijariconverter.service.XSDValidationService;
 import v1.attijariconverter.repository.ConversionHistoryRepository;
@@ -14,7 +20,11 @@ import v1.attijariconverter.model.ConversionHistory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -32,15 +42,27 @@ public class ConversionController {
 
     private static final Logger logger = LoggerFactory.getLogger(ConversionController.class);
 
+    /** Taille maximale d'une page d'historique (API). */
+    private static final int MAX_HISTORY_PAGE_SIZE = 100;
+
     @Autowired
     private ConversionService conversionService;
 
     @Autowired
     private XSDValidationService xsdValidationService;
 
+    @Autowired
+    private BatchConversionService batchConversionService;
+
     @Autowired
     private ConversionHistoryRepository conversionHistoryRepository;
 
+    @Autowired
+    private ConversionContentStore contentStore;
+
+    @Autowired
+    private ConversionMetrics conversionMetrics;
+
     /**
      * DTO de réponse conversion.
      * success = true si conversion MT101 aboutie.
@@ -121,8 +143,12 @@ public class ConversionController {
                     .body(new ValidationResponse(false, "Le fichier est vide", null));
             }
 
+            long start = System.nanoTime();
             String content = new String(file.getBytes(), StandardCharsets.UTF_8);
+            conversionMetrics.recordStage(ConversionMetrics.UPLOAD_READ, start);
+            start = System.nanoTime();
             XSDValidationService.ValidationResult result = xsdValidationService.validatePain001(content);
+            conversionMetrics.recordStage(ConversionMetrics.VALIDATE_MX, start);
 
             ValidationResponse response = new ValidationResponse(
                 result.isValid(),
@@ -153,19 +179,14 @@ public class ConversionController {
                     .body(new ConversionResponse(false, null, "Le fichier est vide", null));
             }
 
+            ConversionMetrics.Timings timings = conversionMetrics.start();
+            long start = System.nanoTime();
             String content = new String(file.getBytes(), StandardCharsets.UTF_8);
+            timings.record(ConversionMetrics.UPLOAD_READ, start);
 
-            // Valider d'abord le fichier pain.001
-            XSDValidationService.ValidationResult validationResult = xsdValidationService.validatePain001(content);
-            if (!validationResult.isValid()) {
-                // Journaliser l'échec dans l'historique MongoDB
-                conversionService.saveValidationFailure(content, validationResult.getErrors(), "Fichier pain.001 invalide");
-                return ResponseEntity.badRequest()
-                    .body(new ConversionResponse(false, null, "Fichier pain.001 invalide", validationResult.getErrors()));
-            }
-
-            // Convertir vers MT101
-            ConversionService.ConversionResult conversionResult = conversionService.convertMXToMT101(content);
+            // Valider et convertir en une seule lecture (échec de validation journalisé dans l'historique)
+            ConversionService.ConversionResult conversionResult =
+                conversionService.validateAndConvert(content, "Fichier pain.001 invalide", timings);
 
             ConversionResponse response = new ConversionResponse(
                 conversionResult.isSuccess(),
@@ -189,6 +210,96 @@ public class ConversionController {
         }
     }
 
+    /**
+     * Convertit un fichier pain.001 (multipart) en MT101 en flux continu:
+     * le fichier n'est jamais chargé en mémoire et le MT101 est écrit directement dans la réponse (chunked),
+     * les premiers octets partant avant la lecture de la dernière transaction quand le nombre de messages MT101
+     * est connu d'avance (sinon à la fin de la lecture, voir mx.mt.split.*).
+     * Un rejet détecté avant le premier octet (fichier invalide, aucune transaction) renvoie un 400 JSON comme /convert.
+     * Un échec survenant après le début de l'écriture interrompt la réponse (le client reçoit un flux tronqué).
+     */
+    @PostMapping("/convert/stream")
+    public ResponseEntity<ConversionResponse> convertToMT101Stream(@RequestParam("file") MultipartFile file,
+                                                                   HttpServletResponse response) throws IOException {
+        logger.info("Début de la conversion en flux vers MT101: {}", file.getOriginalFilename());
+
+        if (file.isEmpty()) {
+            return ResponseEntity.badRequest()
+                .body(new ConversionResponse(false, null, "Le fichier est vide", null));
+        }
+
+        String filename = "MT101_" + LocalDateTime.now().toString().replace(":", "-") + ".txt";
+        ConversionService.StreamingConversionResult result;
+        try (InputStream in = file.getInputStream()) {
+            result = conversionService.convertMXToMT101Streaming(in, () -> {
+                response.setStatus(HttpStatus.OK.value());
+                response.setContentType("text/plain; charset=UTF-8");
+                response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"");
+                return response.getOutputStream();
+            });
+        }
+
+        if (result.isOutputStarted()) {
+            if (!result.isSuccess()) {
+                logger.warn("Échec de la conversion en flux après {} transactions: {}", result.getTransactionCount(), result.getErrorMessage());
+                // Réponse déjà engagée: on interrompt le flux plutôt que de livrer un MT101 incomplet comme valide
+                throw new IllegalStateException("Conversion MT101 interrompue: " + result.getErrorMessage());
+            }
+            logger.info("Conversion MT101 en flux réussie: {} transactions, {} octets", result.getTransactionCount(), result.getOutputBytes());
+            return null; // réponse déjà écrite
+        }
+
+        logger.warn("Échec de la conversion en flux: {}", result.getErrorMessage());
+        return ResponseEntity.badRequest()
+            .body(new ConversionResponse(false, null, result.getErrorMessage(), result.getValidationErrors()));
+    }
+
+    /**
+     * Convertit un lot de fichiers pain.001 en parallèle (un historique par fichier).
+     * Accepte plusieurs fichiers et/ou des archives ZIP (seules les entrées .xml sont lues).
+     * @param format json (défaut): résultat combiné, un élément par fichier dans l'ordre d'envoi;
+     *               zip: archive des MT101 (et d'un .errors.txt par fichier en échec)
+     */
+    @PostMapping("/convert/batch")
+    public ResponseEntity<?> convertBatch(@RequestParam("files") List<MultipartFile> files,
+                                          @RequestParam(value = "format", defaultValue = "json") String format,
+                                          HttpServletResponse response) throws IOException {
+        logger.info("Début de la conversion par lot: {} fichiers envoyés", files.size());
+        List<BatchConversionService.BatchItemResult> results;
+        try {
+            BatchConversionService.BatchReader reader = batchConversionService.newReader();
+            for (MultipartFile file : files) {
+                String name = file.getOriginalFilename();
+                if (name != null && name.toLowerCase().endsWith(".zip")) {
+                    try (InputStream in = file.getInputStream()) {
+                        reader.addZip(in);
+                    }
+                } else {
+                    reader.addFile(name, file.getBytes());
+                }
+            }
+            List<BatchConversionService.BatchInput> inputs = reader.getInputs();
+            if (inputs.isEmpty()) {
+                return ResponseEntity.badRequest()
+                    .body(new ConversionResponse(false, null, "Aucun fichier pain.001 dans le lot", null));
+            }
+            results = batchConversionService.convertAll(inputs);
+        } catch (BatchConversionService.BatchRejectedException e) {
+            logger.warn("Lot refusé: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(new ConversionResponse(false, null, e.getMessage(), null));
+        }
+
+        if ("zip".equalsIgnoreCase(format)) {
+            String filename = "MT101_lot_" + LocalDateTime.now().toString().replace(":", "-") + ".zip";
+            response.setStatus(HttpStatus.OK.value());
+            response.setContentType("application/zip");
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"");
+            batchConversionService.writeZip(results, response.getOutputStream());
+            return null; // réponse déjà écrite
+        }
+        return ResponseEntity.ok(results);
+    }
+
     /**
      * Convertit du XML pain.001 envoyé en texte brut (POST body) vers MT101.
      */
@@ -202,17 +313,9 @@ public class ConversionController {
                     .body(new ConversionResponse(false, null, "Le contenu XML est vide", null));
             }
 
-            // Valider d'abord le contenu pain.001
-            XSDValidationService.ValidationResult validationResult = xsdValidationService.validatePain001(xmlContent);
-            if (!validationResult.isValid()) {
-                // Journaliser l'échec dans l'historique MongoDB
-                conversionService.saveValidationFailure(xmlContent, validationResult.getErrors(), "Contenu pain.001 invalide");
-                return ResponseEntity.badRequest()
-                    .body(new ConversionResponse(false, null, "Contenu pain.001 invalide", validationResult.getErrors()));
-            }
-
-            // Convertir vers MT101
-            ConversionService.ConversionResult conversionResult = conversionService.convertMXToMT101(xmlContent);
+            // Valider et convertir en une seule lecture (échec de validation journalisé dans l'historique)
+            ConversionService.ConversionResult conversionResult =
+                conversionService.validateAndConvert(xmlContent, "Contenu pain.001 invalide");
 
             ConversionResponse response = new ConversionResponse(
                 conversionResult.isSuccess(),
@@ -244,26 +347,54 @@ public class ConversionController {
         return ResponseEntity.ok("API de conversion opérationnelle");
     }
 
+    /**
+     * Historique de l'utilisateur courant, page par curseur (du plus récent au plus ancien).
+     * @param after nextCursor d'une page: entrées suivantes (plus anciennes)
+     * @param before previousCursor d'une page: entrées précédentes (plus récentes)
+     * @param includeTotal ajoute totalElements (sinon null)
+     */
+    @GetMapping("/history")
+    public ResponseEntity<?> history(@RequestParam(value = "after", required = false) String after,
+                                     @RequestParam(value = "before", required = false) String before,
+                                     @RequestParam(value = "size", defaultValue = "20") int size,
+                                     @RequestParam(value = "includeTotal", defaultValue = "false") boolean includeTotal) {
+        try {
+            int pageSize = Math.min(Math.max(size, 1), MAX_HISTORY_PAGE_SIZE);
+            return ResponseEntity.ok(conversionService.getConversionHistoryPage(after, before, pageSize, includeTotal));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     /**
      * Télécharge le MT101 précédemment généré (si disponible) pour un historique donné.
+     * Le contenu est lu en flux depuis le stockage GridFS et décompressé à la volée (ou embarqué pour les entrées antérieures).
      * @param id identifiant Mongo de l'historique
      */
     @GetMapping("/history/{id}/download")
-    public ResponseEntity<byte[]> downloadMt101(@PathVariable("id") String id) {
+    public ResponseEntity<Resource> downloadMt101(@PathVariable("id") String id) {
         try {
-            Optional<ConversionHistory> opt = conversionHistoryRepository.findById(id);
+            Optional<ConversionHistory> opt = conversionHistoryRepository.findMtContentById(id);
             if (opt.isEmpty()) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
             }
             ConversionHistory history = opt.get();
-            String content = history.getMtContent();
-            if (content == null || content.isBlank()) {
+            Resource content;
+            long length;
+            Optional<ConversionContentStore.StoredContent> stored = contentStore.open(history.getMtContentHash());
+            if (stored.isPresent()) {
+                // Décompression à la volée pendant l'écriture de la réponse
+                content = new InputStreamResource(stored.get().openStream());
+                length = stored.get().getLength();
+            } else if (history.getMtContent() != null && !history.getMtContent().isBlank()) {
+                byte[] bytes = history.getMtContent().getBytes(StandardCharsets.UTF_8);
+                content = new ByteArrayResource(bytes);
+                length = bytes.length;
+            } else {
                 // Rien à télécharger pour cet historique
                 return ResponseEntity.status(HttpStatus.NO_CONTENT).body(null);
             }
 
-            byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
-
             String baseName = "MT101_" + (history.getConversionDate() != null
                     ? history.getConversionDate().toString().replace(":", "-")
                     : id);
@@ -272,9 +403,9 @@ public class ConversionController {
             HttpHeaders headers = new HttpHeaders();
             headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"");
             headers.add(HttpHeaders.CONTENT_TYPE, "text/plain; charset=UTF-8");
-            headers.setContentLength(bytes.length);
+            headers.setContentLength(length);
 
-            return new ResponseEntity<>(bytes, headers, HttpStatus.OK);
+            return new ResponseEntity<>(content, headers, HttpStatus.OK);
         } catch (Exception e) {
             logger.error("Erreur lors du téléchargement MT101 pour id {}", id, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
@@ -0,0 +1,111 @@
+package v1.attijariconverter.controller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import v1.attijariconverter.service.ConversionJobService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Contrôleur REST des conversions asynchrones (fichiers bulk volumineux):
+ * - POST /api/conversion/jobs : dépôt du fichier, réponse 202 immédiate avec l'identifiant du job
+ * - GET /api/conversion/jobs/{id} : statut et avancement (transactions écrites / NbOfTxs)
+ * - GET /api/conversion/jobs/{id}/result : téléchargement du MT101 une fois le job terminé
+ * Un job n'est visible que de l'utilisateur qui l'a soumis (et des ROLE_ADMIN): 404 pour les autres.
+ * Le thread HTTP n'est occupé que le temps du dépôt; la conversion tourne sur le pool de ConversionJobService.
+ */
+@RestController
+@RequestMapping("/api/conversion/jobs")
+@CrossOrigin(origins = "*")
+public class ConversionJobController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversionJobController.class);
+
+    @Autowired
+    private ConversionJobService conversionJobService;
+
+    /**
+     * Soumet un fichier pain.001 (multipart) à la conversion asynchrone.
+     * 503 si le pool et sa file d'attente sont saturés (le client peut réessayer plus tard).
+     */
+    @PostMapping
+    public ResponseEntity<?> submit(@RequestParam("file") MultipartFile file) {
+        if (file.isEmpty()) {
+            return ResponseEntity.badRequest()
+                .body(new ConversionController.ConversionResponse(false, null, "Le fichier est vide", null));
+        }
+        try {
+            ConversionJobService.ConversionJob job = conversionJobService.submit(file);
+            return ResponseEntity.accepted()
+                .location(URI.create("/api/conversion/jobs/" + job.getId()))
+                .body(job);
+        } catch (RejectedExecutionException e) {
+            logger.warn("Job de conversion refusé (pool saturé): {}", file.getOriginalFilename());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "30")
+                .body(new ConversionController.ConversionResponse(false, null,
+                    "Trop de conversions en cours, réessayez plus tard", null));
+        } catch (IOException e) {
+            logger.error("Erreur lors du dépôt du fichier", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(new ConversionController.ConversionResponse(false, null,
+                    "Erreur lors du dépôt du fichier: " + e.getMessage(), null));
+        }
+    }
+
+    /**
+     * Statut et avancement d'un job (404 si inconnu, expiré ou soumis par un autre utilisateur).
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<ConversionJobService.ConversionJob> getJob(@PathVariable("id") String id) {
+        return conversionJobService.getJob(id)
+            .map(ResponseEntity::ok)
+            .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+    }
+
+    /**
+     * Télécharge le MT101 d'un job terminé avec succès.
+     * 404 si le job est inconnu, expiré ou soumis par un autre utilisateur, 409 s'il est en cours ou en échec (voir son statut).
+     */
+    @GetMapping("/{id}/result")
+    public ResponseEntity<Resource> downloadResult(@PathVariable("id") String id) {
+        Optional<ConversionJobService.ConversionJob> job = conversionJobService.getJob(id);
+        if (job.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        // Le flux est fermé par Spring une fois la réponse écrite (ou le client parti), ce qui libère le job
+        Optional<InputStream> result;
+        try {
+            result = conversionJobService.openResult(job.get());
+        } catch (IOException e) {
+            logger.error("Lecture du résultat du job {} impossible", id, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+        if (result.isEmpty()) {
+            // SUCCESS sans résultat: le job vient d'expirer
+            HttpStatus status = job.get().getStatus() == ConversionJobService.JobStatus.SUCCESS
+                ? HttpStatus.NOT_FOUND : HttpStatus.CONFLICT;
+            return ResponseEntity.status(status).build();
+        }
+        String filename = "MT101_" + job.get().getFinishedAt().toString().replace(":", "-") + ".txt";
+        return ResponseEntity.ok()
+            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+            .contentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8))
+            .contentLength(job.get().getOutputBytes())
+            .body(new InputStreamResource(result.get()));
+    }
+}
@@ -9,8 +9,10 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import v1.attijariconverter.service.ConversionService;
-import org.springframework.data.domain.Page; // ajout
-import v1.attijariconverter.model.ConversionHistory; // ajout
+import v1.attijariconverter.model.ConversionHistoryCursorPage;
+import v1.attijariconverter.model.ConversionStatusCount;
+
+import java.util.function.Supplier;
 
 @Controller
 public class DashboardController {
@@ -19,6 +21,7 @@ public class DashboardController {
     private ConversionService conversionService;
 
     private static final int PAGE_SIZE = 10; // taille page par défaut
+    private static final int FAILED_LIST_SIZE = 50; // échecs récents affichés dans "Rapports & Logs"
 
     private boolean isAdmin(Authentication auth){
         if(auth==null) return false;
@@ -28,21 +31,22 @@ public class DashboardController {
         return false;
     }
 
-    private void populateModel(Model model, int historyPage, int otherUsersPage) {
-        // Historique personnel paginé
-        Page<ConversionHistory> history = conversionService.getConversionHistoryPaginated(historyPage, PAGE_SIZE);
-        model.addAttribute("conversionHistoryPaginated", history.getContent());
-        model.addAttribute("currentHistoryPage", history.getNumber());
-        model.addAttribute("totalHistoryPages", history.getTotalPages());
-        model.addAttribute("totalHistoryElements", history.getTotalElements());
-        model.addAttribute("hasPrevHistory", history.hasPrevious());
-        model.addAttribute("hasNextHistory", history.hasNext());
+    private void populateModel(Model model, String historyAfter, String historyBefore, String otherUsersAfter, String otherUsersBefore) {
+        // Compteurs (pré-agrégés, une requête) & liste bornée des derniers échecs
+        ConversionStatusCount counts = conversionService.getConversionCounts();
+        model.addAttribute("totalConversions", counts.getTotal());
+        model.addAttribute("validConversions", counts.getValid());
+        model.addAttribute("invalidConversions", counts.getError());
+        model.addAttribute("failedConversionsList", conversionService.getInvalidConversions(FAILED_LIST_SIZE));
 
-        // Compteurs & listes dérivées
-        model.addAttribute("totalConversions", conversionService.getTotalConversions());
-        model.addAttribute("validConversions", conversionService.getSuccessfulConversions());
-        model.addAttribute("invalidConversions", conversionService.getFailedConversions());
-        model.addAttribute("failedConversionsList", conversionService.getInvalidConversions());
+        // Historique personnel par curseur (total = compteur déjà lu)
+        ConversionHistoryCursorPage history = historyPage(() ->
+                conversionService.getConversionHistoryPage(historyAfter, historyBefore, PAGE_SIZE, false),
+                () -> conversionService.getConversionHistoryPage(null, null, PAGE_SIZE, false));
+        model.addAttribute("conversionHistoryPaginated", history.getContent());
+        model.addAttribute("historyNextCursor", history.getNextCursor());
+        model.addAttribute("historyPreviousCursor", history.getPreviousCursor());
+        model.addAttribute("totalHistoryElements", counts.getTotal());
 
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         if (auth != null) {
@@ -50,33 +54,46 @@ public class DashboardController {
             boolean admin = isAdmin(auth);
             model.addAttribute("isAdmin", admin);
             if(admin){
-                // Historique des autres utilisateurs paginé
-                Page<ConversionHistory> others = conversionService.getOtherUsersHistoryPaginated(otherUsersPage, PAGE_SIZE);
+                // Historique des autres utilisateurs par curseur (sans total: comptage non borné)
+                ConversionHistoryCursorPage others = historyPage(() ->
+                        conversionService.getOtherUsersHistoryPage(otherUsersAfter, otherUsersBefore, PAGE_SIZE, false),
+                        () -> conversionService.getOtherUsersHistoryPage(null, null, PAGE_SIZE, false));
                 model.addAttribute("otherUsersHistory", others.getContent());
-                model.addAttribute("currentOtherUsersPage", others.getNumber());
-                model.addAttribute("totalOtherUsersPages", others.getTotalPages());
-                model.addAttribute("totalOtherUsersElements", others.getTotalElements());
-                model.addAttribute("hasPrevOtherUsers", others.hasPrevious());
-                model.addAttribute("hasNextOtherUsers", others.hasNext());
+                model.addAttribute("otherUsersNextCursor", others.getNextCursor());
+                model.addAttribute("otherUsersPreviousCursor", others.getPreviousCursor());
                 // Liste des utilisateurs (sélecteur admin)
                 model.addAttribute("allUsers", conversionService.getAllUsers());
             }
         }
     }
 
+    /** Page demandée, ou première page si le curseur de l'URL est invalide. */
+    private static ConversionHistoryCursorPage historyPage(Supplier<ConversionHistoryCursorPage> requested,
+                                                           Supplier<ConversionHistoryCursorPage> firstPage) {
+        try {
+            return requested.get();
+        } catch (IllegalArgumentException e) {
+            return firstPage.get();
+        }
+    }
+
     @GetMapping("/")
     public String dashboard(Model model,
-                             @RequestParam(value = "historyPage", defaultValue = "0") int historyPage,
-                             @RequestParam(value = "otherUsersPage", defaultValue = "0") int otherUsersPage) {
-        populateModel(model, Math.max(historyPage,0), Math.max(otherUsersPage,0));
+                             @RequestParam(value = "historyAfter", required = false) String historyAfter,
+                             @RequestParam(value = "historyBefore", required = false) String historyBefore,
+                             @RequestParam(value = "otherUsersAfter", required = false) String otherUsersAfter,
+                             @RequestParam(value = "otherUsersBefore", required = false) String otherUsersBefore) {
+        populateModel(model, historyAfter, historyBefore, otherUsersAfter, otherUsersBefore);
         return "dashboard";
     }
 
     @GetMapping("/dashboard")
     public String dashboardAlt(Model model,
-                                @RequestParam(value = "historyPage", defaultValue = "0") int historyPage,
-                                @RequestParam(value = "otherUsersPage", defaultValue = "0") int otherUsersPage) {
-        populateModel(model, Math.max(historyPage,0), Math.max(otherUsersPage,0));
+                                @RequestParam(value = "historyAfter", required = false) String historyAfter,
+                                @RequestParam(value = "historyBefore", required = false) String historyBefore,
+                                @RequestParam(value = "otherUsersAfter", required = false) String otherUsersAfter,
+                                @RequestParam(value = "otherUsersBefore", required = false) String otherUsersBefore) {
+        populateModel(model, historyAfter, historyBefore, otherUsersAfter, otherUsersBefore);
         return "dashboard";
     }
 
@@ -8,23 +8,30 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import v1.attijariconverter.model.ConversionHistory;
-import v1.attijariconverter.repository.ConversionHistoryRepository;
+import v1.attijariconverter.model.ConversionStatusCount;
+import v1.attijariconverter.service.ConversionDailyStatsService;
 
 import java.time.LocalDate;
-import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Contrôleur REST fournissant des statistiques journalières filtrées par utilisateur.
  * (Actuellement, l'accès est autorisé à tous selon SecurityConfig, mais la sélection se fait via SecurityContext.)
+ * Les compteurs sont lus sur les compteurs journaliers pré-agrégés (conversion_daily_stats): aucun document d'historique n'est lu.
  */
 @RestController
 @RequestMapping("/api/stats")
 public class StatsController {
 
+    /** Longueur maximale d'une série journalière (environ 10 ans). */
+    private static final int MAX_SERIES_DAYS = 3660;
+
     @Autowired
-    private ConversionHistoryRepository conversionHistoryRepository;
+    private ConversionDailyStatsService dailyStatsService;
 
     /**
      * DTO minimal pour retourner les stats du jour demandé.
@@ -63,6 +70,27 @@ public class StatsController {
         public long getError() { return error; }
     }
 
+    /**
+     * Point de série journalière (graphes): compteurs d'un jour ISO (YYYY-MM-DD).
+     */
+    public static class DailyStats {
+        private String date;
+        private long total;
+        private long valid;
+        private long error;
+
+        public DailyStats(String date, long total, long valid, long error) {
+            this.date = date;
+            this.total = total;
+            this.valid = valid;
+            this.error = error;
+        }
+        public String getDate() { return date; }
+        public long getTotal() { return total; }
+        public long getValid() { return valid; }
+        public long getError() { return error; }
+    }
+
     /**
      * Retourne les statistiques (total / SUCCESS / ERROR) pour l'utilisateur courant sur une date donnée.
      * @param dateStr format ISO (YYYY-MM-DD)
@@ -70,19 +98,8 @@ public class StatsController {
     @GetMapping("/by-date")
     public ResponseEntity<DayStats> getStatsByDate(@RequestParam("date") String dateStr) {
         LocalDate date = LocalDate.parse(dateStr);
-        LocalDateTime start = date.atStartOfDay();
-        LocalDateTime end = start.plusDays(1);
-
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String username = (auth != null && auth.getName() != null) ? auth.getName() : "anonymous";
-
-        List<ConversionHistory> list = conversionHistoryRepository
-                .findByOwnerUsernameAndConversionDateBetween(username, start, end);
-        long total = list.size();
-        long valid = list.stream().filter(h -> "SUCCESS".equalsIgnoreCase(h.getStatus())).count();
-        long error = list.stream().filter(h -> "ERROR".equalsIgnoreCase(h.getStatus())).count();
-
-        return ResponseEntity.ok(new DayStats(total, valid, error));
+        ConversionStatusCount counts = countStatuses(date, date);
+        return ResponseEntity.ok(new DayStats(counts.getTotal(), counts.getValid(), counts.getError()));
     }
 
     @GetMapping("/by-range")
@@ -94,18 +111,50 @@ public class StatsController {
             // Inverser si nécessaire
             LocalDate tmp = from; from = to; to = tmp;
         }
-        LocalDateTime start = from.atStartOfDay();
-        LocalDateTime endExclusive = to.plusDays(1).atStartOfDay();
+        ConversionStatusCount counts = countStatuses(from, to);
+        return ResponseEntity.ok(new RangeStats(counts.getTotal(), counts.getValid(), counts.getError()));
+    }
 
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String username = (auth != null && auth.getName() != null) ? auth.getName() : "anonymous";
+    /**
+     * Série journalière (total / SUCCESS / ERROR) de l'utilisateur courant sur [from, to], un point par jour
+     * (jours sans conversion compris, à zéro), pour les graphes du tableau de bord.
+     */
+    @GetMapping("/series")
+    public ResponseEntity<List<DailyStats>> getDailySeries(@RequestParam("from") String fromStr,
+                                                          @RequestParam("to") String toStr) {
+        LocalDate from = LocalDate.parse(fromStr);
+        LocalDate to = LocalDate.parse(toStr);
+        if (to.isBefore(from)) {
+            LocalDate tmp = from; from = to; to = tmp;
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= MAX_SERIES_DAYS) {
+            return ResponseEntity.badRequest().build();
+        }
 
-        List<ConversionHistory> list = conversionHistoryRepository
-                .findByOwnerUsernameAndConversionDateBetween(username, start, endExclusive);
-        long total = list.size();
-        long valid = list.stream().filter(h -> "SUCCESS".equalsIgnoreCase(h.getStatus())).count();
-        long error = list.stream().filter(h -> "ERROR".equalsIgnoreCase(h.getStatus())).count();
+        List<ConversionStatusCount> buckets = dailyStatsService.countPerDay(currentUsername(), from, to);
+        Map<String, ConversionStatusCount> byDay = new HashMap<>();
+        for (ConversionStatusCount bucket : buckets) {
+            byDay.put(bucket.getId(), bucket);
+        }
 
-        return ResponseEntity.ok(new RangeStats(total, valid, error));
+        List<DailyStats> series = new ArrayList<>();
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            String key = day.toString();
+            ConversionStatusCount bucket = byDay.get(key);
+            series.add(bucket != null
+                    ? new DailyStats(key, bucket.getTotal(), bucket.getValid(), bucket.getError())
+                    : new DailyStats(key, 0, 0, 0));
+        }
+        return ResponseEntity.ok(series);
+    }
+
+    /** Compteurs de l'utilisateur courant du jour from (inclus) au jour to (inclus). */
+    private ConversionStatusCount countStatuses(LocalDate from, LocalDate to) {
+        return dailyStatsService.countRange(currentUsername(), from, to);
+    }
+
+    private String currentUsername() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return (auth != null && auth.getName() != null) ? auth.getName() : "anonymous";
     }
 }
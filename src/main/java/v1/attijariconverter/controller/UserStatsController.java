@@ -6,6 +6,7 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import v1.attijariconverter.service.ConversionService;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -23,6 +24,16 @@ public class UserStatsController {
         return ResponseEntity.ok(users);
     }
 
+    /** Compteurs d'utilisateurs distincts: actifs, avec au moins un succès, avec au moins une erreur. */
+    @GetMapping("/summary")
+    public ResponseEntity<Map<String, Long>> getUsersSummary() {
+        Map<String, Long> summary = new LinkedHashMap<>();
+        summary.put("activeUsers", conversionService.getTotalActiveUsers());
+        summary.put("usersWithSuccess", conversionService.getTotalUsersWithSuccess());
+        summary.put("usersWithErrors", conversionService.getTotalUsersWithErrors());
+        return ResponseEntity.ok(summary);
+    }
+
     @GetMapping("/{username}/stats")
     public ResponseEntity<Map<String, Object>> getUserStatistics(@PathVariable String username) {
         Map<String, Object> stats = conversionService.getUserStatistics(username);
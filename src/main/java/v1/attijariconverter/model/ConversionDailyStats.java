@@ -0,0 +1,29 @@
+package v1.attijariconverter.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Compteurs pré-agrégés des conversions d'un utilisateur sur un jour (collection conversion_daily_stats).
+ * Un document par (ownerUsername, day), incrémenté ($inc) à chaque entrée d'historique enregistrée:
+ * les statistiques se lisent sur ces documents, sans parcourir conversion_history.
+ */
+@Document(collection = "conversion_daily_stats")
+@CompoundIndex(name = "owner_day", def = "{ 'ownerUsername': 1, 'day': 1 }", unique = true)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversionDailyStats {
+    @Id
+    private String id;
+
+    private String ownerUsername; // Propriétaire des conversions comptées
+    private String day; // Jour ISO yyyy-MM-dd (fuseau de la JVM, comme conversionDate)
+    private long total;
+    private long valid; // status SUCCESS
+    private long error; // status ERROR
+}
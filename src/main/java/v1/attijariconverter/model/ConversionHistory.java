@@ -5,16 +5,29 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Document MongoDB traçant chaque tentative de conversion.
  * Regroupe métadonnées techniques (tailles, dates, status) et fonctionnelles (identifiants paiements).
+ * Index (créés au démarrage par ConversionHistoryIndexService): listings par propriétaire / statut triés par date,
+ * requêtes globales par date, références GridFS (suppression des contenus orphelins). _id départage les dates égales
+ * des pages par curseur (conversionDate, _id).
  */
 @Document(collection = "conversion_history")
+@CompoundIndexes({
+        @CompoundIndex(name = "owner_date", def = "{ 'ownerUsername': 1, 'conversionDate': -1, '_id': -1 }"),
+        @CompoundIndex(name = "owner_status_date", def = "{ 'ownerUsername': 1, 'status': 1, 'conversionDate': -1 }"),
+        @CompoundIndex(name = "status_date", def = "{ 'status': 1, 'conversionDate': -1 }"),
+        @CompoundIndex(name = "conversion_date", def = "{ 'conversionDate': -1, '_id': -1 }")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -30,7 +43,8 @@ public class ConversionHistory {
     private Long outputSize; // Taille contenu cible (caractères)
     private String errorMessage; // Message fonctionnel si échec
     private String inputFilename; // Nom fichier uploadé si disponible
-    private Long processingTimeMs; // Durée traitement (optionnel)
+    private Long processingTimeMs; // Durée traitement, historisation comprise
+    private Map<String, Long> stageDurationsMicros; // Durée par étape (µs), voir ConversionMetrics
 
     // Fichiers / noms générés
     private String originalFileName; // Nom initial
@@ -38,6 +52,12 @@ public class ConversionHistory {
     private ValidationStatus mxValidationStatus; // Statut validation MX
     private ValidationStatus mtValidationStatus; // Statut validation MT
 
+    // Contenus: stockés dans GridFS (ConversionContentStore), référencés par empreinte SHA-256
+    @Indexed(name = "mx_content_hash", sparse = true)
+    private String mxContentHash; // XML original
+    @Indexed(name = "mt_content_hash", sparse = true)
+    private String mtContentHash; // Message MT généré
+    // Contenus embarqués des entrées antérieures au stockage GridFS (lecture seule)
     private String mxContent; // XML original (peut être volumineux)
     private String mtContent; // Message MT généré
 
@@ -0,0 +1,24 @@
+package v1.attijariconverter.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Page d'historique obtenue par curseur (keyset): entrées, curseurs des pages voisines (null en bout de listing)
+ * et total d'entrées, calculé seulement s'il est demandé (null sinon).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversionHistoryCursorPage {
+    private List<ConversionHistorySummary> content;
+    private String nextCursor; // entrées plus anciennes (paramètre after)
+    private String previousCursor; // entrées plus récentes (paramètre before)
+    private Long totalElements;
+
+    public boolean isHasNext() { return nextCursor != null; }
+    public boolean isHasPrevious() { return previousCursor != null; }
+}
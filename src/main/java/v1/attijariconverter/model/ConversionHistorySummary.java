@@ -0,0 +1,54 @@
+package v1.attijariconverter.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Vue "liste" d'une entrée de conversion_history: toutes les métadonnées, sans les contenus
+ * mxContent / mtContent (XML et MT101 potentiellement volumineux, jamais affichés dans les listes).
+ * Le contenu MT101 se charge à la demande (téléchargement) ; mtContentAvailable indique s'il existe.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversionHistorySummary {
+    @Id
+    private String id;
+
+    private LocalDateTime conversionDate;
+    private String status; // SUCCESS ou ERROR
+    private String inputFormat;
+    private String outputFormat;
+    private Long inputSize;
+    private Long outputSize;
+    private String errorMessage;
+    private String inputFilename;
+    private Long processingTimeMs;
+    private Map<String, Long> stageDurationsMicros;
+
+    private String originalFileName;
+    private String convertedFileName;
+    private ValidationStatus mxValidationStatus;
+    private ValidationStatus mtValidationStatus;
+
+    private List<String> mxValidationErrors;
+    private List<String> mtValidationErrors;
+
+    private String messageId;
+    private String creationDateTime;
+    private String numberOfTransactions;
+    private String controlSum;
+    private String debtorName;
+    private String debtorAccount;
+    private String requestedExecutionDate;
+
+    private String ownerUsername;
+
+    private boolean mtContentAvailable; // MT101 stocké et téléchargeable (calculé par la requête)
+}
@@ -0,0 +1,21 @@
+package v1.attijariconverter.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+
+/**
+ * Résultat d'agrégation MongoDB des compteurs de conversions (conversion_daily_stats): nombre de conversions par statut.
+ * id = clé de regroupement (jour "yyyy-MM-dd" pour une série journalière, null pour un total de période).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversionStatusCount {
+    @Id
+    private String id;
+    private long total;
+    private long valid; // status SUCCESS
+    private long error; // status ERROR
+}
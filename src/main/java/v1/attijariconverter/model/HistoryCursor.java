@@ -0,0 +1,52 @@
+package v1.attijariconverter.model;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position dans un listing d'historique trié par (conversionDate, id) décroissants: pagination par curseur
+ * (keyset), le coût d'une page ne dépend pas de sa position. Transmis aux clients sous forme opaque (Base64 URL).
+ */
+public final class HistoryCursor {
+
+    private final LocalDateTime conversionDate;
+    private final String id;
+
+    public HistoryCursor(LocalDateTime conversionDate, String id) {
+        this.conversionDate = conversionDate;
+        this.id = id;
+    }
+
+    /** Curseur positionné sur une entrée de listing. */
+    public static HistoryCursor of(ConversionHistorySummary entry) {
+        return new HistoryCursor(entry.getConversionDate(), entry.getId());
+    }
+
+    /**
+     * Décode un curseur transmis par un client (null ou vide: pas de curseur).
+     * @throws IllegalArgumentException si le curseur est invalide
+     */
+    public static HistoryCursor decode(String token) {
+        if (token == null || token.isBlank()) return null;
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = value.indexOf('|');
+            if (separator <= 0 || separator == value.length() - 1) {
+                throw new IllegalArgumentException("Curseur invalide: " + token);
+            }
+            return new HistoryCursor(LocalDateTime.parse(value.substring(0, separator)), value.substring(separator + 1));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Curseur invalide: " + token, e);
+        }
+    }
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((conversionDate + "|" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public LocalDateTime getConversionDate() { return conversionDate; }
+    public String getId() { return id; }
+}
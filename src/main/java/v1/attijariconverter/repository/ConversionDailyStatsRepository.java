@@ -0,0 +1,55 @@
+package v1.attijariconverter.repository;
+
+import org.springframework.data.mongodb.repository.Aggregation;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+import v1.attijariconverter.model.ConversionDailyStats;
+import v1.attijariconverter.model.ConversionStatusCount;
+
+import java.util.List;
+
+/**
+ * Repository Spring Data Mongo pour la collection conversion_daily_stats (compteurs journaliers par utilisateur).
+ * Les lectures additionnent les documents correspondants: quelques documents par utilisateur et par jour au plus.
+ * Les incréments ($inc en upsert) passent par ConversionDailyStatsService.
+ */
+@Repository
+public interface ConversionDailyStatsRepository extends MongoRepository<ConversionDailyStats, String> {
+
+    /** Total / SUCCESS / ERROR d'un utilisateur, tous jours confondus (null si aucune conversion). */
+    @Aggregation(pipeline = {
+            "{ '$match': { 'ownerUsername': ?0 } }",
+            "{ '$group': { '_id': null, 'total': { '$sum': '$total' }, 'valid': { '$sum': '$valid' }, 'error': { '$sum': '$error' } } }"
+    })
+    ConversionStatusCount sumByOwnerUsername(String ownerUsername);
+
+    /** Total / SUCCESS / ERROR d'un utilisateur du jour fromDay au jour toDay inclus (null si aucune conversion). */
+    @Aggregation(pipeline = {
+            "{ '$match': { 'ownerUsername': ?0, 'day': { '$gte': ?1, '$lte': ?2 } } }",
+            "{ '$group': { '_id': null, 'total': { '$sum': '$total' }, 'valid': { '$sum': '$valid' }, 'error': { '$sum': '$error' } } }"
+    })
+    ConversionStatusCount sumByOwnerUsernameAndDayRange(String ownerUsername, String fromDay, String toDay);
+
+    /** Compteurs par jour d'un utilisateur sur [fromDay, toDay], jours sans conversion absents, tri chronologique. */
+    @Aggregation(pipeline = {
+            "{ '$match': { 'ownerUsername': ?0, 'day': { '$gte': ?1, '$lte': ?2 } } }",
+            "{ '$group': { '_id': '$day', 'total': { '$sum': '$total' }, 'valid': { '$sum': '$valid' }, 'error': { '$sum': '$error' } } }",
+            "{ '$sort': { '_id': 1 } }"
+    })
+    List<ConversionStatusCount> sumByOwnerUsernamePerDay(String ownerUsername, String fromDay, String toDay);
+
+    /**
+     * Utilisateurs ayant au moins une conversion comptée (id = ownerUsername, sans propriétaire exclus) et leurs
+     * totaux SUCCESS / ERROR, tri alphabétique: un document par utilisateur, quel que soit le volume de l'historique.
+     */
+    @Aggregation(pipeline = {
+            "{ '$match': { 'total': { '$gt': 0 }, 'ownerUsername': { '$nin': [ null, '' ] } } }",
+            "{ '$group': { '_id': '$ownerUsername', 'total': { '$sum': '$total' }, 'valid': { '$sum': '$valid' }, 'error': { '$sum': '$error' } } }",
+            "{ '$sort': { '_id': 1 } }"
+    })
+    List<ConversionStatusCount> sumPerOwnerUsername();
+
+    long deleteByOwnerUsername(String ownerUsername);
+
+    long deleteByOwnerUsernameIsNull();
+}
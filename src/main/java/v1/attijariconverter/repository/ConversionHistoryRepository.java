@@ -1,21 +1,23 @@
 package v1.attijariconverter.repository;
 
+import org.springframework.data.mongodb.repository.Aggregation;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Repository;
 import v1.attijariconverter.model.ConversionHistory;
+import v1.attijariconverter.model.ConversionDailyStats;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Repository Spring Data Mongo pour la collection conversion_history.
  * Méthodes dérivées générées automatiquement par convention de nommage.
+ * Les listings destinés à l'affichage passent par ConversionHistoryRepositoryCustom (sans mxContent / mtContent).
  */
 @Repository
-public interface ConversionHistoryRepository extends MongoRepository<ConversionHistory, String> {
+public interface ConversionHistoryRepository extends MongoRepository<ConversionHistory, String>, ConversionHistoryRepositoryCustom {
 
     /** Trouve toutes les conversions entre deux instants (tous utilisateurs). */
     List<ConversionHistory> findByConversionDateBetween(LocalDateTime start, LocalDateTime end);
@@ -26,21 +28,6 @@ public interface ConversionHistoryRepository extends MongoRepository<ConversionH
     /** 10 dernières conversions globales. */
     List<ConversionHistory> findTop10ByOrderByConversionDateDesc();
 
-    /** Conversions d'un utilisateur (tri descendant). */
-    List<ConversionHistory> findByOwnerUsernameOrderByConversionDateDesc(String ownerUsername);
-
-    /** Conversions d'un utilisateur filtrées par status. */
-    List<ConversionHistory> findByOwnerUsernameAndStatusOrderByConversionDateDesc(String ownerUsername, String status);
-
-    /** 10 dernières conversions d'un utilisateur. */
-    List<ConversionHistory> findTop10ByOwnerUsernameOrderByConversionDateDesc(String ownerUsername);
-
-    /** Conversions d'un utilisateur sur intervalle temporel. */
-    List<ConversionHistory> findByOwnerUsernameAndConversionDateBetween(String ownerUsername, LocalDateTime start, LocalDateTime end);
-
-    /** Historique de tous les autres utilisateurs (vue admin). */
-    List<ConversionHistory> findByOwnerUsernameNotOrderByConversionDateDesc(String ownerUsername);
-
     /** Suppression massive par owner. */
     long deleteByOwnerUsername(String ownerUsername);
 
@@ -50,29 +37,39 @@ public interface ConversionHistoryRepository extends MongoRepository<ConversionH
     /** Recherche des entrées orphelines (diagnostic / migration). */
     List<ConversionHistory> findByOwnerUsernameIsNull();
 
-    // Méthodes de pagination ajoutées
-    Page<ConversionHistory> findByOwnerUsername(String ownerUsername, Pageable pageable);
-
-    Page<ConversionHistory> findByOwnerUsernameNot(String ownerUsername, Pageable pageable);
+    // Lectures unitaires sans les contenus volumineux (listings: voir ConversionHistoryRepositoryCustom)
+    /** Entrée sans mxContent / mtContent (métadonnées, statut, erreurs). */
+    @Query(value = "{ '_id': ?0 }", fields = "{ 'mxContent': 0, 'mtContent': 0 }")
+    Optional<ConversionHistory> findWithoutContentById(String id);
 
-    // Méthodes pour statistiques admin
-    @Query(value = "{}", count = true)
-    long countDistinctOwnerUsername();
-
-    @Query(value = "{'status': ?0}", count = true)
-    long countDistinctOwnerUsernameByStatus(String status);
-
-    // Nouvelles méthodes pour les statistiques par utilisateur
-    @Query(value = "{}", fields = "{ 'ownerUsername' : 1, '_id' : 0 }")
-    List<ConversionHistory> findAllWithUsernameOnly();
+    /** Référence du MT101 d'une entrée (téléchargement): empreinte GridFS, contenu embarqué des anciennes entrées, date. */
+    @Query(value = "{ '_id': ?0 }", fields = "{ 'mtContentHash': 1, 'mtContent': 1, 'conversionDate': 1 }")
+    Optional<ConversionHistory> findMtContentById(String id);
 
+    // Statistiques par utilisateur (utilisateurs distincts: ConversionDailyStatsService.getActiveUsers)
     long countByOwnerUsername(String ownerUsername);
 
-    long countByOwnerUsernameAndStatus(String ownerUsername, String status);
+    /** Nombre d'entrées des autres utilisateurs (total de la vue admin). */
+    long countByOwnerUsernameNot(String ownerUsername);
 
-    List<ConversionHistory> findTop5ByOwnerUsernameOrderByConversionDateDesc(String ownerUsername);
+    long countByOwnerUsernameAndStatus(String ownerUsername, String status);
 
     long countByOwnerUsernameAndConversionDateBetween(String ownerUsername, LocalDateTime start, LocalDateTime end);
 
     long countByOwnerUsernameAndStatusAndConversionDateBetween(String ownerUsername, String status, LocalDateTime start, LocalDateTime end);
+
+    /**
+     * Recalcul des compteurs journaliers (reconstruction de conversion_daily_stats): total / SUCCESS / ERROR
+     * par (ownerUsername, jour dans le fuseau timezone), seuls les compteurs sortent de MongoDB.
+     */
+    @Aggregation(pipeline = {
+            "{ '$match': { 'conversionDate': { '$ne': null } } }",
+            "{ '$group': { '_id': { 'ownerUsername': '$ownerUsername',"
+                    + " 'day': { '$dateToString': { 'format': '%Y-%m-%d', 'date': '$conversionDate', 'timezone': ?0 } } },"
+                    + " 'total': { '$sum': 1 },"
+                    + " 'valid': { '$sum': { '$cond': [ { '$eq': [ { '$toUpper': '$status' }, 'SUCCESS' ] }, 1, 0 ] } },"
+                    + " 'error': { '$sum': { '$cond': [ { '$eq': [ { '$toUpper': '$status' }, 'ERROR' ] }, 1, 0 ] } } } }",
+            "{ '$project': { '_id': 0, 'ownerUsername': '$_id.ownerUsername', 'day': '$_id.day', 'total': 1, 'valid': 1, 'error': 1 } }"
+    })
+    List<ConversionDailyStats> aggregateDailyStats(String timezone);
 }
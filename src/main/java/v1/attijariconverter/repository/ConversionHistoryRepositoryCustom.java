@@ -0,0 +1,25 @@
+package v1.attijariconverter.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.query.Criteria;
+import v1.attijariconverter.model.ConversionHistoryCursorPage;
+import v1.attijariconverter.model.ConversionHistorySummary;
+import v1.attijariconverter.model.HistoryCursor;
+
+import java.util.List;
+
+/**
+ * Requêtes de listing de conversion_history sans les contenus MX / MT (implémentées par ConversionHistoryRepositoryImpl).
+ */
+public interface ConversionHistoryRepositoryCustom {
+
+    /** Entrées correspondant au critère, triées / bornées selon pageable (Pageable.unpaged(sort) pour tout lire). */
+    List<ConversionHistorySummary> findSummaries(Criteria criteria, Pageable pageable);
+
+    /**
+     * Page d'entrées correspondant au critère, triées par (conversionDate, id) décroissants, à partir d'un curseur:
+     * after = entrées plus anciennes que le curseur, before = plus récentes, aucun = première page.
+     * Le total n'est pas calculé (totalElements null).
+     */
+    ConversionHistoryCursorPage findSummarySlice(Criteria criteria, HistoryCursor after, HistoryCursor before, int size);
+}
@@ -0,0 +1,98 @@
+package v1.attijariconverter.repository;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import v1.attijariconverter.model.ConversionHistory;
+import v1.attijariconverter.model.ConversionHistoryCursorPage;
+import v1.attijariconverter.model.ConversionHistorySummary;
+import v1.attijariconverter.model.HistoryCursor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Listings de conversion_history en agrégation: $match / $sort / $skip / $limit, puis calcul de
+ * mtContentAvailable et exclusion de mxContent / mtContent côté MongoDB (les contenus ne transitent jamais).
+ * Pages d'historique par curseur (keyset) sur (conversionDate, _id): ni $skip ni comptage, coût constant quelle que soit la page.
+ */
+public class ConversionHistoryRepositoryImpl implements ConversionHistoryRepositoryCustom {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Override
+    public List<ConversionHistorySummary> findSummaries(Criteria criteria, Pageable pageable) {
+        List<AggregationOperation> operations = new ArrayList<>();
+        operations.add(Aggregation.match(criteria));
+        if (pageable.getSort().isSorted()) {
+            operations.add(Aggregation.sort(pageable.getSort()));
+        }
+        if (pageable.isPaged()) {
+            operations.add(Aggregation.skip(pageable.getOffset()));
+            operations.add(Aggregation.limit(pageable.getPageSize()));
+        }
+        // Sur les seuls documents retenus: indicateur de présence du MT101 (GridFS ou embarqué), puis retrait des contenus
+        operations.add(context -> new Document("$addFields", new Document("mtContentAvailable", new Document("$or", List.of(
+                new Document("$gt", Arrays.asList("$mtContentHash", null)),
+                new Document("$gt", Arrays.asList("$mtContent", null)))))));
+        operations.add(Aggregation.project().andExclude("mxContent", "mtContent"));
+        return mongoTemplate.aggregate(Aggregation.newAggregation(operations),
+                ConversionHistory.class, ConversionHistorySummary.class).getMappedResults();
+    }
+
+    @Override
+    public ConversionHistoryCursorPage findSummarySlice(Criteria criteria, HistoryCursor after, HistoryCursor before, int size) {
+        // Page précédente: lecture en ordre croissant depuis le curseur, puis remise en ordre décroissant
+        boolean backward = after == null && before != null;
+        HistoryCursor cursor = backward ? before : after;
+        Criteria match = criteria;
+        if (cursor != null) {
+            match = new Criteria().andOperator(criteria, keysetCriteria(cursor, backward));
+        }
+        Sort sort = Sort.by(backward ? Sort.Direction.ASC : Sort.Direction.DESC, "conversionDate", "_id");
+        // Une entrée de plus que demandé: indique s'il en reste au-delà de la page
+        List<ConversionHistorySummary> content = new ArrayList<>(findSummaries(match, PageRequest.of(0, size + 1, sort)));
+        boolean more = content.size() > size;
+        if (more) {
+            content = new ArrayList<>(content.subList(0, size));
+        }
+        if (backward) {
+            if (!more) {
+                // Début du listing atteint: première page complète
+                return findSummarySlice(criteria, null, null, size);
+            }
+            Collections.reverse(content);
+        }
+        // Le curseur lui-même précède (after) ou suit (before) la page
+        boolean hasNext = backward || more;
+        boolean hasPrevious = backward ? more : cursor != null;
+        String nextCursor = hasNext && !content.isEmpty() ? HistoryCursor.of(content.get(content.size() - 1)).encode() : null;
+        String previousCursor = hasPrevious && !content.isEmpty() ? HistoryCursor.of(content.get(0)).encode() : null;
+        return new ConversionHistoryCursorPage(content, nextCursor, previousCursor, null);
+    }
+
+    /**
+     * Entrées strictement après le curseur dans l'ordre de lecture. La borne sur conversionDate seule,
+     * hors du $or, garde un parcours d'index borné (owner_date / conversion_date).
+     */
+    private static Criteria keysetCriteria(HistoryCursor cursor, boolean backward) {
+        Object id = ObjectId.isValid(cursor.getId()) ? new ObjectId(cursor.getId()) : cursor.getId();
+        Criteria sameDate = Criteria.where("conversionDate").is(cursor.getConversionDate());
+        if (backward) {
+            return Criteria.where("conversionDate").gte(cursor.getConversionDate()).orOperator(
+                    Criteria.where("conversionDate").gt(cursor.getConversionDate()), sameDate.and("_id").gt(id));
+        }
+        return Criteria.where("conversionDate").lte(cursor.getConversionDate()).orOperator(
+                Criteria.where("conversionDate").lt(cursor.getConversionDate()), sameDate.and("_id").lt(id));
+    }
+}
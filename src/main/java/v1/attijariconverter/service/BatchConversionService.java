@@ -0,0 +1,271 @@
+package v1.attijariconverter.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.concurrent.DelegatingSecurityContextCallable;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Conversion par lot de plusieurs fichiers pain.001 (upload multiple ou archive ZIP):
+ *  - Chaque fichier est converti indépendamment (ConversionService.validateAndConvert, comme /convert)
+ *    sur un ForkJoinPool dimensionné sur les cœurs disponibles (mx.batch.parallelism)
+ *  - Une entrée d'historique est écrite par fichier, sous l'utilisateur ayant soumis le lot
+ *  - Les résultats sont rendus dans l'ordre de soumission (JSON combiné ou archive ZIP des MT101)
+ */
+@Service
+public class BatchConversionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchConversionService.class);
+
+    @Autowired
+    private ConversionService conversionService;
+
+    /** 0 = nombre de cœurs disponibles. */
+    @Value("${mx.batch.parallelism:0}")
+    private int parallelism;
+
+    @Value("${mx.batch.max-files:500}")
+    private int maxFiles;
+
+    @Value("${mx.batch.max-entry-bytes:67108864}")
+    private long maxEntryBytes;
+
+    /** Volume décompressé maximum du lot, toutes entrées et archives confondues. */
+    @Value("${mx.batch.max-total-bytes:268435456}")
+    private long maxTotalBytes;
+
+    private ForkJoinPool pool;
+
+    /** Fichier pain.001 à convertir au sein d'un lot. */
+    public static class BatchInput {
+        private final String filename;
+        private final String content;
+
+        public BatchInput(String filename, String content) {
+            this.filename = filename;
+            this.content = content;
+        }
+
+        public String getFilename() { return filename; }
+        public String getContent() { return content; }
+    }
+
+    /** Résultat de conversion d'un fichier du lot. */
+    public static class BatchItemResult {
+        private final String filename;
+        private final boolean success;
+        private final String mtMessage;
+        private final String errorMessage;
+        private final List<String> validationErrors;
+
+        public BatchItemResult(String filename, boolean success, String mtMessage, String errorMessage, List<String> validationErrors) {
+            this.filename = filename;
+            this.success = success;
+            this.mtMessage = mtMessage;
+            this.errorMessage = errorMessage;
+            this.validationErrors = validationErrors;
+        }
+
+        public String getFilename() { return filename; }
+        public boolean isSuccess() { return success; }
+        public String getMtMessage() { return mtMessage; }
+        public String getErrorMessage() { return errorMessage; }
+        public List<String> getValidationErrors() { return validationErrors; }
+    }
+
+    /** Lot rejeté avant conversion (trop de fichiers, entrée ZIP trop volumineuse...). */
+    public static class BatchRejectedException extends RuntimeException {
+        public BatchRejectedException(String message) {
+            super(message);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        pool = new ForkJoinPool(threads);
+        logger.info("Conversion par lot: parallélisme {}", threads);
+    }
+
+    @PreDestroy
+    public void stop() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Convertit tous les fichiers du lot en parallèle.
+     * @return un résultat par fichier, dans l'ordre des entrées
+     */
+    public List<BatchItemResult> convertAll(List<BatchInput> inputs) {
+        if (inputs.size() > maxFiles) {
+            throw new BatchRejectedException("Lot trop volumineux: " + inputs.size() + " fichiers (maximum " + maxFiles + ")");
+        }
+        logger.info("Début de la conversion par lot: {} fichiers", inputs.size());
+        List<Future<BatchItemResult>> futures = new ArrayList<>(inputs.size());
+        for (BatchInput input : inputs) {
+            // Le contexte de sécurité suit chaque tâche: l'historique garde le bon propriétaire
+            Callable<BatchItemResult> task = () -> convertOne(input);
+            futures.add(pool.submit(new DelegatingSecurityContextCallable<>(task)));
+        }
+
+        List<BatchItemResult> results = new ArrayList<>(inputs.size());
+        for (int i = 0; i < futures.size(); i++) {
+            String filename = inputs.get(i).getFilename();
+            try {
+                results.add(futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                throw new IllegalStateException("Conversion par lot interrompue", e);
+            } catch (ExecutionException e) {
+                logger.error("Erreur lors de la conversion par lot de {}", filename, e.getCause());
+                results.add(new BatchItemResult(filename, false, null,
+                        "Erreur lors de la conversion: " + e.getCause().getMessage(), null));
+            }
+        }
+        long succeeded = results.stream().filter(BatchItemResult::isSuccess).count();
+        logger.info("Conversion par lot terminée: {}/{} fichiers convertis", succeeded, results.size());
+        return results;
+    }
+
+    private BatchItemResult convertOne(BatchInput input) {
+        if (input.getContent() == null || input.getContent().trim().isEmpty()) {
+            return new BatchItemResult(input.getFilename(), false, null, "Le fichier est vide", null);
+        }
+        ConversionService.ConversionResult result =
+                conversionService.validateAndConvert(input.getContent(), "Fichier pain.001 invalide");
+        return new BatchItemResult(input.getFilename(), result.isSuccess(), result.getMtMessage(),
+                result.getErrorMessage(), result.getValidationErrors());
+    }
+
+    /** Nouvel accumulateur de fichiers pour un lot (budgets de taille et de nombre partagés par tout le lot). */
+    public BatchReader newReader() {
+        return new BatchReader();
+    }
+
+    /**
+     * Rassemble les fichiers d'un lot (fichiers simples et entrées d'archives ZIP).
+     * Le nombre de fichiers (mx.batch.max-files) et le volume décompressé total (mx.batch.max-total-bytes)
+     * sont cumulés sur tout le lot; chaque entrée ZIP reste bornée à mx.batch.max-entry-bytes.
+     */
+    public class BatchReader {
+        private final List<BatchInput> inputs = new ArrayList<>();
+        private long totalBytes;
+
+        private BatchReader() {
+        }
+
+        public void addFile(String filename, byte[] content) {
+            checkFileCount();
+            consume(content.length);
+            inputs.add(new BatchInput(filename, new String(content, StandardCharsets.UTF_8)));
+        }
+
+        /** Extrait les fichiers .xml d'une archive ZIP (répertoires et autres fichiers ignorés). */
+        public void addZip(InputStream zip) throws IOException {
+            byte[] buffer = new byte[8192];
+            try (ZipInputStream in = new ZipInputStream(zip)) {
+                ZipEntry entry;
+                while ((entry = in.getNextEntry()) != null) {
+                    if (entry.isDirectory() || !entry.getName().toLowerCase().endsWith(".xml")) {
+                        continue;
+                    }
+                    checkFileCount();
+                    ByteArrayOutputStream content = new ByteArrayOutputStream();
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        if (content.size() + read > maxEntryBytes) {
+                            throw new BatchRejectedException("Entrée ZIP trop volumineuse: " + entry.getName());
+                        }
+                        consume(read);
+                        content.write(buffer, 0, read);
+                    }
+                    inputs.add(new BatchInput(entry.getName(), content.toString(StandardCharsets.UTF_8)));
+                }
+            }
+        }
+
+        public List<BatchInput> getInputs() {
+            return inputs;
+        }
+
+        private void checkFileCount() {
+            if (inputs.size() >= maxFiles) {
+                throw new BatchRejectedException("Lot trop volumineux: plus de " + maxFiles + " fichiers");
+            }
+        }
+
+        private void consume(long bytes) {
+            totalBytes += bytes;
+            if (totalBytes > maxTotalBytes) {
+                throw new BatchRejectedException("Lot trop volumineux: plus de " + maxTotalBytes + " octets décompressés");
+            }
+        }
+    }
+
+    /**
+     * Écrit les résultats d'un lot en archive ZIP: un MT101 par fichier converti,
+     * un fichier .errors.txt (message + erreurs de validation) par fichier en échec.
+     */
+    public void writeZip(List<BatchItemResult> results, OutputStream out) throws IOException {
+        Set<String> usedNames = new HashSet<>();
+        ZipOutputStream zip = new ZipOutputStream(out, StandardCharsets.UTF_8);
+        for (BatchItemResult result : results) {
+            String baseName = baseName(result.getFilename());
+            String name = baseName + (result.isSuccess() ? ".mt101.txt" : ".errors.txt");
+            for (int n = 2; !usedNames.add(name); n++) {
+                name = baseName + "_" + n + (result.isSuccess() ? ".mt101.txt" : ".errors.txt");
+            }
+            zip.putNextEntry(new ZipEntry(name));
+            zip.write(entryContent(result).getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        zip.finish();
+    }
+
+    private static String entryContent(BatchItemResult result) {
+        if (result.isSuccess()) {
+            return result.getMtMessage();
+        }
+        StringBuilder errors = new StringBuilder();
+        errors.append(result.getErrorMessage() != null ? result.getErrorMessage() : "Échec de la conversion").append("\n");
+        if (result.getValidationErrors() != null) {
+            for (String error : result.getValidationErrors()) {
+                errors.append(error).append("\n");
+            }
+        }
+        return errors.toString();
+    }
+
+    /** Nom de fichier sans répertoire ni extension (entrées ZIP imbriquées comprises). */
+    private static String baseName(String filename) {
+        String name = filename != null ? filename : "fichier";
+        name = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1);
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+        return name.isEmpty() ? "fichier" : name;
+    }
+}
@@ -0,0 +1,176 @@
+package v1.attijariconverter.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encodage (compression) des contenus stockés par ConversionContentStore, enregistré dans la métadonnée
+ * "encoding" de chaque fichier GridFS pour que la lecture reste transparente quel que soit le réglage courant:
+ *  - identity: contenu brut (fichiers antérieurs à la compression, ou mx.content.compression=none)
+ *  - gzip: GZIP standard
+ *  - deflate-v2: Deflate brut amorcé par un dictionnaire construit sur la sortie réelle de MT101Writer et sur les
+ *    fichiers pain.001 d'exemple, plus efficace sur les petits messages (valeur écrite pour mx.content.compression=deflate)
+ *  - deflate: même format avec le premier dictionnaire (balises MT101 jamais produites, XML non indenté),
+ *    conservé pour relire les contenus déjà stockés
+ * Un dictionnaire fait partie du format: le modifier rendrait illisibles les fichiers "deflate*" existants, dont la
+ * métadonnée "encoding" ne désigne que la clé. Tout nouveau dictionnaire impose donc une nouvelle clé (deflate-v3...),
+ * les anciennes restant déclarées pour la lecture.
+ */
+public enum ContentEncoding {
+    IDENTITY("identity", null),
+    GZIP("gzip", null),
+    DEFLATE("deflate", Dictionaries.V1),
+    DEFLATE_V2("deflate-v2", Dictionaries.V2);
+
+    /** Dictionnaires Deflate: fragments les plus fréquents en fin (distances de référence les plus courtes). */
+    private static final class Dictionaries {
+        /** Dictionnaire de "deflate", figé. */
+        static final byte[] V1 = (
+                "{1:F01}{2:I101N}{4:\n:20:\n:28D:1/1\n:50H:/\n:52A:\n:30:\n:21:\n:32B:MAD\n:57A:\n:59:/\n:70:\n:71A:SHA\n-}"
+                + "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<Document xmlns=\"urn:iso:std:iso:20022:tech:xsd:pain.001.001.03\">\n<CstmrCdtTrfInitn>\n<GrpHdr>\n"
+                + "<MsgId></MsgId>\n<CreDtTm></CreDtTm>\n<NbOfTxs></NbOfTxs>\n<CtrlSum></CtrlSum>\n<InitgPty>\n<Nm></Nm>\n</InitgPty>\n"
+                + "</GrpHdr>\n<PmtInf>\n<PmtInfId></PmtInfId>\n<PmtMtd>TRF</PmtMtd>\n<ReqdExctnDt></ReqdExctnDt>\n"
+                + "<Dbtr>\n<Nm></Nm>\n</Dbtr>\n<DbtrAcct>\n<Id>\n<IBAN></IBAN>\n</Id>\n<Ccy></Ccy>\n</DbtrAcct>\n"
+                + "<DbtrAgt>\n<FinInstnId>\n<BIC></BIC>\n</FinInstnId>\n</DbtrAgt>\n"
+                + "</PmtInf>\n</CstmrCdtTrfInitn>\n</Document>\n"
+                + "            <CdtTrfTxInf>\n                <PmtId>\n                    <InstrId></InstrId>\n"
+                + "                    <EndToEndId></EndToEndId>\n                </PmtId>\n                <Amt>\n"
+                + "                    <InstdAmt Ccy=\"MAD\"></InstdAmt>\n                </Amt>\n"
+                + "                <ChrgBr>SHAR</ChrgBr>\n                <CdtrAgt>\n                    <FinInstnId>\n"
+                + "                        <BIC></BIC>\n                    </FinInstnId>\n                </CdtrAgt>\n"
+                + "                <Cdtr>\n                    <Nm></Nm>\n                </Cdtr>\n                <CdtrAcct>\n"
+                + "                    <Id>\n                        <IBAN></IBAN>\n                    </Id>\n"
+                + "                </CdtrAcct>\n                <RmtInf>\n                    <Ustrd></Ustrd>\n"
+                + "                </RmtInf>\n            </CdtTrfTxInf>\n"
+        ).getBytes(StandardCharsets.UTF_8);
+
+        /**
+         * Dictionnaire de "deflate-v2": une fois par fichier (prologue, GrpHdr, PmtInf, blocs 1 à 3 et Séquence A),
+         * puis une fois par transaction (CdtTrfTxInf indenté comme les exemples, Séquence B dans l'ordre d'écriture).
+         */
+        static final byte[] V2 = (
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<Document xmlns=\"urn:iso:std:iso:20022:tech:xsd:pain.001.001.03\""
+                + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">\n"
+                + "    <CstmrCdtTrfInitn>\n        <GrpHdr>\n            <MsgId>REF</MsgId>\n"
+                + "            <CreDtTm>2025-</CreDtTm>\n            <NbOfTxs></NbOfTxs>\n            <CtrlSum>.00</CtrlSum>\n"
+                + "            <InitgPty>\n                <Nm></Nm>\n                <Id>\n                    <OrgId>\n"
+                + "                        <BICOrBEI></BICOrBEI>\n                    </OrgId>\n                </Id>\n"
+                + "            </InitgPty>\n        </GrpHdr>\n        <PmtInf>\n            <PmtInfId>PMT</PmtInfId>\n"
+                + "            <PmtMtd>TRF</PmtMtd>\n            <BtchBookg>false</BtchBookg>\n"
+                + "            <PmtTpInf>\n                <InstrPrty>NORM</InstrPrty>\n                <SvcLvl>\n"
+                + "                    <Cd></Cd>\n                </SvcLvl>\n            </PmtTpInf>\n"
+                + "            <ReqdExctnDt>2025-</ReqdExctnDt>\n            <Dbtr>\n                <Nm></Nm>\n"
+                + "            </Dbtr>\n            <DbtrAcct>\n                <Id>\n                    <IBAN>MA64</IBAN>\n"
+                + "                </Id>\n                <Ccy>MAD</Ccy>\n            </DbtrAcct>\n            <DbtrAgt>\n"
+                + "                <FinInstnId>\n                    <BIC></BIC>\n                </FinInstnId>\n"
+                + "            </DbtrAgt>\n            <ChrgBr>SHAR</ChrgBr>\n"
+                + "        </PmtInf>\n    </CstmrCdtTrfInitn>\n</Document>\n"
+                + "{1:F01XXX1234567890}\n{2:I101BMCEMAMCXXXN}\n{3:{108:REF2025}}\n{4:\n:20:REF\n:28D:1/1\n:30:2025\n-}\n\n"
+                + "            <CdtTrfTxInf>\n                <PmtId>\n                    <InstrId>INSTR</InstrId>\n"
+                + "                    <EndToEndId>E2E</EndToEndId>\n                </PmtId>\n                <Amt>\n"
+                + "                    <InstdAmt Ccy=\"MAD\">.00</InstdAmt>\n                </Amt>\n"
+                + "                <ChrgBr>SHAR</ChrgBr>\n                <CdtrAgt>\n                    <FinInstnId>\n"
+                + "                        <BIC>MAMC</BIC>\n                    </FinInstnId>\n                </CdtrAgt>\n"
+                + "                <Cdtr>\n                    <Nm></Nm>\n                </Cdtr>\n                <CdtrAcct>\n"
+                + "                    <Id>\n                        <IBAN>MA64</IBAN>\n                    </Id>\n"
+                + "                </CdtrAcct>\n                <RmtInf>\n                    <Ustrd>Facture </Ustrd>\n"
+                + "                </RmtInf>\n            </CdtTrfTxInf>\n"
+                + ":21:INSTR\n:32B:MAD,00\n:50K:\n:59:\n:71A:OUR\n:71A:BEN\n:71A:SHA\n:70:Facture \n"
+        ).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private final String key;
+    private final byte[] dictionary;
+
+    ContentEncoding(String key, byte[] dictionary) {
+        this.key = key;
+        this.dictionary = dictionary;
+    }
+
+    /** Valeur de la métadonnée "encoding". */
+    public String getKey() {
+        return key;
+    }
+
+    /** Encodage d'un fichier stocké (métadonnée absente: identity). */
+    public static ContentEncoding fromKey(String key) {
+        if (key == null) return IDENTITY;
+        for (ContentEncoding encoding : values()) {
+            if (encoding.key.equals(key)) return encoding;
+        }
+        throw new IllegalArgumentException("Encodage de contenu inconnu: " + key);
+    }
+
+    /** Réglage mx.content.compression: none, gzip ou deflate (dernier dictionnaire, deflate-v2). */
+    public static ContentEncoding fromSetting(String setting) {
+        String value = setting == null ? "" : setting.trim().toLowerCase();
+        if ("none".equals(value)) return IDENTITY;
+        if ("deflate".equals(value)) return DEFLATE_V2;
+        return fromKey(value);
+    }
+
+    /** Encode un contenu complet (level: niveau de compression 1-9, ignoré pour identity). */
+    public byte[] encode(byte[] data, int level) {
+        if (this == IDENTITY) return data;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        try {
+            if (this == GZIP) {
+                try (GZIPOutputStream gzip = new LeveledGZIPOutputStream(out, level)) {
+                    gzip.write(data);
+                }
+            } else {
+                Deflater deflater = new Deflater(level, true);
+                try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, deflater, 8192)) {
+                    deflater.setDictionary(dictionary);
+                    deflate.write(data);
+                } finally {
+                    deflater.end();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /** Flux décodé d'un contenu stocké (le flux fourni est fermé avec le flux rendu). */
+    public InputStream decode(InputStream in) throws IOException {
+        switch (this) {
+            case GZIP:
+                return new GZIPInputStream(in, 8192);
+            case DEFLATE:
+            case DEFLATE_V2:
+                Inflater inflater = new Inflater(true);
+                inflater.setDictionary(dictionary);
+                return new InflaterInputStream(in, inflater, 8192) {
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        inflater.end();
+                    }
+                };
+            default:
+                return in;
+        }
+    }
+
+    /** GZIPOutputStream au niveau de compression choisi (le constructeur standard impose le niveau par défaut). */
+    private static final class LeveledGZIPOutputStream extends GZIPOutputStream {
+        LeveledGZIPOutputStream(OutputStream out, int level) throws IOException {
+            super(out, 8192);
+            def.setLevel(level);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package v1.attijariconverter.service;
+
+import jakarta.annotation.PostConstruct;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsResource;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.stereotype.Service;
+import v1.attijariconverter.model.ConversionHistory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.springframework.data.mongodb.gridfs.GridFsCriteria.whereFilename;
+
+/**
+ * Stockage des contenus volumineux (XML pain.001, MT101) hors de conversion_history, dans GridFS
+ * (bucket spring.data.mongodb.gridfs.bucket):
+ *  - Chaque contenu est identifié par son empreinte SHA-256 (nom du fichier GridFS), référencée par
+ *    ConversionHistory.mxContentHash / mtContentHash: un même fichier soumis plusieurs fois n'est stocké qu'une fois
+ *  - Les contenus sont compressés (mx.content.compression, voir ContentEncoding) et décompressés en flux à la lecture:
+ *    l'encodage est enregistré par fichier, un changement de réglage ne concerne que les nouveaux contenus
+ *  - La lecture se fait en flux (téléchargement), sans charger le contenu dans un document d'historique
+ *  - Un contenu n'est supprimé que lorsqu'aucune entrée d'historique ne le référence plus
+ * conversion_history ne garde que des métadonnées: sa taille reste compatible avec la mémoire de MongoDB.
+ */
+@Service
+public class ConversionContentStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversionContentStore.class);
+
+    public static final String MX_CONTENT_TYPE = "application/xml";
+    public static final String MT_CONTENT_TYPE = "text/plain";
+
+    /** Métadonnées GridFS: encodage et taille d'origine (absentes pour les contenus stockés bruts avant compression). */
+    private static final String ENCODING = "encoding";
+    private static final String ORIGINAL_LENGTH = "originalLength";
+
+    @Autowired
+    private GridFsTemplate gridFsTemplate;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${spring.data.mongodb.gridfs.bucket:fs}")
+    private String bucket;
+
+    /** Compression des nouveaux contenus: none, gzip ou deflate (dictionnaire pain.001 / MT101). */
+    @Value("${mx.content.compression:deflate}")
+    private String compression;
+
+    @Value("${mx.content.compression.level:6}")
+    private int compressionLevel;
+
+    private ContentEncoding encoding;
+
+    /** Contenu stocké ouvert en lecture: flux décodé et taille d'origine. */
+    public static class StoredContent {
+        private final GridFsResource resource;
+        private final ContentEncoding encoding;
+        private final long length;
+
+        StoredContent(GridFsResource resource, ContentEncoding encoding, long length) {
+            this.resource = resource;
+            this.encoding = encoding;
+            this.length = length;
+        }
+
+        /** Taille du contenu décodé (octets). */
+        public long getLength() { return length; }
+
+        /** Flux du contenu décodé, à fermer par l'appelant. */
+        public InputStream openStream() throws IOException {
+            return encoding.decode(resource.getInputStream());
+        }
+    }
+
+    /** Volumes stockés: octets d'origine et octets effectivement écrits dans GridFS (compressés). */
+    public static class CompressionStats {
+        private final long files;
+        private final long originalBytes;
+        private final long storedBytes;
+
+        public CompressionStats(long files, long originalBytes, long storedBytes) {
+            this.files = files;
+            this.originalBytes = originalBytes;
+            this.storedBytes = storedBytes;
+        }
+
+        public long getFiles() { return files; }
+        public long getOriginalBytes() { return originalBytes; }
+        public long getStoredBytes() { return storedBytes; }
+        /** Taux de compression (octets d'origine / octets stockés), 1 si rien n'est stocké. */
+        public double getRatio() { return storedBytes > 0 ? (double) originalBytes / storedBytes : 1.0; }
+    }
+
+    @PostConstruct
+    public void init() {
+        encoding = ContentEncoding.fromSetting(compression);
+        logger.info("Stockage des contenus: encodage {} (niveau {})", encoding.getKey(), compressionLevel);
+    }
+
+    /** Contenu prêt à être stocké: octets UTF-8 et empreinte calculés par l'appelant, écriture GridFS différée. */
+    public static class PendingContent {
+        private final byte[] bytes;
+        private final String hash;
+        private final String contentType;
+
+        PendingContent(byte[] bytes, String hash, String contentType) {
+            this.bytes = bytes;
+            this.hash = hash;
+            this.contentType = contentType;
+        }
+
+        /** Empreinte SHA-256 (hexadécimal) à référencer depuis l'historique. */
+        public String getHash() { return hash; }
+    }
+
+    /** Calcule l'empreinte d'un contenu (UTF-8) sans accéder à GridFS; l'écriture se fait ensuite par store(). */
+    public PendingContent prepare(String content, String contentType) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return new PendingContent(bytes, sha256(bytes), contentType);
+    }
+
+    /**
+     * Enregistre un contenu préparé s'il n'est pas déjà présent. Appelé par ConversionHistoryWriter avant l'écriture
+     * de l'entrée qui le référence, sans concurrence avec deleteUnreferenced (voir ConversionHistoryWriter).
+     */
+    public void store(PendingContent content) {
+        // Deux enregistrements simultanés du même contenu peuvent créer deux fichiers identiques: sans conséquence
+        if (gridFsTemplate.findOne(Query.query(whereFilename().is(content.hash))) == null) {
+            byte[] stored = encoding.encode(content.bytes, compressionLevel);
+            Document metadata = new Document(ENCODING, encoding.getKey()).append(ORIGINAL_LENGTH, (long) content.bytes.length);
+            gridFsTemplate.store(new ByteArrayInputStream(stored), content.hash, content.contentType, metadata);
+            logger.debug("Contenu {} stocké: {} -> {} octets ({})", content.hash, content.bytes.length, stored.length, encoding.getKey());
+        }
+    }
+
+    /** Contenu référencé par hash, à lire en flux (vide s'il n'existe pas ou plus). */
+    public Optional<StoredContent> open(String hash) {
+        if (hash == null) return Optional.empty();
+        GridFsResource resource = gridFsTemplate.getResource(hash);
+        if (resource == null || !resource.exists()) return Optional.empty();
+        Document metadata = resource.getGridFSFile().getMetadata();
+        if (metadata == null || metadata.get(ORIGINAL_LENGTH) == null) {
+            return Optional.of(new StoredContent(resource, ContentEncoding.IDENTITY, resource.getGridFSFile().getLength()));
+        }
+        return Optional.of(new StoredContent(resource, ContentEncoding.fromKey(metadata.getString(ENCODING)),
+                ((Number) metadata.get(ORIGINAL_LENGTH)).longValue()));
+    }
+
+    /** Volumes de tous les contenus stockés (agrégation sur les fichiers GridFS, contenus non compressés inclus). */
+    public CompressionStats getCompressionStats() {
+        Document stats = mongoTemplate.getCollection(bucket + ".files").aggregate(List.of(
+                new Document("$group", new Document("_id", null)
+                        .append("files", new Document("$sum", 1))
+                        .append("storedBytes", new Document("$sum", "$length"))
+                        .append("originalBytes", new Document("$sum", new Document("$ifNull",
+                                Arrays.asList("$metadata." + ORIGINAL_LENGTH, "$length"))))))).first();
+        if (stats == null) return new CompressionStats(0, 0, 0);
+        return new CompressionStats(((Number) stats.get("files")).longValue(),
+                ((Number) stats.get("originalBytes")).longValue(), ((Number) stats.get("storedBytes")).longValue());
+    }
+
+    /** Empreintes des contenus référencés par les entrées d'historique correspondant au critère. */
+    public Set<String> findContentHashes(Criteria historyCriteria) {
+        Set<String> hashes = new HashSet<>();
+        Query query = Query.query(historyCriteria);
+        hashes.addAll(mongoTemplate.findDistinct(query, "mxContentHash", ConversionHistory.class, String.class));
+        hashes.addAll(mongoTemplate.findDistinct(query, "mtContentHash", ConversionHistory.class, String.class));
+        hashes.remove(null);
+        return hashes;
+    }
+
+    /**
+     * Supprime les contenus qui ne sont plus référencés par aucune entrée d'historique (à appeler après suppression).
+     * Passer par ConversionHistoryWriter.deleteUnreferencedContents: les entrées en file référencent des contenus
+     * pas encore vérifiés ici.
+     */
+    public void deleteUnreferenced(Collection<String> hashes) {
+        for (String hash : hashes) {
+            if (hash == null) continue;
+            try {
+                boolean referenced = mongoTemplate.exists(Query.query(new Criteria().orOperator(
+                        Criteria.where("mxContentHash").is(hash), Criteria.where("mtContentHash").is(hash))),
+                        ConversionHistory.class);
+                if (!referenced) {
+                    gridFsTemplate.delete(Query.query(whereFilename().is(hash)));
+                }
+            } catch (Exception e) {
+                logger.error("Erreur lors de la suppression du contenu {}", hash, e);
+            }
+        }
+    }
+
+    static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package v1.attijariconverter.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import v1.attijariconverter.model.ConversionDailyStats;
+import v1.attijariconverter.model.ConversionHistory;
+import v1.attijariconverter.model.ConversionStatusCount;
+import v1.attijariconverter.repository.ConversionDailyStatsRepository;
+import v1.attijariconverter.repository.ConversionHistoryRepository;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compteurs journaliers pré-agrégés (collection conversion_daily_stats):
+ *  - Chaque entrée d'historique enregistrée incrémente atomiquement ($inc en upsert) le document (utilisateur, jour)
+ *  - Les suppressions d'historique retirent les compteurs correspondants
+ *  - Les statistiques (dashboard, /api/stats, admin) lisent ces documents: leur coût ne dépend pas
+ *    du volume de conversion_history
+ *  - rebuild() recalcule la collection depuis conversion_history (reprise de l'existant, correction d'écarts)
+ *  - Les utilisateurs distincts (sélecteur et compteurs admin) se lisent aussi sur ces documents, avec un cache
+ *    de courte durée (mx.stats.users.cache-ttl-seconds)
+ * L'historique et le compteur sont deux écritures distinctes (pas de transaction multi-documents):
+ * un incrément perdu (erreur MongoDB entre les deux) se corrige par rebuild().
+ */
+@Service
+public class ConversionDailyStatsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversionDailyStatsService.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ConversionDailyStatsRepository dailyStatsRepository;
+
+    @Autowired
+    private ConversionHistoryRepository conversionHistoryRepository;
+
+    /** Reconstruit les compteurs au démarrage s'ils sont absents alors que l'historique ne l'est pas. */
+    @Value("${mx.stats.rollup.backfill-on-startup:true}")
+    private boolean backfillOnStartup;
+
+    /** Durée de validité des utilisateurs distincts en cache (0: pas de cache). */
+    @Value("${mx.stats.users.cache-ttl-seconds:60}")
+    private long usersCacheTtlSeconds;
+
+    private volatile ActiveUsers activeUsers;
+
+    /**
+     * Utilisateurs ayant au moins une conversion (entrées sans propriétaire exclues), tri alphabétique,
+     * et nombre d'entre eux ayant au moins un SUCCESS / une ERROR.
+     */
+    public static class ActiveUsers {
+        private final List<String> usernames;
+        private final long usersWithSuccess;
+        private final long usersWithErrors;
+        private final long loadedAt = System.nanoTime();
+
+        public ActiveUsers(List<String> usernames, long usersWithSuccess, long usersWithErrors) {
+            this.usernames = List.copyOf(usernames);
+            this.usersWithSuccess = usersWithSuccess;
+            this.usersWithErrors = usersWithErrors;
+        }
+
+        public List<String> getUsernames() { return usernames; }
+        public long getActiveUsers() { return usernames.size(); }
+        public long getUsersWithSuccess() { return usersWithSuccess; }
+        public long getUsersWithErrors() { return usersWithErrors; }
+    }
+
+    /** Compte une entrée d'historique qui vient d'être enregistrée. */
+    public void recordConversion(ConversionHistory history) {
+        increment(history, 1);
+    }
+
+    /**
+     * Compte un lot d'entrées d'historique enregistrées (écriture différée): un upsert par couple
+     * (utilisateur, jour) du lot, envoyés en une seule opération bulk.
+     */
+    public void recordConversions(List<ConversionHistory> histories) {
+        Map<List<String>, ConversionStatusCount> counts = new LinkedHashMap<>();
+        for (ConversionHistory history : histories) {
+            if (history.getConversionDate() == null) continue;
+            ConversionStatusCount count = counts.computeIfAbsent(
+                    Arrays.asList(history.getOwnerUsername(), history.getConversionDate().toLocalDate().toString()),
+                    key -> new ConversionStatusCount(null, 0, 0, 0));
+            count.setTotal(count.getTotal() + 1);
+            if ("SUCCESS".equalsIgnoreCase(history.getStatus())) {
+                count.setValid(count.getValid() + 1);
+            } else if ("ERROR".equalsIgnoreCase(history.getStatus())) {
+                count.setError(count.getError() + 1);
+            }
+        }
+        if (counts.isEmpty()) return;
+        try {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ConversionDailyStats.class);
+            counts.forEach((key, count) -> bulk.upsert(dayQuery(key.get(0), key.get(1)), new Update()
+                    .inc("total", count.getTotal()).inc("valid", count.getValid()).inc("error", count.getError())));
+            bulk.execute();
+        } catch (Exception e) {
+            logger.error("Erreur lors de la mise à jour des compteurs journaliers ({} entrées)", histories.size(), e);
+        }
+    }
+
+    /** Retire une entrée d'historique supprimée des compteurs. */
+    public void removeConversion(ConversionHistory history) {
+        increment(history, -1);
+    }
+
+    private void increment(ConversionHistory history, int delta) {
+        if (history.getConversionDate() == null) return;
+        try {
+            Update update = new Update().inc("total", delta);
+            if ("SUCCESS".equalsIgnoreCase(history.getStatus())) {
+                update.inc("valid", delta);
+            } else if ("ERROR".equalsIgnoreCase(history.getStatus())) {
+                update.inc("error", delta);
+            }
+            mongoTemplate.upsert(dayQuery(history.getOwnerUsername(), history.getConversionDate().toLocalDate().toString()),
+                    update, ConversionDailyStats.class);
+        } catch (Exception e) {
+            logger.error("Erreur lors de la mise à jour des compteurs journaliers ({})", history.getOwnerUsername(), e);
+        }
+    }
+
+    private static Query dayQuery(String ownerUsername, String day) {
+        return Query.query(Criteria.where("ownerUsername").is(ownerUsername).and("day").is(day));
+    }
+
+    /** Supprime les compteurs d'un utilisateur (null: entrées sans propriétaire). */
+    public void deleteForOwner(String ownerUsername) {
+        if (ownerUsername == null) {
+            dailyStatsRepository.deleteByOwnerUsernameIsNull();
+        } else {
+            dailyStatsRepository.deleteByOwnerUsername(ownerUsername);
+        }
+        activeUsers = null;
+    }
+
+    /**
+     * Utilisateurs distincts, relus au plus toutes les mx.stats.users.cache-ttl-seconds: un nouvel utilisateur
+     * apparaît avec ce délai, une suppression d'historique invalide le cache immédiatement.
+     */
+    public ActiveUsers getActiveUsers() {
+        ActiveUsers cached = activeUsers;
+        if (cached != null && System.nanoTime() - cached.loadedAt < TimeUnit.SECONDS.toNanos(usersCacheTtlSeconds)) {
+            return cached;
+        }
+        List<String> usernames = new ArrayList<>();
+        long withSuccess = 0;
+        long withErrors = 0;
+        for (ConversionStatusCount user : dailyStatsRepository.sumPerOwnerUsername()) {
+            if (user.getId() == null || user.getId().isBlank()) continue;
+            usernames.add(user.getId());
+            if (user.getValid() > 0) withSuccess++;
+            if (user.getError() > 0) withErrors++;
+        }
+        ActiveUsers loaded = new ActiveUsers(usernames, withSuccess, withErrors);
+        activeUsers = loaded;
+        return loaded;
+    }
+
+    /** Total / SUCCESS / ERROR d'un utilisateur, tous jours confondus. */
+    public ConversionStatusCount countAll(String ownerUsername) {
+        return orZero(dailyStatsRepository.sumByOwnerUsername(ownerUsername));
+    }
+
+    /** Total / SUCCESS / ERROR d'un utilisateur du jour from au jour to inclus. */
+    public ConversionStatusCount countRange(String ownerUsername, LocalDate from, LocalDate to) {
+        return orZero(dailyStatsRepository.sumByOwnerUsernameAndDayRange(ownerUsername, from.toString(), to.toString()));
+    }
+
+    /** Compteurs par jour (id = yyyy-MM-dd) sur [from, to], jours sans conversion absents, tri chronologique. */
+    public List<ConversionStatusCount> countPerDay(String ownerUsername, LocalDate from, LocalDate to) {
+        return dailyStatsRepository.sumByOwnerUsernamePerDay(ownerUsername, from.toString(), to.toString());
+    }
+
+    /**
+     * Recalcule conversion_daily_stats depuis conversion_history (agrégation côté MongoDB).
+     * Les conversions enregistrées pendant le recalcul peuvent être comptées en double ou manquer:
+     * à lancer hors charge.
+     * @return nombre de documents (utilisateur, jour) écrits
+     */
+    public long rebuild() {
+        long start = System.currentTimeMillis();
+        List<ConversionDailyStats> rollups = conversionHistoryRepository.aggregateDailyStats(ZoneId.systemDefault().getId());
+        mongoTemplate.remove(new Query(), ConversionDailyStats.class);
+        if (!rollups.isEmpty()) {
+            mongoTemplate.insertAll(rollups);
+        }
+        activeUsers = null;
+        logger.info("Compteurs journaliers reconstruits: {} documents en {} ms", rollups.size(), System.currentTimeMillis() - start);
+        return rollups.size();
+    }
+
+    /**
+     * Au démarrage: index unique (ownerUsername, day) puis reprise de l'existant si la collection est vide.
+     * Exécuté hors du thread de démarrage: l'application reste disponible si MongoDB tarde à répondre.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        Thread thread = new Thread(() -> {
+            try {
+                mongoTemplate.indexOps(ConversionDailyStats.class).createIndex(new Index()
+                        .on("ownerUsername", Sort.Direction.ASC).on("day", Sort.Direction.ASC)
+                        .unique().named("owner_day"));
+                if (backfillOnStartup && dailyStatsRepository.count() == 0 && conversionHistoryRepository.count() > 0) {
+                    logger.info("Compteurs journaliers absents: reconstruction depuis l'historique");
+                    rebuild();
+                }
+            } catch (Exception e) {
+                logger.error("Initialisation des compteurs journaliers impossible", e);
+            }
+        }, "daily-stats-init");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static ConversionStatusCount orZero(ConversionStatusCount counts) {
+        return counts != null ? counts : new ConversionStatusCount(null, 0, 0, 0);
+    }
+}
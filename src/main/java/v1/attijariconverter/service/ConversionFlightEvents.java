@@ -0,0 +1,148 @@
+package v1.attijariconverter.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Événements JDK Flight Recorder de la chaîne de conversion et des accès MongoDB (catégorie AttijariConverter).
+ * Enregistrés en continu par FlightRecorderService, ils se corrèlent dans JDK Mission Control avec les pauses GC,
+ * la contention et l'activité des threads. Un événement non enregistré (aucune recording active) ne coûte
+ * qu'un test: les appelants vérifient isEnabled() avant de le renseigner.
+ */
+public final class ConversionFlightEvents {
+
+    private static final String CATEGORY = "AttijariConverter";
+
+    private ConversionFlightEvents() {}
+
+    /** Conversion complète, de la réception du contenu à son historisation. */
+    @Name("v1.attijariconverter.Conversion")
+    @Label("Conversion pain.001 -> MT101")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class ConversionEvent extends Event {
+        @Label("Message Id")
+        public String messageId;
+
+        @Label("Status")
+        public String status;
+
+        @Label("Cached")
+        @Description("Résultat servi par le cache de conversion")
+        public boolean cached;
+
+        @Label("Transactions")
+        public long transactionCount;
+
+        @Label("Input Size")
+        @Description("Taille du pain.001 (caractères, octets en flux)")
+        @DataAmount
+        public long inputSize;
+
+        @Label("Output Size")
+        @DataAmount
+        public long outputSize;
+    }
+
+    /** Parsing pain.001 seul (MXParsingService). */
+    @Name("v1.attijariconverter.Parsing")
+    @Label("Parsing pain.001")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class ParsingEvent extends Event {
+        @Label("Parser")
+        public String parser;
+
+        @Label("Message Id")
+        public String messageId;
+
+        @Label("Transactions")
+        public long transactionCount;
+
+        @Label("Input Size")
+        @Description("Taille du pain.001 (caractères), -1 pour un flux")
+        @DataAmount
+        public long inputSize;
+    }
+
+    /** Validation d'un pain.001 (XSD / structure, éventuellement couplée au parsing) ou d'un MT101. */
+    @Name("v1.attijariconverter.Validation")
+    @Label("Validation")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class ValidationEvent extends Event {
+        @Label("Kind")
+        @Description("pain001, pain001_parse ou mt101")
+        public String kind;
+
+        @Label("Valid")
+        public boolean valid;
+
+        @Label("Errors")
+        public int errorCount;
+
+        @Label("Input Size")
+        @Description("Taille du contenu validé (caractères), -1 si inconnue")
+        @DataAmount
+        public long inputSize;
+    }
+
+    /** Commande MongoDB (toute opération de repository ou de MongoTemplate), voir MongoDiagnosticsConfig. */
+    @Name("v1.attijariconverter.MongoCommand")
+    @Label("MongoDB Command")
+    @Category(CATEGORY)
+    public static class MongoCommandEvent extends Event {
+        @Label("Command")
+        public String command;
+
+        @Label("Database")
+        public String database;
+
+        @Label("Collection")
+        public String collection;
+
+        @Label("Success")
+        public boolean success;
+
+        @Label("Request Id")
+        public int requestId;
+    }
+
+    private static final EventType CONVERSION = EventType.getEventType(ConversionEvent.class);
+    private static final EventType PARSING = EventType.getEventType(ParsingEvent.class);
+    private static final EventType VALIDATION = EventType.getEventType(ValidationEvent.class);
+    private static final EventType MONGO_COMMAND = EventType.getEventType(MongoCommandEvent.class);
+
+    /** true si une recording active enregistre les conversions. */
+    public static boolean conversionEnabled() { return CONVERSION.isEnabled(); }
+    public static boolean parsingEnabled() { return PARSING.isEnabled(); }
+    public static boolean validationEnabled() { return VALIDATION.isEnabled(); }
+    public static boolean mongoCommandEnabled() { return MONGO_COMMAND.isEnabled(); }
+
+    /** Événement de validation commencé, null si les validations ne sont pas enregistrées. */
+    static ValidationEvent beginValidation() {
+        if (!validationEnabled()) return null;
+        ValidationEvent event = new ValidationEvent();
+        event.begin();
+        return event;
+    }
+
+    /** Clôt et enregistre une validation commencée par beginValidation() (sans effet si event est null). */
+    static void commitValidation(ValidationEvent event, String kind, long inputSize, boolean valid, int errorCount) {
+        if (event == null) return;
+        event.end();
+        if (event.shouldCommit()) {
+            event.kind = kind;
+            event.inputSize = inputSize;
+            event.valid = valid;
+            event.errorCount = errorCount;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package v1.attijariconverter.service;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.stereotype.Service;
+import v1.attijariconverter.model.ConversionHistory;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index de conversion_history et contrôle des plans d'exécution:
+ *  - ensureIndexes() crée les index déclarés sur ConversionHistory (@CompoundIndex / @Indexed), l'auto-création
+ *    de Spring Data étant désactivée
+ *  - findCollectionScans() fait expliquer (explain, queryPlanner) par MongoDB la forme de chaque requête des
+ *    repositories et rend celles dont le plan retenu parcourt toute la collection (COLLSCAN)
+ * Au démarrage (hors du thread principal), les index sont créés puis les COLLSCAN journalisés en avertissement
+ * (mx.history.index.explain-on-startup). Les lectures volontairement complètes (recalcul des compteurs
+ * journaliers) ne sont pas contrôlées.
+ */
+@Service
+public class ConversionHistoryIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversionHistoryIndexService.class);
+
+    private static final String COLLECTION = "conversion_history";
+
+    /** Valeurs d'exemple des requêtes expliquées (le plan ne dépend que de leur forme). */
+    private static final String SAMPLE_OWNER = "explain-owner";
+    private static final String SAMPLE_HASH = "0000000000000000000000000000000000000000000000000000000000000000";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${mx.history.index.explain-on-startup:true}")
+    private boolean explainOnStartup;
+
+    /**
+     * Crée (si absents) les index déclarés sur ConversionHistory.
+     * @return nombre d'index déclarés
+     */
+    public int ensureIndexes() {
+        IndexOperations indexOps = mongoTemplate.indexOps(ConversionHistory.class);
+        int count = 0;
+        for (IndexDefinition index : IndexResolver.create(mongoTemplate.getConverter().getMappingContext())
+                .resolveIndexFor(ConversionHistory.class)) {
+            try {
+                indexOps.createIndex(index);
+            } catch (Exception e) {
+                // Index de mêmes clés existant sous un autre nom / d'autres options: conservé tel quel
+                logger.warn("Index {} de conversion_history non créé: {}", index.getIndexKeys().toJson(), e.getMessage());
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Requêtes de conversion_history dont le plan retenu par MongoDB comporte un COLLSCAN.
+     * @return noms des requêtes concernées (vide: toutes passent par un index)
+     */
+    public List<String> findCollectionScans() {
+        List<String> scans = new ArrayList<>();
+        for (Map.Entry<String, Document> query : queryShapes().entrySet()) {
+            Document explain = mongoTemplate.getDb().runCommand(new Document("explain", query.getValue())
+                    .append("verbosity", "queryPlanner"));
+            Object winningPlan = ((Document) explain.get("queryPlanner")).get("winningPlan");
+            if (hasStage(winningPlan, "COLLSCAN")) {
+                scans.add(query.getKey());
+            }
+        }
+        return scans;
+    }
+
+    /**
+     * Au démarrage: index puis contrôle des plans. Exécuté hors du thread de démarrage: l'application reste
+     * disponible pendant la construction des index sur une collection volumineuse.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        Thread thread = new Thread(() -> {
+            try {
+                long start = System.currentTimeMillis();
+                int count = ensureIndexes();
+                logger.info("Index de conversion_history vérifiés: {} en {} ms", count, System.currentTimeMillis() - start);
+                if (explainOnStartup) {
+                    List<String> scans = findCollectionScans();
+                    if (scans.isEmpty()) {
+                        logger.info("Plans d'exécution de conversion_history: aucun COLLSCAN");
+                    }
+                    for (String scan : scans) {
+                        logger.warn("Plan d'exécution COLLSCAN sur conversion_history: {}", scan);
+                    }
+                }
+            } catch (Exception e) {
+                logger.error("Vérification des index de conversion_history impossible", e);
+            }
+        }, "history-index-init");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Forme des requêtes des repositories / services sur conversion_history (commande à expliquer, par nom).
+     * Les listings en agrégation ($match puis $sort) sont expliqués sous la forme find équivalente:
+     * MongoDB leur applique le même plan.
+     */
+    private static Map<String, Document> queryShapes() {
+        Date from = new Date(0);
+        Date to = new Date();
+        Document byDateDesc = new Document("conversionDate", -1);
+        Document dateRange = new Document("$gte", from).append("$lt", to);
+        Map<String, Document> shapes = new LinkedHashMap<>();
+        shapes.put("findSummaries(ownerUsername)", find(new Document("ownerUsername", SAMPLE_OWNER), byDateDesc));
+        shapes.put("findSummaries(ownerUsername, status)",
+                find(new Document("ownerUsername", SAMPLE_OWNER).append("status", "ERROR"), byDateDesc));
+        shapes.put("findSummaries(ownerUsername, conversionDate)",
+                find(new Document("ownerUsername", SAMPLE_OWNER).append("conversionDate", dateRange), byDateDesc));
+        shapes.put("findSummaries(ownerUsername $ne)",
+                find(new Document("ownerUsername", new Document("$ne", SAMPLE_OWNER)), byDateDesc));
+        Document keyset = new Document("conversionDate", new Document("$lte", to)).append("$or", List.of(
+                new Document("conversionDate", new Document("$lt", to)),
+                new Document("conversionDate", to).append("_id", new Document("$lt", new ObjectId()))));
+        Document byDateIdDesc = new Document("conversionDate", -1).append("_id", -1);
+        shapes.put("findSummarySlice(ownerUsername, after)", find(new Document("$and", List.of(
+                new Document("ownerUsername", SAMPLE_OWNER), keyset)), byDateIdDesc).append("limit", 21));
+        shapes.put("findSummarySlice(ownerUsername $ne, after)", find(new Document("$and", List.of(
+                new Document("ownerUsername", new Document("$ne", SAMPLE_OWNER)), keyset)), byDateIdDesc).append("limit", 21));
+        shapes.put("countByOwnerUsernameNot", count(new Document("ownerUsername", new Document("$ne", SAMPLE_OWNER))));
+        shapes.put("findByStatusOrderByConversionDateDesc", find(new Document("status", "SUCCESS"), byDateDesc));
+        shapes.put("findTop10ByOrderByConversionDateDesc", find(new Document(), byDateDesc).append("limit", 10));
+        shapes.put("findByConversionDateBetween",
+                find(new Document("conversionDate", new Document("$gt", from).append("$lt", to)), null));
+        shapes.put("findByOwnerUsernameIsNull / deleteByOwnerUsernameIsNull", find(new Document("ownerUsername", null), null));
+        shapes.put("deleteByOwnerUsername", find(new Document("ownerUsername", SAMPLE_OWNER), null));
+        shapes.put("countByOwnerUsernameAndStatusAndConversionDateBetween", count(new Document("ownerUsername", SAMPLE_OWNER)
+                .append("status", "SUCCESS").append("conversionDate", new Document("$gt", from).append("$lt", to))));
+        shapes.put("ConversionContentStore.findContentHashes", new Document("distinct", COLLECTION)
+                .append("key", "mxContentHash").append("query", new Document("ownerUsername", new Document("$in", List.of(SAMPLE_OWNER)))));
+        shapes.put("ConversionContentStore.deleteUnreferenced", find(new Document("$or", List.of(
+                new Document("mxContentHash", SAMPLE_HASH), new Document("mtContentHash", SAMPLE_HASH))), null).append("limit", 1));
+        return shapes;
+    }
+
+    private static Document find(Document filter, Document sort) {
+        Document find = new Document("find", COLLECTION).append("filter", filter);
+        if (sort != null) {
+            find.append("sort", sort);
+        }
+        return find;
+    }
+
+    private static Document count(Document filter) {
+        return new Document("count", COLLECTION).append("query", filter);
+    }
+
+    /** Recherche d'une étape dans un plan (imbrications inputStage / inputStages / queryPlan selon la version). */
+    private static boolean hasStage(Object plan, String stage) {
+        if (plan instanceof Document document) {
+            if (stage.equals(document.get("stage"))) return true;
+            for (Object value : document.values()) {
+                if (hasStage(value, stage)) return true;
+            }
+        } else if (plan instanceof List<?> list) {
+            for (Object value : list) {
+                if (hasStage(value, stage)) return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,338 @@
+package v1.attijariconverter.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+import v1.attijariconverter.model.ConversionHistory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Écriture différée des entrées d'historique (write-behind), hors du chemin des requêtes de conversion:
+ *  - Les entrées sont déposées dans une file bornée (mx.history.queue-capacity) puis insérées par lots
+ *    (insertMany, au plus mx.history.batch-size documents) par un thread dédié, compteurs journaliers compris
+ *  - Le thread écrit dès qu'une entrée arrive, avec toutes celles accumulées pendant l'écriture précédente:
+ *    les lots grossissent avec la charge sans ajouter de délai quand elle est faible
+ *  - File pleine: l'appelant attend au plus mx.history.offer-timeout-ms puis écrit lui-même son entrée
+ *    (contre-pression: ralentir plutôt que perdre l'historique)
+ *  - Les contenus MX / MT (GridFS, ConversionContentStore) sont stockés par le même thread, juste avant l'insertion
+ *    des entrées qui les référencent: l'appelant ne calcule que leur empreinte
+ *  - La suppression des contenus orphelins (deleteUnreferencedContents) est exclusive avec le stockage + insertion
+ *    d'un lot: un contenu stocké pour une entrée en cours d'écriture n'est jamais supprimé avant qu'elle soit visible
+ *  - À l'arrêt, la file est vidée avant la fermeture de la connexion MongoDB
+ * Une entrée en file n'est pas encore visible dans les listings; flush() attend que tout ce qui a été
+ * déposé soit écrit (utilisé avant les suppressions et recalculs). mx.history.async.enabled=false rétablit l'écriture directe.
+ */
+@Service
+public class ConversionHistoryWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversionHistoryWriter.class);
+
+    /** Période de réveil du thread d'écriture quand la file est vide (prise en compte de l'arrêt). */
+    private static final long POLL_MILLIS = 200;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ConversionDailyStatsService dailyStatsService;
+
+    @Autowired
+    private ConversionContentStore contentStore;
+
+    @Value("${mx.history.async.enabled:true}")
+    private boolean asyncEnabled;
+
+    @Value("${mx.history.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${mx.history.batch-size:500}")
+    private int batchSize;
+
+    @Value("${mx.history.offer-timeout-ms:100}")
+    private long offerTimeoutMillis;
+
+    /** Attente maximale de vidage de la file (flush, arrêt). */
+    @Value("${mx.history.shutdown-timeout-ms:30000}")
+    private long shutdownTimeoutMillis;
+
+    private BlockingQueue<PendingEntry> queue;
+    private Thread writerThread;
+    private volatile boolean running;
+
+    /** Entrées déposées et pas encore traitées (écrites ou abandonnées sur erreur). */
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong directWrites = new AtomicLong();
+
+    /** Stockage des contenus + insertion d'un lot d'une part, suppression des contenus orphelins d'autre part. */
+    private final Object contentLock = new Object();
+
+    /** Entrée en attente d'écriture et contenus à stocker avant elle. */
+    private static final class PendingEntry {
+        private final ConversionHistory history;
+        private final ConversionContentStore.PendingContent mxContent;
+        private final ConversionContentStore.PendingContent mtContent;
+
+        private PendingEntry(ConversionHistory history, ConversionContentStore.PendingContent mxContent,
+                             ConversionContentStore.PendingContent mtContent) {
+            this.history = history;
+            this.mxContent = mxContent;
+            this.mtContent = mtContent;
+        }
+    }
+
+    /** État de l'écriture différée (endpoint d'administration). */
+    public static class WriterStats {
+        private final int queueDepth;
+        private final int queueCapacity;
+        private final long written;
+        private final long failed;
+        private final long batches;
+        private final long directWrites;
+
+        public WriterStats(int queueDepth, int queueCapacity, long written, long failed, long batches, long directWrites) {
+            this.queueDepth = queueDepth;
+            this.queueCapacity = queueCapacity;
+            this.written = written;
+            this.failed = failed;
+            this.batches = batches;
+            this.directWrites = directWrites;
+        }
+
+        public int getQueueDepth() { return queueDepth; }
+        public int getQueueCapacity() { return queueCapacity; }
+        public long getWritten() { return written; }
+        public long getFailed() { return failed; }
+        public long getBatches() { return batches; }
+        /** Entrées écrites par l'appelant (file pleine ou écriture différée désactivée). */
+        public long getDirectWrites() { return directWrites; }
+    }
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        if (!asyncEnabled) {
+            logger.info("Écriture de l'historique: directe");
+            return;
+        }
+        running = true;
+        writerThread = new Thread(this::run, "history-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        logger.info("Écriture de l'historique différée: file {}, lots de {} entrées", queueCapacity, batchSize);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (writerThread == null) return;
+        running = false;
+        try {
+            writerThread.join(shutdownTimeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!writerThread.isAlive()) {
+            // Entrées déposées pendant l'arrêt du thread
+            List<PendingEntry> remaining = new ArrayList<>();
+            queue.drainTo(remaining);
+            if (!remaining.isEmpty()) {
+                write(remaining);
+                processed(remaining.size());
+            }
+        }
+        if (pending.get() > 0) {
+            logger.warn("Arrêt de l'écriture de l'historique: {} entrées non écrites", pending.get());
+        } else {
+            logger.info("Écriture de l'historique arrêtée: {} entrées écrites", written.get());
+        }
+    }
+
+    /** Dépose une entrée complète (propriétaire, date renseignés), sans contenu à stocker, pour écriture. */
+    public void enqueue(ConversionHistory history) {
+        enqueue(history, null, null);
+    }
+
+    /**
+     * Dépose une entrée et ses contenus (null: absent) pour écriture. Les empreintes des contenus sont reportées
+     * dans l'entrée; les contenus sont stockés dans GridFS par le thread d'écriture.
+     */
+    public void enqueue(ConversionHistory history, ConversionContentStore.PendingContent mxContent,
+                        ConversionContentStore.PendingContent mtContent) {
+        if (mxContent != null) history.setMxContentHash(mxContent.getHash());
+        if (mtContent != null) history.setMtContentHash(mtContent.getHash());
+        PendingEntry entry = new PendingEntry(history, mxContent, mtContent);
+        if (running) {
+            pending.incrementAndGet();
+            try {
+                if (queue.offer(entry, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            pending.decrementAndGet();
+            logger.warn("File d'historique pleine ({} entrées): écriture directe", queueCapacity);
+        }
+        directWrites.incrementAndGet();
+        write(List.of(entry));
+    }
+
+    /**
+     * Supprime les contenus qui ne sont plus référencés (ConversionContentStore.deleteUnreferenced), hors de tout
+     * stockage + insertion de lot: une entrée dont le contenu est déjà stocké est aussi déjà visible.
+     */
+    public void deleteUnreferencedContents(Collection<String> hashes) {
+        synchronized (contentLock) {
+            contentStore.deleteUnreferenced(hashes);
+        }
+    }
+
+    /**
+     * Attend que les entrées déposées jusqu'ici soient écrites (au plus mx.history.shutdown-timeout-ms).
+     * @return false si le délai a expiré avant le vidage complet
+     */
+    public boolean flush() {
+        long deadline = System.currentTimeMillis() + shutdownTimeoutMillis;
+        synchronized (pending) {
+            while (pending.get() > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0 || writerThread == null || !writerThread.isAlive()) {
+                    logger.warn("Vidage de la file d'historique incomplet: {} entrées en attente", pending.get());
+                    return false;
+                }
+                try {
+                    pending.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Nombre d'entrées en attente d'écriture. */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public WriterStats getStats() {
+        return new WriterStats(queue.size(), queueCapacity, written.get(), failed.get(), batches.get(), directWrites.get());
+    }
+
+    private void run() {
+        List<PendingEntry> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingEntry first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                // Arrêt forcé: les entrées restantes sont écrites par la boucle tant que la file n'est pas vide
+                running = false;
+            } catch (Exception e) {
+                logger.error("Erreur inattendue de l'écriture de l'historique", e);
+            } finally {
+                if (!batch.isEmpty()) {
+                    processed(batch.size());
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stocke les contenus du lot, l'insère (insertMany) puis met à jour les compteurs. Les identifiants sont attribués
+     * avant l'insertion: un lot en échec (éventuellement inséré en partie) est repris entrée par entrée en save, sans doublon.
+     */
+    private void write(List<PendingEntry> entries) {
+        synchronized (contentLock) {
+            List<ConversionHistory> batch = new ArrayList<>(entries.size());
+            for (PendingEntry entry : entries) {
+                storeContents(entry);
+                batch.add(entry.history);
+            }
+            insert(batch);
+        }
+    }
+
+    /** Contenu impossible à stocker: l'entrée est écrite sans référence vers lui plutôt que perdue. */
+    private void storeContents(PendingEntry entry) {
+        ConversionHistory history = entry.history;
+        if (entry.mxContent != null) {
+            try {
+                contentStore.store(entry.mxContent);
+            } catch (Exception e) {
+                logger.error("Contenu MX non stocké ({}, {})", history.getOwnerUsername(), history.getConversionDate(), e);
+                history.setMxContentHash(null);
+            }
+        }
+        if (entry.mtContent != null) {
+            try {
+                contentStore.store(entry.mtContent);
+            } catch (Exception e) {
+                logger.error("Contenu MT non stocké ({}, {})", history.getOwnerUsername(), history.getConversionDate(), e);
+                history.setMtContentHash(null);
+            }
+        }
+    }
+
+    /** Insère le lot (repris en save en cas d'échec), puis compte une seule fois les entrées effectivement écrites. */
+    private void insert(List<ConversionHistory> batch) {
+        for (ConversionHistory history : batch) {
+            if (history.getId() == null) {
+                history.setId(new ObjectId().toHexString());
+            }
+        }
+        List<ConversionHistory> stored;
+        try {
+            mongoTemplate.insert(batch, ConversionHistory.class);
+            stored = batch;
+            batches.incrementAndGet();
+        } catch (Exception e) {
+            logger.error("Erreur lors de l'écriture d'un lot de {} entrées d'historique", batch.size(), e);
+            stored = new ArrayList<>(batch.size());
+            for (ConversionHistory history : batch) {
+                try {
+                    mongoTemplate.save(history);
+                    stored.add(history);
+                } catch (Exception retryError) {
+                    failed.incrementAndGet();
+                    logger.error("Entrée d'historique perdue ({}, {})", history.getOwnerUsername(), history.getConversionDate(), retryError);
+                }
+            }
+        }
+        written.addAndGet(stored.size());
+        if (stored.isEmpty()) return;
+        try {
+            dailyStatsService.recordConversions(stored);
+        } catch (Exception e) {
+            // Historique écrit: une nouvelle tentative le dupliquerait dans les compteurs, on signale seulement l'écart
+            logger.error("Statistiques journalières non mises à jour pour {} entrées d'historique", stored.size(), e);
+        }
+    }
+
+    private void processed(int count) {
+        synchronized (pending) {
+            pending.addAndGet(-count);
+            pending.notifyAll();
+        }
+    }
+}
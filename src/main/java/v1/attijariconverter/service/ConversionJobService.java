@@ -0,0 +1,313 @@
+package v1.attijariconverter.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import v1.attijariconverter.model.MXMessage;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Conversions pain.001 -> MT101 asynchrones (jobs) pour les fichiers bulk volumineux:
+ *  - Le fichier uploadé est déposé sur disque et un identifiant de job est rendu immédiatement
+ *  - La conversion en flux (ConversionService.convertMXToMT101Streaming) tourne sur un pool borné
+ *  - L'avancement (transactions écrites / NbOfTxs déclaré) et le statut sont consultables à tout moment
+ *  - Le MT101 produit reste sur disque jusqu'à expiration du job (mx.jobs.retention-minutes);
+ *    un job dont le résultat est en cours de téléchargement n'est purgé qu'à la fin de la lecture
+ * Un pool et une file d'attente pleins provoquent un rejet (RejectedExecutionException) plutôt qu'une attente.
+ * Les jobs sont conservés en mémoire: ils ne survivent pas à un redémarrage.
+ */
+@Service
+public class ConversionJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversionJobService.class);
+
+    @Autowired
+    private ConversionService conversionService;
+
+    @Value("${mx.jobs.workers:4}")
+    private int workers;
+
+    @Value("${mx.jobs.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${mx.jobs.retention-minutes:60}")
+    private long retentionMinutes;
+
+    private final Map<String, ConversionJob> jobs = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor executor;
+    private Path workDir;
+
+    /** Statut d'un job (SUCCESS / ERROR alignés sur les statuts de l'historique). */
+    public enum JobStatus { QUEUED, RUNNING, SUCCESS, ERROR }
+
+    /**
+     * État d'un job de conversion, lu par les threads HTTP pendant que le worker l'alimente.
+     */
+    public static class ConversionJob {
+        private final String id;
+        private final String filename;
+        private final String ownerUsername;
+        private final LocalDateTime submittedAt = LocalDateTime.now();
+        private final Path inputFile;
+        private final Path outputFile;
+        private volatile JobStatus status = JobStatus.QUEUED;
+        private volatile long processedTransactions;
+        private volatile Long totalTransactions;
+        private volatile LocalDateTime startedAt;
+        private volatile LocalDateTime finishedAt;
+        private volatile long outputBytes;
+        private volatile String errorMessage;
+        private volatile List<String> validationErrors;
+        // Lectures du résultat en cours et purge effectuée, protégées par le moniteur du job
+        private int readers;
+        private boolean purged;
+
+        ConversionJob(String id, String filename, String ownerUsername, Path inputFile, Path outputFile) {
+            this.id = id;
+            this.filename = filename;
+            this.ownerUsername = ownerUsername;
+            this.inputFile = inputFile;
+            this.outputFile = outputFile;
+        }
+
+        public String getId() { return id; }
+        public String getFilename() { return filename; }
+        public String getOwnerUsername() { return ownerUsername; }
+        public LocalDateTime getSubmittedAt() { return submittedAt; }
+        public JobStatus getStatus() { return status; }
+        public long getProcessedTransactions() { return processedTransactions; }
+        /** NbOfTxs déclaré dans GrpHdr (null tant qu'il n'est pas lu ou s'il est absent / non numérique). */
+        public Long getTotalTransactions() { return totalTransactions; }
+        public LocalDateTime getStartedAt() { return startedAt; }
+        public LocalDateTime getFinishedAt() { return finishedAt; }
+        public long getOutputBytes() { return outputBytes; }
+        public String getErrorMessage() { return errorMessage; }
+        public List<String> getValidationErrors() { return validationErrors; }
+
+        /** Avancement en pourcentage (0-100), null si le total déclaré est inconnu. */
+        public Integer getProgressPercent() {
+            if (status == JobStatus.SUCCESS) return 100;
+            Long total = totalTransactions;
+            if (total == null || total <= 0) return null;
+            return (int) Math.min(100, processedTransactions * 100 / total);
+        }
+
+        public boolean isFinished() {
+            return status == JobStatus.SUCCESS || status == JobStatus.ERROR;
+        }
+
+        private void transactionWritten(MXMessage header, long processed) {
+            if (totalTransactions == null && header.getNumberOfTransactions() != null) {
+                try {
+                    totalTransactions = Long.parseLong(header.getNumberOfTransactions().trim());
+                } catch (NumberFormatException e) {
+                    totalTransactions = -1L; // non numérique: ne pas réessayer à chaque transaction
+                }
+            }
+            processedTransactions = processed;
+        }
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        workDir = Files.createTempDirectory("mx-jobs");
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "mx-job-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        logger.info("Pool de jobs de conversion: {} workers, file d'attente {}, répertoire {}", workers, queueCapacity, workDir);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+        for (ConversionJob job : jobs.values()) {
+            deleteQuietly(job.inputFile);
+            deleteQuietly(job.outputFile);
+        }
+        deleteQuietly(workDir);
+    }
+
+    /**
+     * Dépose le fichier sur disque et planifie sa conversion.
+     * @return le job créé (statut QUEUED)
+     * @throws RejectedExecutionException si le pool et la file d'attente sont saturés
+     */
+    public ConversionJob submit(MultipartFile file) throws IOException {
+        purgeExpiredJobs();
+        String id = UUID.randomUUID().toString();
+        ConversionJob job = new ConversionJob(id, file.getOriginalFilename(), currentUsername(),
+                workDir.resolve(id + ".xml"), workDir.resolve(id + ".mt101.txt"));
+        // Le multipart est supprimé en fin de requête: le job travaille sur sa propre copie
+        file.transferTo(job.inputFile);
+        jobs.put(id, job);
+        try {
+            // Le worker historise sous l'utilisateur ayant soumis le fichier
+            executor.execute(new DelegatingSecurityContextRunnable(() -> run(job)));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(id);
+            deleteQuietly(job.inputFile);
+            throw e;
+        }
+        logger.info("Job de conversion {} soumis: {}", id, file.getOriginalFilename());
+        return job;
+    }
+
+    /**
+     * Job visible par l'utilisateur courant: le sien, ou n'importe lequel pour ROLE_ADMIN.
+     * Le job d'un autre utilisateur est rendu comme inexistant (pas de distinction inconnu / interdit).
+     */
+    public Optional<ConversionJob> getJob(String id) {
+        purgeExpiredJobs();
+        ConversionJob job = jobs.get(id);
+        if (job == null) return Optional.empty();
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (isAdmin(auth) || job.ownerUsername.equals(currentUsername())) {
+            return Optional.of(job);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Ouvre le MT101 produit, présent uniquement pour un job terminé en SUCCESS.
+     * Tant que le flux rendu n'est pas fermé, le job n'est pas purgé: un téléchargement commencé
+     * juste avant l'expiration va jusqu'au bout.
+     */
+    public Optional<InputStream> openResult(ConversionJob job) throws IOException {
+        if (job.status != JobStatus.SUCCESS) return Optional.empty();
+        synchronized (job) {
+            if (job.purged) return Optional.empty();
+            InputStream in = Files.newInputStream(job.outputFile);
+            job.readers++;
+            return Optional.of(new FilterInputStream(in) {
+                private boolean closed;
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        synchronized (job) {
+                            if (!closed) {
+                                closed = true;
+                                job.readers--;
+                            }
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private void run(ConversionJob job) {
+        job.startedAt = LocalDateTime.now();
+        job.status = JobStatus.RUNNING;
+        JobStatus outcome = JobStatus.ERROR;
+        OutputStream[] output = new OutputStream[1];
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(job.inputFile), 64 * 1024)) {
+            ConversionService.StreamingConversionResult result = conversionService.convertMXToMT101Streaming(in,
+                    () -> output[0] = Files.newOutputStream(job.outputFile),
+                    job::transactionWritten);
+            job.outputBytes = result.getOutputBytes();
+            job.errorMessage = result.getErrorMessage();
+            job.validationErrors = result.getValidationErrors();
+            if (result.isSuccess()) {
+                outcome = JobStatus.SUCCESS;
+            }
+        } catch (Exception e) {
+            logger.error("Erreur lors du job de conversion {}", job.id, e);
+            job.errorMessage = "Erreur lors de la conversion: " + e.getMessage();
+        } finally {
+            closeQuietly(output[0]);
+            deleteQuietly(job.inputFile);
+            if (outcome != JobStatus.SUCCESS) {
+                deleteQuietly(job.outputFile);
+            }
+            job.finishedAt = LocalDateTime.now();
+            // Publié en dernier: un statut terminé garantit un résultat complet et finishedAt renseigné
+            job.status = outcome;
+            logger.info("Job de conversion {} terminé: {} ({} transactions)", job.id, outcome, job.processedTransactions);
+        }
+    }
+
+    /**
+     * Retire les jobs terminés depuis plus de mx.jobs.retention-minutes et leur MT101.
+     * Un job dont le résultat est en cours de lecture est conservé jusqu'à une purge ultérieure.
+     */
+    void purgeExpiredJobs() {
+        LocalDateTime limit = LocalDateTime.now().minusMinutes(retentionMinutes);
+        jobs.values().removeIf(job -> {
+            LocalDateTime finished = job.finishedAt;
+            if (finished == null || !finished.isBefore(limit)) return false;
+            synchronized (job) {
+                if (job.readers > 0) return false;
+                job.purged = true;
+            }
+            deleteQuietly(job.outputFile);
+            return true;
+        });
+    }
+
+    /** Test rôle ADMIN. */
+    private boolean isAdmin(Authentication auth) {
+        if (auth == null) return false;
+        for (GrantedAuthority ga : auth.getAuthorities()) {
+            if ("ROLE_ADMIN".equals(ga.getAuthority())) return true;
+        }
+        return false;
+    }
+
+    /** Username courant (ou "anonymous"). */
+    private String currentUsername() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth == null || auth.getName() == null) return "anonymous";
+        return auth.getName();
+    }
+
+    private static void closeQuietly(OutputStream out) {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException e) {
+            logger.warn("Fermeture du MT101 impossible", e);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Suppression impossible: {}", path, e);
+        }
+    }
+}
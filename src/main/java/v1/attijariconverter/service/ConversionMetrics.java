@@ -0,0 +1,187 @@
+package v1.attijariconverter.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Métriques Micrometer de la chaîne de conversion (exposées par Actuator, /actuator/prometheus):
+ *  - mx.conversion.stage (timer, tag stage): durée de chaque étape, avec histogramme (percentiles côté Prometheus)
+ *  - mx.conversion.duration (timer, tags status / cached): durée totale d'une conversion, historisation comprise
+ *  - mx.conversion.results (compteur, tags status / cached)
+ *  - mx.conversion.input.size (caractères, octets en flux) et mx.conversion.transactions (distributions)
+ *  - mx.history.queue.depth, mx.cache.entries / mx.cache.requests: file d'écriture de l'historique et cache des résultats
+ * Le détail par étape d'une conversion (Timings) est aussi enregistré sur son entrée d'historique, et la conversion
+ * émise en événement JFR (ConversionFlightEvents.ConversionEvent) quand une recording est active.
+ */
+@Service
+public class ConversionMetrics {
+
+    /** Étapes mesurées (valeurs du tag stage). */
+    public static final String UPLOAD_READ = "upload_read";
+    public static final String CACHE_LOOKUP = "cache_lookup";
+    /** Validation XSD et parsing pain.001, faits en une seule lecture SAX. */
+    public static final String VALIDATE_PARSE = "validate_parse";
+    /** Validation XSD seule (/validate, sans conversion). */
+    public static final String VALIDATE_MX = "validate_mx";
+    public static final String PARSE = "parse";
+    public static final String GENERATE = "generate";
+    public static final String VALIDATE_MT = "validate_mt";
+    public static final String SAVE_HISTORY = "save_history";
+    /** Conversion en flux: lecture, validation et écriture MT101 entremêlées, mesurées d'un bloc. */
+    public static final String STREAM = "stream";
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Autowired
+    private ConversionHistoryWriter historyWriter;
+
+    @Autowired
+    private ConversionResultCache resultCache;
+
+    private final Map<String, Timer> stageTimers = new ConcurrentHashMap<>();
+    private DistributionSummary inputSize;
+    private DistributionSummary transactions;
+
+    /**
+     * Durées des étapes d'une conversion (microsecondes, dans l'ordre d'exécution).
+     * Propre à une conversion et à son thread: non thread-safe.
+     */
+    public class Timings {
+        private final long startNanos = System.nanoTime();
+        private final Map<String, Long> stageMicros = new LinkedHashMap<>();
+        private final ConversionFlightEvents.ConversionEvent event;
+        private boolean cached;
+
+        private Timings() {
+            if (ConversionFlightEvents.conversionEnabled()) {
+                event = new ConversionFlightEvents.ConversionEvent();
+                event.begin();
+            } else {
+                event = null;
+            }
+        }
+
+        /** Enregistre une étape commencée à startNanos (System.nanoTime()) et terminée maintenant. */
+        public void record(String stage, long startNanos) {
+            long nanos = System.nanoTime() - startNanos;
+            stageMicros.merge(stage, TimeUnit.NANOSECONDS.toMicros(nanos), Long::sum);
+            stageTimer(stage).record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        /** Résultat servi par ConversionResultCache. */
+        public void markCached() {
+            cached = true;
+        }
+
+        public boolean isCached() { return cached; }
+
+        /** Durée écoulée depuis le début de la conversion. */
+        public long getElapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+
+        /** Copie des durées par étape (microsecondes). */
+        public Map<String, Long> getStageMicros() {
+            return Collections.unmodifiableMap(new LinkedHashMap<>(stageMicros));
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        inputSize = DistributionSummary.builder("mx.conversion.input.size")
+                .description("Taille du pain.001 soumis (caractères, octets pour une conversion en flux)")
+                .publishPercentileHistogram()
+                .register(registry);
+        transactions = DistributionSummary.builder("mx.conversion.transactions")
+                .description("Nombre de transactions par conversion")
+                .publishPercentileHistogram()
+                .register(registry);
+        Gauge.builder("mx.history.queue.depth", historyWriter, ConversionHistoryWriter::getQueueDepth)
+                .description("Entrées d'historique en attente d'écriture")
+                .register(registry);
+        Gauge.builder("mx.cache.entries", resultCache, ConversionResultCache::size)
+                .description("Conversions en cache")
+                .register(registry);
+        FunctionCounter.builder("mx.cache.requests", resultCache, ConversionResultCache::getHits)
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("mx.cache.requests", resultCache, ConversionResultCache::getMisses)
+                .tag("result", "miss")
+                .register(registry);
+    }
+
+    /** Début d'une conversion. */
+    public Timings start() {
+        return new Timings();
+    }
+
+    /** Étape mesurée hors d'une conversion (ex: validation seule). */
+    public void recordStage(String stage, long startNanos) {
+        stageTimer(stage).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Fin d'une conversion (au moment de son historisation).
+     * @param messageId MsgId du pain.001 (null si inconnu)
+     * @param inputLength taille du contenu soumis (null si inconnue)
+     * @param outputLength taille du MT101 produit (null si aucun)
+     * @param transactionCount transactions lues (null si inconnu: rejet, résultat en cache)
+     */
+    public void conversionCompleted(Timings timings, String status, String messageId, Long inputLength, Long outputLength,
+                                    Long transactionCount) {
+        String statusTag = status == null ? "UNKNOWN" : status;
+        String cachedTag = String.valueOf(timings.isCached());
+        Timer.builder("mx.conversion.duration")
+                .description("Durée totale d'une conversion")
+                .tags("status", statusTag, "cached", cachedTag)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(System.nanoTime() - timings.startNanos, TimeUnit.NANOSECONDS);
+        Counter.builder("mx.conversion.results")
+                .description("Conversions par statut")
+                .tags("status", statusTag, "cached", cachedTag)
+                .register(registry)
+                .increment();
+        if (inputLength != null) {
+            inputSize.record(inputLength);
+        }
+        if (transactionCount != null) {
+            transactions.record(transactionCount);
+        }
+        ConversionFlightEvents.ConversionEvent event = timings.event;
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.status = status;
+                event.cached = timings.isCached();
+                event.messageId = messageId;
+                event.inputSize = inputLength != null ? inputLength : -1;
+                event.outputSize = outputLength != null ? outputLength : -1;
+                event.transactionCount = transactionCount != null ? transactionCount : -1;
+                event.commit();
+            }
+        }
+    }
+
+    private Timer stageTimer(String stage) {
+        return stageTimers.computeIfAbsent(stage, s -> Timer.builder("mx.conversion.stage")
+                .description("Durée d'une étape de la conversion")
+                .tag("stage", s)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+}
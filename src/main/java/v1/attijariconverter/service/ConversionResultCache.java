@@ -0,0 +1,162 @@
+package v1.attijariconverter.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache des résultats de conversion pain.001 -> MT101, indexé par l'empreinte SHA-256 du XML normalisé
+ * (BOM retiré, fins de ligne unifiées, blancs de fin retirés):
+ *  - Un fichier déjà soumis est servi sans re-validation, re-parsing ni re-génération
+ *  - Éviction LRU bornée en nombre d'entrées (mx.cache.max-entries) et en taille estimée (mx.cache.max-bytes),
+ *    expiration après mx.cache.ttl-minutes
+ *  - Le cache est local à l'instance et vidé au redémarrage: un changement de configuration SWIFT
+ *    (swift.*, mx.mt.*) ne nécessite qu'un redémarrage
+ * Le MT101 mis en cache contient un bloc 3 horodaté: ConversionService le régénère à chaque réutilisation.
+ */
+@Service
+public class ConversionResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversionResultCache.class);
+
+    @Value("${mx.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${mx.cache.max-entries:256}")
+    private int maxEntries;
+
+    /** Taille maximale estimée des entrées (caractères x 2). */
+    @Value("${mx.cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    @Value("${mx.cache.ttl-minutes:30}")
+    private long ttlMinutes;
+
+    /** Ordre d'accès: la première entrée est la moins récemment utilisée. */
+    private final LinkedHashMap<String, CachedConversion> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private long hits;
+    private long misses;
+
+    /**
+     * Résultat mis en cache: soit un rejet de validation MX (mxValid = false), soit une conversion
+     * menée à son terme (succès, ou MT101 généré mais invalide). Les erreurs inattendues ne sont pas mises en cache.
+     */
+    public static class CachedConversion {
+        private final boolean mxValid;
+        private final boolean success;
+        private final String mtMessage;
+        private final String errorMessage;
+        private final List<String> validationErrors;
+        private final long weight;
+        private final long createdAt = System.nanoTime();
+
+        private CachedConversion(boolean mxValid, boolean success, String mtMessage, String errorMessage, List<String> validationErrors) {
+            this.mxValid = mxValid;
+            this.success = success;
+            this.mtMessage = mtMessage;
+            this.errorMessage = errorMessage;
+            this.validationErrors = validationErrors == null ? List.of() : List.copyOf(validationErrors);
+            long chars = 64 + (mtMessage != null ? mtMessage.length() : 0) + (errorMessage != null ? errorMessage.length() : 0);
+            for (String error : this.validationErrors) {
+                chars += error.length() + 16;
+            }
+            this.weight = chars * 2;
+        }
+
+        /** Document rejeté par la validation XSD / structure. */
+        public static CachedConversion invalidMx(List<String> errors) {
+            return new CachedConversion(false, false, null, null, errors);
+        }
+
+        /** Conversion menée à son terme (succès ou erreurs de validation MT101). */
+        public static CachedConversion converted(boolean success, String mtMessage, String errorMessage, List<String> errors) {
+            return new CachedConversion(true, success, mtMessage, errorMessage, errors);
+        }
+
+        public boolean isMxValid() { return mxValid; }
+        public boolean isSuccess() { return success; }
+        public String getMtMessage() { return mtMessage; }
+        public String getErrorMessage() { return errorMessage; }
+        /** Liste non modifiable: à copier avant de la rendre à un appelant. */
+        public List<String> getValidationErrors() { return validationErrors; }
+    }
+
+    /** Clé de cache du contenu, null si le cache est désactivé. */
+    public String key(String mxContent) {
+        if (!enabled || mxContent == null) return null;
+        String normalized = mxContent;
+        if (normalized.startsWith("\uFEFF")) {
+            normalized = normalized.substring(1);
+        }
+        normalized = normalized.replace("\r\n", "\n").stripTrailing();
+        return ConversionContentStore.sha256(normalized.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Résultat en cache pour cette clé (null si absent ou expiré). */
+    public synchronized CachedConversion get(String key) {
+        if (key == null) return null;
+        CachedConversion cached = entries.get(key);
+        if (cached != null && isExpired(cached, System.nanoTime())) {
+            remove(key);
+            cached = null;
+        }
+        if (cached == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return cached;
+    }
+
+    public synchronized void put(String key, CachedConversion conversion) {
+        if (key == null || conversion.weight > maxBytes) return;
+        remove(key);
+        entries.put(key, conversion);
+        totalBytes += conversion.weight;
+        evict();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    public synchronized int size() { return entries.size(); }
+    public synchronized long getTotalBytes() { return totalBytes; }
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+
+    private void remove(String key) {
+        CachedConversion removed = entries.remove(key);
+        if (removed != null) {
+            totalBytes -= removed.weight;
+        }
+    }
+
+    /** Retire les entrées expirées puis les moins récemment utilisées jusqu'à respecter les bornes. */
+    private void evict() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<String, CachedConversion>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            CachedConversion cached = it.next().getValue();
+            if (isExpired(cached, now) || entries.size() > maxEntries || totalBytes > maxBytes) {
+                it.remove();
+                totalBytes -= cached.weight;
+            }
+        }
+        logger.debug("Cache de conversion: {} entrées, {} octets", entries.size(), totalBytes);
+    }
+
+    private boolean isExpired(CachedConversion cached, long now) {
+        return now - cached.createdAt > TimeUnit.MINUTES.toNanos(ttlMinutes);
+    }
+}
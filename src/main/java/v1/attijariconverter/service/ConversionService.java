@@ -4,35 +4,59 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import v1.attijariconverter.model.ConversionHistory;
+import v1.attijariconverter.model.ConversionHistoryCursorPage;
+import v1.attijariconverter.model.ConversionHistorySummary;
+import v1.attijariconverter.model.HistoryCursor;
+import v1.attijariconverter.model.ConversionStatusCount;
 import v1.attijariconverter.model.MXMessage;
 import v1.attijariconverter.model.MTMessage;
 import v1.attijariconverter.model.ValidationStatus;
 import v1.attijariconverter.repository.ConversionHistoryRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.xml.sax.InputSource;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
 
 /**
  * Service central pilotant:
- *  - Parsing MX (pain.001) via MXParsingService
+ *  - Ingestion pain.001 en une passe (validation XSD + parsing) via XSDValidationService.validateAndParse
+ *  - Parsing MX seul (pain.001) via MXParsingService
  *  - Génération MT101 (construction manuelle blocs SWIFT)
  *  - Validation structurée minimale du MT101
- *  - Persistance historique (MongoDB)
+ *  - Persistance historique (MongoDB, écriture différée par lots via ConversionHistoryWriter)
+ * Chaque étape est chronométrée (ConversionMetrics): durées exportées en métriques et enregistrées sur l'entrée d'historique.
  * Fournit aussi des méthodes de statistiques / filtrage pour le dashboard et des opérations d'administration.
  */
 @Service
@@ -40,18 +64,67 @@ public class ConversionService {
 
     private static final Logger logger = LoggerFactory.getLogger(ConversionService.class);
 
+    /** Tri des listings d'historique: plus récentes d'abord. */
+    private static final Sort BY_DATE_DESC = Sort.by("conversionDate").descending();
+
+    /** Ligne de bloc 3 produite par generateBloc3 (horodatage régénéré pour un MT101 servi depuis le cache). */
+    private static final Pattern BLOC3_LINE = Pattern.compile("^\\{3:\\{108:REF\\d{14}\\}\\}$", Pattern.MULTILINE);
+
+    private static final DateTimeFormatter BLOC3_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
     @Autowired
     private ConversionHistoryRepository conversionHistoryRepository;
 
+    @Autowired
+    private ConversionDailyStatsService dailyStatsService;
+
+    @Autowired
+    private ConversionContentStore contentStore;
+
+    @Autowired
+    private ConversionHistoryWriter historyWriter;
+
+    @Autowired
+    private ConversionResultCache resultCache;
+
+    @Autowired
+    private ConversionMetrics metrics;
+
     @Autowired
     private MXParsingService mxParsingService;
 
+    @Autowired
+    private XSDValidationService xsdValidationService;
+
     @Value("${swift.receiver.bic:BMCEMAMCXXX}")
     private String receiverBic;
 
     @Value("${swift.block2.suffix:N}")
     private String block2Suffix;
 
+    /** Nombre de transactions à partir duquel les Séquences B sont générées en parallèle (<= 0: jamais). */
+    @Value("${mx.mt.parallel-threshold:5000}")
+    private int parallelThreshold;
+
+    /** Taille des lots de transactions rendus par une même tâche en mode parallèle. */
+    @Value("${mx.mt.parallel-chunk-size:1000}")
+    private int parallelChunkSize;
+
+    /**
+     * Taille maximale du bloc 4 d'un MT101 (caractères) au-delà de laquelle le message est découpé (<= 0: illimitée).
+     * Une limite de taille empêche la conversion en flux d'écrire avant la fin de la lecture (total de :28D: inconnu).
+     */
+    @Value("${mx.mt.split.max-chars:0}")
+    private int splitMaxChars;
+
+    /** Nombre maximal de transactions (Séquences B) par MT101 (<= 0: illimité). */
+    @Value("${mx.mt.split.max-transactions:0}")
+    private int splitMaxTransactions;
+
+    /** Nombre maximal d'erreurs de structure MT101 détaillées (les suivantes sont seulement comptées). */
+    @Value("${mx.mt.validation.max-errors:100}")
+    private int mtValidationMaxErrors = 100;
+
     /**
      * Résultat immuable d'une tentative de conversion.
      */
@@ -75,6 +148,106 @@ public class ConversionService {
         public List<String> getValidationErrors() { return validationErrors; }
     }
 
+    /**
+     * Résultat d'une conversion en flux: le MT101 n'est pas conservé (mtMessage toujours null),
+     * seules les métadonnées de la conversion sont remontées.
+     */
+    public static class StreamingConversionResult extends ConversionResult {
+        private final boolean outputStarted;
+        private final long transactionCount;
+        private final long inputBytes;
+        private final long outputBytes;
+
+        public StreamingConversionResult(boolean success, String errorMessage, List<String> validationErrors,
+                                         boolean outputStarted, long transactionCount, long inputBytes, long outputBytes) {
+            super(success, null, errorMessage, validationErrors);
+            this.outputStarted = outputStarted;
+            this.transactionCount = transactionCount;
+            this.inputBytes = inputBytes;
+            this.outputBytes = outputBytes;
+        }
+
+        /** true si au moins un octet MT101 a été remis à la destination (réponse HTTP engagée). */
+        public boolean isOutputStarted() { return outputStarted; }
+        public long getTransactionCount() { return transactionCount; }
+        public long getInputBytes() { return inputBytes; }
+        public long getOutputBytes() { return outputBytes; }
+    }
+
+    /**
+     * Destination du MT101 en flux, ouverte paresseusement juste avant l'écriture du premier octet:
+     * tant qu'elle n'est pas ouverte, l'appelant reste libre de répondre autrement (ex: 400 JSON).
+     */
+    @FunctionalInterface
+    public interface MTOutputOpener {
+        OutputStream open() throws IOException;
+    }
+
+    /**
+     * Suivi d'avancement d'une conversion en flux, notifié après l'écriture de chaque transaction
+     * (sur le thread de conversion). header porte l'en-tête GrpHdr déjà lu (NbOfTxs déclaré).
+     */
+    @FunctionalInterface
+    public interface ConversionProgressListener {
+        void transactionWritten(MXMessage header, long processed);
+    }
+
+    /** Rejet du fichier détecté pendant le flux, avant toute écriture MT101. */
+    private static class StreamingRejectedException extends RuntimeException {
+        private final List<String> errors;
+
+        StreamingRejectedException(String message, List<String> errors) {
+            super(message);
+            this.errors = errors;
+        }
+    }
+
+    /**
+     * Valide puis convertit un contenu pain.001 en une seule lecture du document:
+     * le verdict XSD/structure et le MXMessage sont produits par le même parsing SAX.
+     * Un document invalide est historisé comme échec de validation MX et n'est pas converti.
+     * Un contenu déjà converti est servi par ConversionResultCache (seul le bloc 3 horodaté est régénéré);
+     * chaque soumission reste historisée.
+     * @param mxContent XML pain.001
+     * @param invalidMessage message fonctionnel renvoyé si le document est invalide
+     */
+    public ConversionResult validateAndConvert(String mxContent, String invalidMessage) {
+        return validateAndConvert(mxContent, invalidMessage, metrics.start());
+    }
+
+    /**
+     * Variante de {@link #validateAndConvert(String, String)} poursuivant un chronométrage commencé par l'appelant
+     * (ex: lecture de l'upload).
+     */
+    public ConversionResult validateAndConvert(String mxContent, String invalidMessage, ConversionMetrics.Timings timings) {
+        List<String> validationErrors = new ArrayList<>();
+        try {
+            long start = System.nanoTime();
+            String cacheKey = resultCache.key(mxContent);
+            ConversionResultCache.CachedConversion cached = resultCache.get(cacheKey);
+            timings.record(ConversionMetrics.CACHE_LOOKUP, start);
+            if (cached != null) {
+                return replayCachedConversion(cached, mxContent, invalidMessage, timings);
+            }
+            logger.info("Début de l'ingestion pain.001 (validation + parsing en une passe)");
+            start = System.nanoTime();
+            MXMessage mxMessage = new MXMessage();
+            XSDValidationService.ValidationResult validation = xsdValidationService.validateAndParse(
+                    new InputSource(new StringReader(mxContent)), new Pain001StaxParser(), mxMessage, mxMessage::addPaymentInstruction);
+            timings.record(ConversionMetrics.VALIDATE_PARSE, start);
+            if (!validation.isValid()) {
+                resultCache.put(cacheKey, ConversionResultCache.CachedConversion.invalidMx(validation.getErrors()));
+                saveValidationFailure(mxContent, validation.getErrors(), invalidMessage, timings);
+                return new ConversionResult(false, null, invalidMessage, validation.getErrors());
+            }
+            return convertParsed(mxMessage, mxContent, validationErrors, cacheKey, timings);
+        } catch (Exception e) {
+            logger.error("Erreur lors de la conversion MX vers MT101", e);
+            saveConversionHistory(null, mxContent, null, "ERROR", e.getMessage(), validationErrors, null, timings);
+            return new ConversionResult(false, null, "Erreur lors de la conversion: " + e.getMessage(), validationErrors);
+        }
+    }
+
     /**
      * Convertit un contenu XML pain.001 en message MT101.
      * Étapes:
@@ -85,30 +258,75 @@ public class ConversionService {
      */
     public ConversionResult convertMXToMT101(String mxContent) {
         List<String> validationErrors = new ArrayList<>();
+        ConversionMetrics.Timings timings = metrics.start();
 
         try {
             logger.info("Début de la conversion MX vers MT101");
 
             // Parser le message MX
+            long start = System.nanoTime();
             MXMessage mxMessage = mxParsingService.parseMXMessage(mxContent);
+            timings.record(ConversionMetrics.PARSE, start);
             if (mxMessage == null) {
                 // Échec parsing => sauvegarde comme erreur
-                saveConversionHistory(null, mxContent, null, "ERROR", "Impossible de parser le message MX", validationErrors, null);
+                saveConversionHistory(null, mxContent, null, "ERROR", "Impossible de parser le message MX", validationErrors, null, timings);
                 return new ConversionResult(false, null, "Impossible de parser le message MX", validationErrors);
             }
+            return convertParsed(mxMessage, mxContent, validationErrors, null, timings);
+
+        } catch (Exception e) {
+            logger.error("Erreur lors de la conversion MX vers MT101", e);
+            // Sauvegarder l'erreur inattendue
+            saveConversionHistory(null, mxContent, null, "ERROR", e.getMessage(), validationErrors, null, timings);
+            return new ConversionResult(false, null, "Erreur lors de la conversion: " + e.getMessage(), validationErrors);
+        }
+    }
 
+    /**
+     * Résultat d'une conversion déjà effectuée pour le même contenu: historisé comme une nouvelle tentative,
+     * avec un bloc 3 horodaté à l'instant présent.
+     */
+    private ConversionResult replayCachedConversion(ConversionResultCache.CachedConversion cached, String mxContent, String invalidMessage,
+                                                    ConversionMetrics.Timings timings) {
+        logger.info("Conversion servie depuis le cache (contenu déjà soumis)");
+        timings.markCached();
+        List<String> errors = new ArrayList<>(cached.getValidationErrors());
+        if (!cached.isMxValid()) {
+            saveValidationFailure(mxContent, errors, invalidMessage, timings);
+            return new ConversionResult(false, null, invalidMessage, new ArrayList<>(errors));
+        }
+        String mt101Message = BLOC3_LINE.matcher(cached.getMtMessage()).replaceAll(Matcher.quoteReplacement(generateBloc3()));
+        saveConversionHistory(null, mxContent, mt101Message, cached.isSuccess() ? "SUCCESS" : "ERROR",
+                cached.getErrorMessage(), errors, null, timings);
+        return new ConversionResult(cached.isSuccess(), mt101Message, cached.getErrorMessage(), new ArrayList<>(errors));
+    }
+
+    /**
+     * Étapes 2 à 4 de la conversion, à partir d'un MXMessage déjà parsé.
+     * @param cacheKey clé ConversionResultCache sous laquelle retenir le résultat (null: pas de mise en cache)
+     */
+    private ConversionResult convertParsed(MXMessage mxMessage, String mxContent, List<String> validationErrors, String cacheKey,
+                                           ConversionMetrics.Timings timings) {
+        try {
             // Générer le message MT101
+            long start = System.nanoTime();
             String mt101Message = generateMT101Message(mxMessage, validationErrors);
+            timings.record(ConversionMetrics.GENERATE, start);
 
             // Valider la structure MT101
-            if (!validateMT101Structure(mt101Message, validationErrors)) {
+            start = System.nanoTime();
+            boolean mtValid = validateMT101Structure(mt101Message, validationErrors);
+            timings.record(ConversionMetrics.VALIDATE_MT, start);
+            if (!mtValid) {
                 // Sauvegarder l'échec de validation MT
-                saveConversionHistory(mxMessage, mxContent, mt101Message, "ERROR", "Erreurs de validation MT101", validationErrors, null);
+                resultCache.put(cacheKey, ConversionResultCache.CachedConversion.converted(false, mt101Message, "Erreurs de validation MT101", validationErrors));
+                saveConversionHistory(mxMessage, mxContent, mt101Message, "ERROR", "Erreurs de validation MT101", validationErrors, null, timings);
                 return new ConversionResult(false, mt101Message, "Erreurs de validation MT101", validationErrors);
             }
 
             // Sauvegarder dans l'historique (succès)
-            saveConversionHistory(mxMessage, mxContent, mt101Message, "SUCCESS", null, validationErrors, null);
+            resultCache.put(cacheKey, ConversionResultCache.CachedConversion.converted(true, mt101Message, null, validationErrors));
+            saveConversionHistory(mxMessage, mxContent, mt101Message, "SUCCESS", null, validationErrors, null, timings);
 
             logger.info("Conversion MT101 réussie");
             return new ConversionResult(true, mt101Message, null, validationErrors);
@@ -116,34 +334,413 @@ public class ConversionService {
         } catch (Exception e) {
             logger.error("Erreur lors de la conversion MX vers MT101", e);
             // Sauvegarder l'erreur inattendue
-            saveConversionHistory(null, mxContent, null, "ERROR", e.getMessage(), validationErrors, null);
+            saveConversionHistory(null, mxContent, null, "ERROR", e.getMessage(), validationErrors, null, timings);
             return new ConversionResult(false, null, "Erreur lors de la conversion: " + e.getMessage(), validationErrors);
         }
     }
 
+    /**
+     * Conversion pain.001 -> MT101 de bout en bout en flux, à mémoire constante:
+     *  1. Lecture SAX unique du flux d'entrée (aucune copie String / byte[] du fichier), validée XSD au fil de l'eau
+     *  2. Verdict de validation (XSD + structure) vérifié à l'arrivée de la première transaction
+     *  3. Écriture des blocs 1 à 3 et de la Séquence A, puis d'une Séquence B par transaction dès sa lecture
+     *     (découpage en plusieurs MT101 selon mx.mt.split.*: si le total de :28D: dépend de la taille,
+     *     c'est-à-dire mx.mt.split.max-chars > 0, rien n'est écrit avant la fin de la lecture, les messages
+     *     pleins attendant sur disque: le client ne reçoit aucun octet tant que l'entrée n'est pas lue en entier)
+     *  4. Validation du squelette MT101 au fil de l'eau, puis sauvegarde historique (métadonnées seulement)
+     * Si le fichier est rejeté avant la première écriture, la destination n'est jamais ouverte;
+     * une erreur XSD relevée après le début de l'écriture fait échouer la conversion.
+     * @param in flux pain.001 brut (non fermé par cette méthode)
+     * @param opener destination du MT101 (ouverte au premier octet, flushée mais non fermée)
+     */
+    public StreamingConversionResult convertMXToMT101Streaming(InputStream in, MTOutputOpener opener) {
+        return convertMXToMT101Streaming(in, opener, null);
+    }
+
+    /**
+     * Variante de {@link #convertMXToMT101Streaming(InputStream, MTOutputOpener)} notifiant l'avancement.
+     * @param progress notifié après chaque transaction écrite (peut être null)
+     */
+    public StreamingConversionResult convertMXToMT101Streaming(InputStream in, MTOutputOpener opener,
+                                                               ConversionProgressListener progress) {
+        List<String> validationErrors = new ArrayList<>();
+        CountingInputStream countingIn = new CountingInputStream(in);
+        Pain001StaxParser parser = new Pain001StaxParser();
+        MXMessage header = new MXMessage();
+        XSDValidationService.ValidationErrorCollector mxErrors = xsdValidationService.newCollector();
+        ConversionMetrics.Timings timings = metrics.start();
+        try (StreamingMT101Writer writer = new StreamingMT101Writer(parser, header, opener, validationErrors, mxErrors, progress)) {
+            return convertStreaming(countingIn, parser, header, writer, validationErrors, mxErrors, timings);
+        }
+    }
+
+    private StreamingConversionResult convertStreaming(CountingInputStream countingIn, Pain001StaxParser parser, MXMessage header,
+                                                       StreamingMT101Writer writer, List<String> validationErrors,
+                                                       XSDValidationService.ValidationErrorCollector mxErrors,
+                                                       ConversionMetrics.Timings timings) {
+        long start = System.nanoTime();
+        try {
+            logger.info("Début de la conversion MX vers MT101 (flux)");
+            XSDValidationService.ValidationResult mxValidation = xsdValidationService.validateAndParse(
+                    new InputSource(countingIn), parser, header, writer, mxErrors);
+
+            if (!writer.hasTransactions() || (!writer.isStarted() && !mxValidation.isValid())) {
+                // Aucune transaction lue, ou document invalide avant toute écriture: rejet complet
+                timings.record(ConversionMetrics.STREAM, start);
+                saveStreamedConversionHistory(header, countingIn.getByteCount(), 0, 0, "ERROR",
+                        "Fichier pain.001 invalide", null, mxValidation.getErrors(), timings);
+                return new StreamingConversionResult(false, "Fichier pain.001 invalide", mxValidation.getErrors(),
+                        false, 0, countingIn.getByteCount(), 0);
+            }
+
+            boolean mtValid = writer.finish();
+            boolean valid = mtValid && mxValidation.isValid();
+            String status = valid ? "SUCCESS" : "ERROR";
+            String error = valid ? null : (mxValidation.isValid() ? "Erreurs de validation MT101" : "Fichier pain.001 invalide");
+            if (!mxValidation.isValid()) {
+                validationErrors.addAll(mxValidation.getErrors());
+            }
+            timings.record(ConversionMetrics.STREAM, start);
+            saveStreamedConversionHistory(header, countingIn.getByteCount(), writer.getByteCount(), writer.getTransactionCount(),
+                    status, error, validationErrors, mxValidation.isValid() ? null : mxValidation.getErrors(), timings);
+            logger.info("Conversion MT101 (flux) terminée: {} transactions, statut {}", writer.getTransactionCount(), status);
+            return new StreamingConversionResult(valid, error, validationErrors, true,
+                    writer.getTransactionCount(), countingIn.getByteCount(), writer.getByteCount());
+
+        } catch (StreamingRejectedException e) {
+            timings.record(ConversionMetrics.STREAM, start);
+            saveStreamedConversionHistory(header, countingIn.getByteCount(), 0, 0, "ERROR", e.getMessage(), null, e.errors, timings);
+            return new StreamingConversionResult(false, e.getMessage(), e.errors, false, 0, countingIn.getByteCount(), 0);
+        } catch (Exception e) {
+            logger.error("Erreur lors de la conversion MX vers MT101 (flux)", e);
+            Throwable cause = e instanceof UncheckedIOException ? e.getCause() : e;
+            timings.record(ConversionMetrics.STREAM, start);
+            saveStreamedConversionHistory(header, countingIn.getByteCount(), writer.getByteCount(), writer.getTransactionCount(),
+                    "ERROR", cause.getMessage(), validationErrors, null, timings);
+            return new StreamingConversionResult(false, "Erreur lors de la conversion: " + cause.getMessage(),
+                    validationErrors, writer.isStarted(), writer.getTransactionCount(),
+                    countingIn.getByteCount(), writer.getByteCount());
+        }
+    }
+
+    /**
+     * Sink de transactions écrivant le MT101 au fil du parsing.
+     * Seules la première transaction (utilisée par les blocs 1/2) et la séquence en cours sont gardées en mémoire.
+     * Découpage en plusieurs MT101 (voir MT101Splitter):
+     *  - total connu d'avance (pas de découpage, ou découpage par nombre de transactions avec NbOfTxs déclaré):
+     *    chaque message part dans le flux dès qu'il est plein;
+     *  - sinon (découpage par taille): les messages pleins sont déversés dans un fichier temporaire et
+     *    le MT101 n'est écrit qu'en fin de lecture, une fois le total de :28D: connu (mémoire bornée à un message).
+     */
+    private class StreamingMT101Writer implements Consumer<MXMessage.PaymentInstruction>, AutoCloseable {
+        private final Pain001StaxParser parser;
+        private final MXMessage header;
+        private final MTOutputOpener opener;
+        private final List<String> validationErrors;
+        private final XSDValidationService.ValidationErrorCollector mxErrors;
+        private final ConversionProgressListener progress;
+        private final MT101StructureValidator validator = new MT101StructureValidator(mtValidationMaxErrors);
+        private final MT101Writer segment = new MT101Writer(512);
+        private final MT101Writer headerSegment = new MT101Writer(256);
+        private String bloc1;
+        private String bloc2;
+        private MT101Writer sequenceA;
+        private MT101Splitter splitter;
+        private int knownTotal;
+        private int messageIndex;
+        private final MT101Writer message = new MT101Writer(1024);
+        private final List<Integer> spilledLengths = new ArrayList<>();
+        private Path spool;
+        private OutputStream spoolOut;
+        private CountingOutputStream countingOut;
+        private OutputStream out;
+        private long transactionCount;
+
+        StreamingMT101Writer(Pain001StaxParser parser, MXMessage header, MTOutputOpener opener,
+                             List<String> validationErrors, XSDValidationService.ValidationErrorCollector mxErrors,
+                             ConversionProgressListener progress) {
+            this.parser = parser;
+            this.header = header;
+            this.opener = opener;
+            this.validationErrors = validationErrors;
+            this.mxErrors = mxErrors;
+            this.progress = progress;
+        }
+
+        @Override
+        public void accept(MXMessage.PaymentInstruction payment) {
+            try {
+                if (transactionCount == 0) {
+                    begin(payment);
+                }
+                segment.reset();
+                segment.sequenceB(payment, validationErrors);
+                if (splitter.add(segment.charLength())) {
+                    nextMessage();
+                }
+                if (knownTotal > 0) {
+                    segment.writeTo(out);
+                } else {
+                    message.append(segment);
+                }
+                transactionCount++;
+                if (progress != null) {
+                    progress.transactionWritten(header, transactionCount);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Vérifie le verdict MX acquis jusqu'ici (XSD + structure), prépare les en-têtes puis,
+         * si le total de messages est connu, ouvre la sortie et écrit le premier en-tête.
+         */
+        private void begin(MXMessage.PaymentInstruction first) throws IOException {
+            XSDValidationService.ValidationResult soFar = mxErrors.toResult();
+            XSDValidationService.ValidationResult structure = xsdValidationService.validatePain001Structure(parser);
+            if (!soFar.isValid() || !structure.isValid()) {
+                List<String> errors = new ArrayList<>(soFar.getErrors());
+                errors.addAll(structure.getErrors());
+                throw new StreamingRejectedException("Fichier pain.001 invalide", errors);
+            }
+            // Les blocs 1/2 consultent la première transaction (BIC créditeur / débiteur)
+            header.addPaymentInstruction(first);
+            bloc1 = generateBloc1(header);
+            bloc2 = generateBloc2(header);
+            sequenceA = new MT101Writer(128).sequenceA(header, validationErrors, 1, 1);
+            splitter = newSplitter(sequenceA.charLength());
+            messageIndex = 1;
+
+            knownTotal = splitter.expectedMessages(header.getNumberOfTransactions());
+            if (knownTotal > 0) {
+                open();
+                writeHeader(1, knownTotal);
+            }
+        }
+
+        /** Clôt le message courant et en ouvre un nouveau (dans le flux ou dans le fichier de débordement). */
+        private void nextMessage() throws IOException {
+            if (knownTotal > 0) {
+                MT101Writer.writeMessageEnd(out);
+                // Message complet: transmis au client sans attendre que le tampon se remplisse
+                out.flush();
+                messageIndex++;
+                writeHeader(messageIndex, Math.max(knownTotal, messageIndex));
+            } else {
+                if (spoolOut == null) {
+                    spool = Files.createTempFile("mt101-", ".spool");
+                    spoolOut = new BufferedOutputStream(Files.newOutputStream(spool), 8192);
+                }
+                message.writeTo(spoolOut);
+                spilledLengths.add(message.length());
+                message.reset();
+                messageIndex++;
+            }
+        }
+
+        /** Blocs 1 à 3 et Séquence A du message index/total. */
+        private void writeHeader(int index, int total) throws IOException {
+            headerSegment.reset();
+            writeHeaders(headerSegment, bloc1, bloc2);
+            if (total == 1) {
+                headerSegment.append(sequenceA);
+            } else {
+                // Erreurs de Séquence A déjà relevées au premier rendu
+                headerSegment.sequenceA(header, new ArrayList<>(), index, total);
+            }
+            headerSegment.writeTo(out);
+        }
+
+        private void open() throws IOException {
+            countingOut = new CountingOutputStream(opener.open());
+            // Validation de structure sur les octets effectivement écrits, dans l'ordre du flux
+            out = new BufferedOutputStream(validator.tap(countingOut), 8192);
+        }
+
+        /** Ferme le dernier bloc 4 (ou écrit tous les messages si le total n'était pas connu), vide le tampon et retourne le verdict MT101. */
+        boolean finish() throws IOException {
+            boolean consistent = true;
+            if (knownTotal > 0) {
+                MT101Writer.writeMessageEnd(out);
+                if (messageIndex != knownTotal) {
+                    validationErrors.add("Champ :28D: incohérent: " + messageIndex + " messages produits pour "
+                            + knownTotal + " annoncés (NbOfTxs " + header.getNumberOfTransactions() + ")");
+                    consistent = false;
+                }
+            } else {
+                open();
+                int total = messageIndex;
+                if (spoolOut != null) {
+                    spoolOut.close();
+                    try (InputStream spooled = Files.newInputStream(spool)) {
+                        byte[] buffer = new byte[8192];
+                        for (int i = 0; i < spilledLengths.size(); i++) {
+                            writeHeader(i + 1, total);
+                            copy(spooled, spilledLengths.get(i), buffer);
+                            MT101Writer.writeMessageEnd(out);
+                        }
+                    }
+                }
+                writeHeader(total, total);
+                message.writeTo(out);
+                MT101Writer.writeMessageEnd(out);
+            }
+            out.flush();
+            if (messageIndex > 1) {
+                logger.info("MT101 (flux) découpé en {} messages", messageIndex);
+            }
+            return validator.finish(validationErrors) && consistent;
+        }
+
+        private void copy(InputStream from, int length, byte[] buffer) throws IOException {
+            int remaining = length;
+            while (remaining > 0) {
+                int read = from.read(buffer, 0, Math.min(buffer.length, remaining));
+                if (read < 0) throw new IOException("Fichier de débordement MT101 tronqué");
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+
+        /** Supprime le fichier de débordement éventuel. */
+        @Override
+        public void close() {
+            try {
+                if (spoolOut != null) spoolOut.close();
+                if (spool != null) Files.deleteIfExists(spool);
+            } catch (IOException e) {
+                logger.warn("Suppression du fichier de débordement MT101 impossible: {}", spool, e);
+            }
+        }
+
+        boolean hasTransactions() { return transactionCount > 0; }
+        boolean isStarted() { return out != null; }
+        long getTransactionCount() { return transactionCount; }
+        long getByteCount() { return countingOut != null ? countingOut.getByteCount() : 0; }
+    }
+
+    /** Règle de découpage courante (mx.mt.split.*) pour une Séquence A de la longueur donnée. */
+    private MT101Splitter newSplitter(int sequenceALength) {
+        return new MT101Splitter(splitMaxChars, splitMaxTransactions, sequenceALength);
+    }
+
+    /**
+     * Découpage d'un MT101 en plusieurs messages: une transaction ouvre un nouveau message quand le message
+     * courant a atteint mx.mt.split.max-transactions, ou quand l'ajouter ferait dépasser au bloc 4
+     * mx.mt.split.max-chars caractères (Séquence A, :28D: au plus long et "-}" compris).
+     * Une transaction seule plus longue que la limite forme son propre message.
+     */
+    private static class MT101Splitter {
+        /** Allongement maximal de :28D: entre "1/1" et "99999/99999" (5n/5n). */
+        private static final int INDEX_RESERVE = 8;
+        private final int maxTransactions;
+        private final int budget;
+        private int length;
+        private int count;
+
+        MT101Splitter(int maxChars, int maxTransactions, int sequenceALength) {
+            this.maxTransactions = maxTransactions;
+            this.budget = maxChars > 0 ? maxChars - sequenceALength - INDEX_RESERVE - "-}".length() : Integer.MAX_VALUE;
+        }
+
+        /** Compte une Séquence B; retourne true si elle ouvre un nouveau message. */
+        boolean add(int sequenceBLength) {
+            boolean split = count > 0
+                    && ((maxTransactions > 0 && count >= maxTransactions) || length + sequenceBLength > budget);
+            if (split) {
+                length = 0;
+                count = 0;
+            }
+            length += sequenceBLength;
+            count++;
+            return split;
+        }
+
+        /**
+         * Nombre de messages connu avant lecture des transactions: 1 sans découpage,
+         * NbOfTxs / max-transactions si seul le nombre de transactions limite; 0 si la taille décide.
+         */
+        int expectedMessages(String declaredTransactions) {
+            if (budget == Integer.MAX_VALUE && maxTransactions <= 0) return 1;
+            if (budget != Integer.MAX_VALUE || declaredTransactions == null) return 0;
+            try {
+                long declared = Long.parseLong(declaredTransactions.trim());
+                return declared > 0 ? (int) ((declared + maxTransactions - 1) / maxTransactions) : 0;
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+    }
+
     /**
      * Construit le message MT101 (SWIFT) en concaténant les blocs {1:}{2:}{3:}{4:}{5:}.
+     * Si le bloc 4 dépasse les limites mx.mt.split.*, les transactions sont réparties sur plusieurs messages
+     * complets (blocs 1 à 4, :28D: n/total), séparés par une ligne vide.
      */
     private String generateMT101Message(MXMessage mxMessage, List<String> validationErrors) {
-        StringBuilder mt101 = new StringBuilder();
-
         // Bloc 1: Basic Header Block (obligatoire)
         String bloc1 = generateBloc1(mxMessage);
-        mt101.append(bloc1).append("\n");
 
         // Bloc 2: Application Header Block (obligatoire)
         String bloc2 = generateBloc2(mxMessage);
-        mt101.append(bloc2).append("\n");
 
-        // Bloc 3: User Header Block (optionnel)
-        String bloc3 = generateBloc3();
-        if (!bloc3.isEmpty()) {
-            mt101.append(bloc3).append("\n");
+        // Bloc 4: Text Block (obligatoire) — Séquence A puis Séquences B
+        MT101Writer sequenceA = new MT101Writer(128).sequenceA(mxMessage, validationErrors, 1, 1);
+
+        List<MXMessage.PaymentInstruction> payments = mxMessage.getPaymentInstructions();
+        if (payments == null || payments.isEmpty()) {
+            validationErrors.add("Aucune instruction de paiement trouvée");
+            MT101Writer mt101 = MT101Writer.forThread(1, 512);
+            writeHeaders(mt101, bloc1, bloc2);
+            return mt101.append(sequenceA).endMessage().toString();
+        }
+        List<SequenceBChunk> chunks = renderSequencesB(payments, validationErrors);
+
+        // Découpage: premier passage sur les longueurs seules pour connaître le total de :28D:
+        MT101Splitter splitter = newSplitter(sequenceA.charLength());
+        List<Integer> messageStarts = new ArrayList<>();
+        messageStarts.add(0);
+        int length = 0;
+        int tx = 0;
+        for (SequenceBChunk chunk : chunks) {
+            for (int k = 0; k < chunk.count; k++, tx++) {
+                if (splitter.add(chunk.charLength(k))) {
+                    messageStarts.add(tx);
+                }
+            }
+            length += chunk.text.length();
+        }
+        int total = messageStarts.size();
+        if (total > 1) {
+            logger.info("MT101 découpé en {} messages ({} transactions)", total, payments.size());
         }
 
-        // Bloc 4: Text Block (obligatoire)
-        String bloc4 = generateBloc4(mxMessage, validationErrors);
-        mt101.append(bloc4).append("\n");
+        MT101Writer mt101 = MT101Writer.forThread(1, length + total * (sequenceA.length() + 160));
+        int message = 0;
+        tx = 0;
+        for (SequenceBChunk chunk : chunks) {
+            for (int k = 0; k < chunk.count; k++, tx++) {
+                if (message < total && tx == messageStarts.get(message)) {
+                    if (message > 0) {
+                        mt101.endMessage();
+                    }
+                    message++;
+                    writeHeaders(mt101, bloc1, bloc2);
+                    if (total == 1) {
+                        mt101.append(sequenceA);
+                    } else {
+                        // Erreurs de Séquence A déjà relevées au premier rendu
+                        mt101.sequenceA(mxMessage, new ArrayList<>(), message, total);
+                    }
+                }
+                mt101.append(chunk.text, chunk.start(k), chunk.ends[k], chunk.charLength(k));
+            }
+        }
+        mt101.endMessage();
+        for (SequenceBChunk chunk : chunks) {
+            if (chunk.shared) MT101Writer.release(chunk.text);
+        }
 
         // Bloc 5: Trailer Block (obligatoire)
        // String bloc5 = generateBloc5(mt101.toString());
@@ -152,6 +749,14 @@ public class ConversionService {
         return mt101.toString();
     }
 
+    /** Blocs 1, 2 et 3 (optionnel) d'un message. */
+    private static void writeHeaders(MT101Writer mt101, String bloc1, String bloc2) {
+        mt101.line(bloc1).line(bloc2);
+
+        // Bloc 3: User Header Block (optionnel)
+        mt101.bloc3(LocalDateTime.now());
+    }
+
     private String generateBloc1(MXMessage mxMessage) {
         // Déterminer le BIC du débiteur
         String bic = mxMessage != null ? mxMessage.getDebtorBIC() : null;
@@ -214,129 +819,77 @@ public class ConversionService {
         return "{2:I101" + receiver12 + priority + "}";
     }
 
+    /** Bloc 3 seul, pour régénérer l'horodatage d'un MT101 servi depuis le cache (rendu par MT101Writer.bloc3). */
     private String generateBloc3() {
         // {3:{113:XXXX}{108:REF12345678}} (optionnel)
-        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
+        String timestamp = LocalDateTime.now().format(BLOC3_TIMESTAMP);
         return "{3:{108:REF" + timestamp + "}}";
     }
 
-    private String generateBloc4(MXMessage mxMessage, List<String> validationErrors) {
-        StringBuilder bloc4 = new StringBuilder();
-        bloc4.append("{4:\n");
-
-        // :20: Transaction Reference Number (obligatoire)
-        String transactionRef = mxMessage.getMessageId();
-        if (transactionRef != null && !transactionRef.trim().isEmpty()) {
-            bloc4.append(":20:").append(transactionRef).append("\n");
-        } else {
-            validationErrors.add("Champ :20: (Transaction Reference) manquant");
-        }
-
-        // :28D: Message Index/Total (obligatoire) — valeur fixe
-        bloc4.append(":28D:1/1\n");
-
-        // :30: Requested Execution Date (obligatoire)
-        String executionDate = mxMessage.getRequestedExecutionDate();
-        if (executionDate != null && !executionDate.trim().isEmpty()) {
-            // Accepter AAAAMMJJ ou AAAA-MM-JJ
-            try {
-                String normalized = executionDate.contains("-") ? executionDate.replaceAll("-", "").substring(0, 8) : executionDate;
-                if (normalized.matches("\\d{8}")) {
-                    bloc4.append(":30:").append(normalized).append("\n");
-                } else {
-                    validationErrors.add("Format de :30: invalide (attendu AAAAMMJJ)");
-                }
-            } catch (Exception e) {
-                validationErrors.add("Format de :30: invalide (exception de parsing)");
+    /**
+     * Séquences B de toutes les transactions, dans l'ordre. Sous mx.mt.parallel-threshold transactions,
+     * un seul lot rendu séquentiellement; au-delà, les transactions sont découpées en lots de
+     * mx.mt.parallel-chunk-size rendus chacun dans son propre tampon (texte + erreurs) sur le ForkJoinPool courant,
+     * puis les erreurs sont concaténées dans l'ordre d'origine (résultat identique au chemin séquentiel).
+     */
+    private List<SequenceBChunk> renderSequencesB(List<MXMessage.PaymentInstruction> payments, List<String> validationErrors) {
+        if (parallelThreshold <= 0 || payments.size() < parallelThreshold) {
+            SequenceBChunk chunk = new SequenceBChunk(MT101Writer.forThread(0, payments.size() * 160), payments.size());
+            for (MXMessage.PaymentInstruction payment : payments) {
+                chunk.add(payment, validationErrors);
             }
-        } else {
-            validationErrors.add("Champ :30: (Requested Execution Date) manquant");
+            return List.of(chunk);
         }
 
-        // Séquences B - Détails des transactions
-        List<MXMessage.PaymentInstruction> payments = mxMessage.getPaymentInstructions();
-        if (payments == null || payments.isEmpty()) {
-            validationErrors.add("Aucune instruction de paiement trouvée");
-            bloc4.append("-}\n");
-            return bloc4.toString();
+        int chunkSize = Math.max(1, parallelChunkSize);
+        int chunkCount = (payments.size() + chunkSize - 1) / chunkSize;
+        List<SequenceBChunk> chunks = IntStream.range(0, chunkCount)
+                .parallel()
+                .mapToObj(i -> {
+                    int end = Math.min(payments.size(), (i + 1) * chunkSize);
+                    SequenceBChunk chunk = new SequenceBChunk(MT101Writer.borrow((end - i * chunkSize) * 160), end - i * chunkSize);
+                    chunk.shared = true;
+                    for (int j = i * chunkSize; j < end; j++) {
+                        chunk.add(payments.get(j), chunk.errors);
+                    }
+                    return chunk;
+                })
+                .collect(Collectors.toList());
+
+        for (SequenceBChunk chunk : chunks) {
+            validationErrors.addAll(chunk.errors);
         }
-
-        for (MXMessage.PaymentInstruction payment : payments) {
-            generateSequenceB(bloc4, payment, validationErrors);
-        }
-
-        bloc4.append("-}\n");
-        return bloc4.toString();
+        return chunks;
     }
 
     /**
-     * Construit la séquence par transaction (tags :21:, :32B:, :50K:, :59:, :71A:, :70:).
+     * Tampon indépendant d'un lot de Séquences B: octets, fin de chaque transaction (octets et caractères)
+     * et erreurs du lot.
      */
-    private void generateSequenceB(StringBuilder bloc4, MXMessage.PaymentInstruction payment, List<String> validationErrors) {
-        // :21: EndToEndId / InstructionId (obligatoire)
-        String txnRef = payment.getInstructionId();
-        if (txnRef != null && !txnRef.trim().isEmpty()) {
-            bloc4.append(":21:").append(txnRef).append("\n");
-        } else {
-            validationErrors.add("Champ :21: (Transaction Reference par transaction) manquant");
-        }
-
-        // :32B: Devise et Montant (obligatoire)
-        String currency = payment.getCurrency();
-        String amount = payment.getAmount();
-        boolean hasCurrency = currency != null && !currency.trim().isEmpty();
-        boolean hasAmount = amount != null && !amount.trim().isEmpty();
-        if (hasCurrency && hasAmount) {
-            // Format MT: utiliser virgule décimale
-            String amt = amount.replace('.', ',');
-            bloc4.append(":32B:").append(currency).append(amt).append("\n");
-        } else {
-            if (!hasCurrency) validationErrors.add("Champ devise manquant pour :32B:");
-            if (!hasAmount) validationErrors.add("Champ montant manquant pour :32B:");
-        }
-
-        // :50K: Donneur d'ordre (optionnel)
-        String debtorName = payment.getDebtorName();
-        if (debtorName != null && !debtorName.trim().isEmpty()) {
-            bloc4.append(":50K:").append(debtorName).append("\n");
-        }
-
-        // :59: Bénéficiaire (obligatoire)
-        String creditorName = payment.getCreditorName();
-        if (creditorName != null && !creditorName.trim().isEmpty()) {
-            bloc4.append(":59:").append(creditorName).append("\n");
-        } else {
-            validationErrors.add("Champ :59: (Beneficiary Customer) manquant");
-        }
-
-        // :71A: Frais (obligatoire) — pas de valeur par défaut
-        String chargeBearer = payment.getChargeBearer();
-        if (chargeBearer != null && !chargeBearer.trim().isEmpty()) {
-            String cb = chargeBearer.toUpperCase();
-            switch (cb) {
-                case "DEBT": cb = "OUR"; break;
-                case "CRED": cb = "BEN"; break;
-                case "SHAR":
-                case "SLEV": cb = "SHA"; break;
-                case "OUR":
-                case "BEN":
-                case "SHA": break; // déjà au bon format
-                default:
-                    validationErrors.add("Code de frais inconnu pour :71A: ('" + chargeBearer + "')");
-                    cb = null; // ne pas écrire de valeur par défaut
-            }
-            if (cb != null) {
-                bloc4.append(":71A:").append(cb).append("\n");
-            }
-        } else {
-            validationErrors.add("Champ :71A: (Details of Charges) manquant");
-        }
-
-        // :70: Infos (optionnel)
-        String remittanceInfo = payment.getRemittanceInfo();
-        if (remittanceInfo != null && !remittanceInfo.trim().isEmpty()) {
-            bloc4.append(":70:").append(remittanceInfo).append("\n");
+    private static class SequenceBChunk {
+        private final MT101Writer text;
+        private final int[] ends;
+        private final int[] charEnds;
+        private final List<String> errors = new ArrayList<>();
+        private int count;
+        /** Tampon emprunté à MT101Writer.borrow(), rendu une fois le message assemblé. */
+        private boolean shared;
+
+        SequenceBChunk(MT101Writer text, int transactions) {
+            this.text = text;
+            this.ends = new int[transactions];
+            this.charEnds = new int[transactions];
         }
+
+        void add(MXMessage.PaymentInstruction payment, List<String> validationErrors) {
+            text.sequenceB(payment, validationErrors);
+            ends[count] = text.length();
+            charEnds[count++] = text.charLength();
+        }
+
+        int start(int k) { return k == 0 ? 0 : ends[k - 1]; }
+        /** Longueur de la transaction k en caractères (règle de découpage mx.mt.split.max-chars). */
+        int charLength(int k) { return charEnds[k] - (k == 0 ? 0 : charEnds[k - 1]); }
     }
 
 //    private String generateBloc5(String fullMessage) {
@@ -346,25 +899,17 @@ public class ConversionService {
 //    }
 
     /**
-     * Validation minimale du squelette MT101 (présence blocs et tags obligatoires).
+     * Validation du squelette MT101 en une lecture: blocs, ordre des champs et champs obligatoires
+     * de la Séquence A et de chaque transaction (voir MT101StructureValidator), erreurs localisées à la ligne.
      */
     private boolean validateMT101Structure(String mt101Message, List<String> validationErrors) {
-        boolean isValid = true;
-
-        if (!mt101Message.contains("{1:")) { validationErrors.add("Bloc 1 (Basic Header) manquant"); isValid = false; }
-        if (!mt101Message.contains("{2:")) { validationErrors.add("Bloc 2 (Application Header) manquant"); isValid = false; }
-        if (!mt101Message.contains("{4:")) { validationErrors.add("Bloc 4 (Text Block) manquant"); isValid = false; }
-       // if (!mt101Message.contains("{5:")) { validationErrors.add("Bloc 5 (Trailer) manquant"); isValid = false; }
-
-        if (!mt101Message.contains(":20:")) { validationErrors.add("Champ :20: (Transaction Reference) manquant"); isValid = false; }
-        if (!mt101Message.contains(":28D:")) { validationErrors.add("Champ :28D: (Message Index/Total) manquant"); isValid = false; }
-        if (!mt101Message.contains(":30:")) { validationErrors.add("Champ :30: (Requested Execution Date) manquant"); isValid = false; }
-        if (!mt101Message.contains(":21:")) { validationErrors.add("Champ :21: (Transaction Reference par transaction) manquant"); isValid = false; }
-        if (!mt101Message.contains(":32B:")) { validationErrors.add("Champ :32B: (Currency and Amount) manquant"); isValid = false; }
-        if (!mt101Message.contains(":59:")) { validationErrors.add("Champ :59: (Beneficiary Customer) manquant"); isValid = false; }
-        if (!mt101Message.contains(":71A:")) { validationErrors.add("Champ :71A: (Details of Charges) manquant"); isValid = false; }
-
-        return isValid;
+        ConversionFlightEvents.ValidationEvent event = ConversionFlightEvents.beginValidation();
+        int errorsBefore = validationErrors.size();
+        MT101StructureValidator validator = new MT101StructureValidator(mtValidationMaxErrors);
+        validator.feed(mt101Message);
+        boolean valid = validator.finish(validationErrors);
+        ConversionFlightEvents.commitValidation(event, "mt101", mt101Message.length(), valid, validationErrors.size() - errorsBefore);
+        return valid;
     }
 
     /** Username courant (ou "anonymous"). */
@@ -374,6 +919,11 @@ public class ConversionService {
         return auth.getName();
     }
 
+    /** Critère "appartient à l'utilisateur" des listings d'historique. */
+    private static Criteria ownedBy(String username) {
+        return Criteria.where("ownerUsername").is(username);
+    }
+
     /** Test rôle ADMIN. */
     private boolean isAdmin(Authentication auth){
         if(auth==null) return false;
@@ -384,7 +934,8 @@ public class ConversionService {
     }
 
     /**
-     * Persist une entrée d'historique générique (succès ou erreur).
+     * Persist une entrée d'historique générique (succès ou erreur). Seules les empreintes des contenus sont calculées ici:
+     * contenus et entrée sont écrits en différé (ConversionHistoryWriter). Clôt le chronométrage de la conversion.
      */
     private void saveConversionHistory(MXMessage mxMessage,
                                        String mxRawContent,
@@ -392,7 +943,9 @@ public class ConversionService {
                                        String status,
                                        String errorMessage,
                                        List<String> mtValidationErrors,
-                                       List<String> mxValidationErrors) {
+                                       List<String> mxValidationErrors,
+                                       ConversionMetrics.Timings timings) {
+        long start = System.nanoTime();
         try {
             ConversionHistory history = new ConversionHistory();
             history.setConversionDate(LocalDateTime.now());
@@ -401,9 +954,11 @@ public class ConversionService {
             history.setOutputFormat("MT101");
             history.setOwnerUsername(currentUsername());
 
-            // Contenus
+            // Contenus: GridFS, l'historique ne garde que leur empreinte
+            ConversionContentStore.PendingContent mxContent = null;
+            ConversionContentStore.PendingContent mtContent = null;
             if (mxRawContent != null) {
-                history.setMxContent(mxRawContent);
+                mxContent = contentStore.prepare(mxRawContent, ConversionContentStore.MX_CONTENT_TYPE);
                 history.setInputSize((long) mxRawContent.length());
             } else if (mxMessage != null) {
                 // fallback si nécessaire
@@ -412,7 +967,7 @@ public class ConversionService {
             }
 
             if (mtMessage != null) {
-                history.setMtContent(mtMessage);
+                mtContent = contentStore.prepare(mtMessage, ConversionContentStore.MT_CONTENT_TYPE);
                 history.setOutputSize((long) mtMessage.length());
             }
 
@@ -425,108 +980,178 @@ public class ConversionService {
                 history.setMxValidationErrors(mxValidationErrors);
             }
 
-            conversionHistoryRepository.save(history);
+            timings.record(ConversionMetrics.SAVE_HISTORY, start);
+            recordTimings(history, timings);
+            historyWriter.enqueue(history, mxContent, mtContent);
+        } catch (Exception e) {
+            logger.error("Erreur lors de la sauvegarde de l'historique", e);
+        }
+        metrics.conversionCompleted(timings, status, mxMessage != null ? mxMessage.getMessageId() : null,
+                mxRawContent != null ? Long.valueOf(mxRawContent.length()) : null,
+                mtMessage != null ? Long.valueOf(mtMessage.length()) : null,
+                mxMessage != null ? Long.valueOf(mxMessage.getPaymentInstructions().size()) : null);
+    }
+
+    /**
+     * Persist une entrée d'historique pour une conversion en flux: ni le XML ni le MT101 ne sont stockés,
+     * seules les tailles (octets) et les erreurs sont conservées.
+     */
+    private void saveStreamedConversionHistory(MXMessage header,
+                                               long inputBytes,
+                                               long outputBytes,
+                                               long transactionCount,
+                                               String status,
+                                               String errorMessage,
+                                               List<String> mtValidationErrors,
+                                               List<String> mxValidationErrors,
+                                               ConversionMetrics.Timings timings) {
+        try {
+            ConversionHistory history = new ConversionHistory();
+            history.setConversionDate(LocalDateTime.now());
+            history.setStatus(status);
+            history.setInputFormat("pain.001");
+            history.setOutputFormat("MT101");
+            history.setOwnerUsername(currentUsername());
+            history.setInputSize(inputBytes);
+            if (outputBytes > 0) {
+                history.setOutputSize(outputBytes);
+            }
+            if (header != null) {
+                history.setMessageId(header.getMessageId());
+                history.setNumberOfTransactions(header.getNumberOfTransactions());
+            }
+            history.setErrorMessage(errorMessage);
+            if (mtValidationErrors != null && !mtValidationErrors.isEmpty()) {
+                history.setMtValidationErrors(mtValidationErrors);
+            }
+            if (mxValidationErrors != null && !mxValidationErrors.isEmpty()) {
+                history.setMxValidationErrors(mxValidationErrors);
+            }
+            recordTimings(history, timings);
+            historyWriter.enqueue(history);
         } catch (Exception e) {
             logger.error("Erreur lors de la sauvegarde de l'historique", e);
         }
+        metrics.conversionCompleted(timings, status, header != null ? header.getMessageId() : null,
+                inputBytes, outputBytes, transactionCount);
+    }
+
+    /** Durée totale et détail par étape (microsecondes) de la conversion, sur son entrée d'historique. */
+    private static void recordTimings(ConversionHistory history, ConversionMetrics.Timings timings) {
+        history.setProcessingTimeMs(timings.getElapsedMillis());
+        history.setStageDurationsMicros(timings.getStageMicros());
     }
 
     /** Sauvegarde dédiée aux échecs de validation côté MX (avant conversion). */
     public void saveValidationFailure(String mxRawContent, List<String> errors, String message) {
-        saveConversionHistory(null, mxRawContent, null, "ERROR", message, null, errors);
+        saveValidationFailure(mxRawContent, errors, message, metrics.start());
+    }
+
+    private void saveValidationFailure(String mxRawContent, List<String> errors, String message, ConversionMetrics.Timings timings) {
+        saveConversionHistory(null, mxRawContent, null, "ERROR", message, null, errors, timings);
     }
 
     // ================= Méthodes Dashboard / Statistiques =================
-    /** Dernières conversions (TOP 10 par défaut côté repository). */
-    public List<ConversionHistory> getConversionHistory() {
+    // Listings: métadonnées seules (ConversionHistorySummary), les contenus MX / MT restent dans MongoDB
+    /** Dernières conversions (TOP 10). */
+    public List<ConversionHistorySummary> getConversionHistory() {
         try {
-            return conversionHistoryRepository.findTop10ByOwnerUsernameOrderByConversionDateDesc(currentUsername());
+            return conversionHistoryRepository.findSummaries(ownedBy(currentUsername()), PageRequest.of(0, 10, BY_DATE_DESC));
         } catch (Exception e) {
             logger.error("Erreur lors de la récupération de l'historique", e);
             return new ArrayList<>();
         }
     }
 
-    public List<ConversionHistory> getValidConversions() { // SUCCESS
+    public List<ConversionHistorySummary> getValidConversions() { // SUCCESS
         try {
-            return conversionHistoryRepository.findByOwnerUsernameAndStatusOrderByConversionDateDesc(currentUsername(), "SUCCESS");
+            return conversionHistoryRepository.findSummaries(
+                    ownedBy(currentUsername()).and("status").is("SUCCESS"), Pageable.unpaged(BY_DATE_DESC));
         } catch (Exception e) {
             logger.error("Erreur lors de la récupération des conversions valides", e);
             return new ArrayList<>();
         }
     }
 
-    public List<ConversionHistory> getInvalidConversions() { // ERROR
+    public List<ConversionHistorySummary> getInvalidConversions() { // ERROR
         try {
-            return conversionHistoryRepository.findByOwnerUsernameAndStatusOrderByConversionDateDesc(currentUsername(), "ERROR");
+            return conversionHistoryRepository.findSummaries(
+                    ownedBy(currentUsername()).and("status").is("ERROR"), Pageable.unpaged(BY_DATE_DESC));
         } catch (Exception e) {
             logger.error("Erreur lors de la récupération des conversions invalides", e);
             return new ArrayList<>();
         }
     }
 
-    public long getTotalConversions() {
+    /** Dernières conversions en échec (ERROR), au plus limit entrées. */
+    public List<ConversionHistorySummary> getInvalidConversions(int limit) {
         try {
-            return conversionHistoryRepository.findByOwnerUsernameOrderByConversionDateDesc(currentUsername()).size();
+            return conversionHistoryRepository.findSummaries(
+                    ownedBy(currentUsername()).and("status").is("ERROR"), PageRequest.of(0, limit, BY_DATE_DESC));
         } catch (Exception e) {
-            logger.error("Erreur lors du comptage total", e);
-            return 0;
+            logger.error("Erreur lors de la récupération des conversions invalides", e);
+            return new ArrayList<>();
         }
     }
 
-    public long getSuccessfulConversions() {
+    // Compteurs: lus sur les compteurs journaliers pré-agrégés (conversion_daily_stats)
+    /** Total / SUCCESS / ERROR de l'utilisateur courant en une seule requête. */
+    public ConversionStatusCount getConversionCounts() {
         try {
-            return conversionHistoryRepository.findByOwnerUsernameAndStatusOrderByConversionDateDesc(currentUsername(), "SUCCESS").size();
+            return dailyStatsService.countAll(currentUsername());
         } catch (Exception e) {
-            logger.error("Erreur lors du comptage des succès", e);
-            return 0;
+            logger.error("Erreur lors du comptage des conversions", e);
+            return new ConversionStatusCount(null, 0, 0, 0);
         }
     }
 
+    public long getTotalConversions() {
+        return getConversionCounts().getTotal();
+    }
+
+    public long getSuccessfulConversions() {
+        return getConversionCounts().getValid();
+    }
+
     public long getFailedConversions() {
-        try {
-            return conversionHistoryRepository.findByOwnerUsernameAndStatusOrderByConversionDateDesc(currentUsername(), "ERROR").size();
-        } catch (Exception e) {
-            logger.error("Erreur lors du comptage des échecs", e);
-            return 0;
-        }
+        return getConversionCounts().getError();
     }
 
-    public List<ConversionHistory> getRecentConversions(int limit) {
+    public List<ConversionHistorySummary> getRecentConversions(int limit) {
         try {
-            List<ConversionHistory> all = conversionHistoryRepository.findByOwnerUsernameOrderByConversionDateDesc(currentUsername());
-            return all.stream().limit(limit).collect(java.util.stream.Collectors.toList());
+            return conversionHistoryRepository.findSummaries(ownedBy(currentUsername()), PageRequest.of(0, limit, BY_DATE_DESC));
         } catch (Exception e) {
             logger.error("Erreur lors de la récupération des conversions récentes", e);
             return new ArrayList<>();
         }
     }
 
-    public List<ConversionHistory> getAllConversions() {
+    public List<ConversionHistorySummary> getAllConversions() {
         try {
-            return conversionHistoryRepository.findByOwnerUsernameOrderByConversionDateDesc(currentUsername());
+            return conversionHistoryRepository.findSummaries(ownedBy(currentUsername()), Pageable.unpaged(BY_DATE_DESC));
         } catch (Exception e) {
             logger.error("Erreur lors de la récupération de toutes les conversions", e);
             return new ArrayList<>();
         }
     }
 
-    public List<ConversionHistory> getTodayConversions() {
+    public List<ConversionHistorySummary> getTodayConversions() {
         try {
             LocalDateTime startOfDay = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0).withNano(0);
             LocalDateTime endOfDay = startOfDay.plusDays(1);
-            return conversionHistoryRepository.findByOwnerUsernameAndConversionDateBetween(currentUsername(), startOfDay, endOfDay);
+            return conversionHistoryRepository.findSummaries(ownedBy(currentUsername())
+                    .and("conversionDate").gte(startOfDay).lt(endOfDay), Pageable.unpaged(BY_DATE_DESC));
         } catch (Exception e) {
             logger.error("Erreur lors de la récupération des conversions d'aujourd'hui", e);
             return new ArrayList<>();
         }
     }
 
-    public List<ConversionHistory> getConversionsLast7Days() {
+    public List<ConversionHistorySummary> getConversionsLast7Days() {
         try {
             LocalDateTime startDate = LocalDateTime.now().minusDays(7);
-            LocalDateTime endDate = LocalDateTime.now();
-            return conversionHistoryRepository.findByOwnerUsernameAndConversionDateBetween(currentUsername(), startDate, endDate);
+            return conversionHistoryRepository.findSummaries(ownedBy(currentUsername())
+                    .and("conversionDate").gte(startDate), Pageable.unpaged(BY_DATE_DESC));
         } catch (Exception e) {
             logger.error("Erreur lors de la récupération des conversions des 7 derniers jours", e);
             return new ArrayList<>();
@@ -534,11 +1159,12 @@ public class ConversionService {
     }
 
     /** Historique des autres utilisateurs (réservé admin). */
-    public List<ConversionHistory> getOtherUsersHistory(){
+    public List<ConversionHistorySummary> getOtherUsersHistory(){
         try {
             Authentication auth = SecurityContextHolder.getContext().getAuthentication();
             if(!isAdmin(auth)) return new ArrayList<>();
-            return conversionHistoryRepository.findByOwnerUsernameNotOrderByConversionDateDesc(currentUsername());
+            return conversionHistoryRepository.findSummaries(
+                    Criteria.where("ownerUsername").ne(currentUsername()), Pageable.unpaged(BY_DATE_DESC));
         } catch (Exception e){
             logger.error("Erreur récupération autres historiques", e);
             return new ArrayList<>();
@@ -549,21 +1175,35 @@ public class ConversionService {
     public long deleteHistoryForUser(String username){
         try {
             if(username == null) {
-                return conversionHistoryRepository.deleteByOwnerUsernameIsNull();
+                return deleteHistoryForOwners(Collections.singletonList(null));
             }
             String trimmed = username.trim();
             if(trimmed.isEmpty() || "_ANONYMOUS_".equalsIgnoreCase(trimmed) || "anonymous".equalsIgnoreCase(trimmed) || "null".equalsIgnoreCase(trimmed)) {
-                long c1 = conversionHistoryRepository.deleteByOwnerUsernameIsNull();
-                long c2 = conversionHistoryRepository.deleteByOwnerUsername("");
-                return c1 + c2;
+                return deleteHistoryForOwners(Arrays.asList(null, ""));
             }
-            return conversionHistoryRepository.deleteByOwnerUsername(trimmed);
+            return deleteHistoryForOwners(List.of(trimmed));
         } catch(Exception e){
             logger.error("Erreur suppression historique utilisateur {}", username, e);
             return 0;
         }
     }
 
+    /** Supprime l'historique (null: entrées sans propriétaire), les compteurs journaliers et les contenus devenus orphelins. */
+    private long deleteHistoryForOwners(List<String> owners){
+        // Entrées encore en file d'écriture: à supprimer aussi
+        historyWriter.flush();
+        Set<String> contentHashes = contentStore.findContentHashes(Criteria.where("ownerUsername").in(owners));
+        long count = 0;
+        for(String owner : owners){
+            dailyStatsService.deleteForOwner(owner);
+            count += owner == null
+                    ? conversionHistoryRepository.deleteByOwnerUsernameIsNull()
+                    : conversionHistoryRepository.deleteByOwnerUsername(owner);
+        }
+        historyWriter.deleteUnreferencedContents(contentHashes);
+        return count;
+    }
+
     public long deleteOwnHistory(){
         return deleteHistoryForUser(currentUsername());
     }
@@ -571,8 +1211,12 @@ public class ConversionService {
     public boolean deleteHistoryEntry(String id){
         try {
             if(id == null || id.isBlank()) return false;
-            if(!conversionHistoryRepository.existsById(id)) return false;
+            historyWriter.flush();
+            ConversionHistory entry = conversionHistoryRepository.findWithoutContentById(id).orElse(null);
+            if(entry == null) return false;
             conversionHistoryRepository.deleteById(id);
+            dailyStatsService.removeConversion(entry);
+            historyWriter.deleteUnreferencedContents(Arrays.asList(entry.getMxContentHash(), entry.getMtContentHash()));
             return true;
         } catch(Exception e){
             logger.error("Erreur suppression entrée {}", id, e);
@@ -580,33 +1224,55 @@ public class ConversionService {
         }
     }
 
-    // Méthodes de pagination ajoutées
-    public Page<ConversionHistory> getConversionHistoryPaginated(int page, int size) {
+    // Pagination par curseur (keyset): coût constant quelle que soit la page, total calculé seulement à la demande
+    /**
+     * Page de l'historique de l'utilisateur courant.
+     * @param after curseur: entrées plus anciennes (page suivante)
+     * @param before curseur: entrées plus récentes (page précédente)
+     * @param includeTotal calcul du total (compteurs journaliers)
+     * @throws IllegalArgumentException si un curseur est invalide
+     */
+    public ConversionHistoryCursorPage getConversionHistoryPage(String after, String before, int size, boolean includeTotal) {
+        HistoryCursor afterCursor = HistoryCursor.decode(after);
+        HistoryCursor beforeCursor = HistoryCursor.decode(before);
         try {
             String username = currentUsername();
-            Pageable pageable = PageRequest.of(page, size, Sort.by("conversionDate").descending());
-            return conversionHistoryRepository.findByOwnerUsername(username, pageable);
+            ConversionHistoryCursorPage page = conversionHistoryRepository.findSummarySlice(ownedBy(username), afterCursor, beforeCursor, size);
+            if (includeTotal) {
+                page.setTotalElements(dailyStatsService.countAll(username).getTotal());
+            }
+            return page;
         } catch (Exception e) {
             logger.error("Erreur lors de la récupération de l'historique paginé", e);
-            return Page.empty();
+            return new ConversionHistoryCursorPage(List.of(), null, null, includeTotal ? 0L : null);
         }
     }
 
-    public Page<ConversionHistory> getOtherUsersHistoryPaginated(int page, int size) {
+    /**
+     * Page de l'historique des autres utilisateurs (admin), mêmes curseurs que getConversionHistoryPage.
+     * Le total demandé est un comptage MongoDB (index owner_date).
+     * @throws IllegalArgumentException si un curseur est invalide
+     */
+    public ConversionHistoryCursorPage getOtherUsersHistoryPage(String after, String before, int size, boolean includeTotal) {
+        HistoryCursor afterCursor = HistoryCursor.decode(after);
+        HistoryCursor beforeCursor = HistoryCursor.decode(before);
         try {
-            String currentUser = currentUsername();
-            Pageable pageable = PageRequest.of(page, size, Sort.by("conversionDate").descending());
-            return conversionHistoryRepository.findByOwnerUsernameNot(currentUser, pageable);
+            Criteria others = Criteria.where("ownerUsername").ne(currentUsername());
+            ConversionHistoryCursorPage page = conversionHistoryRepository.findSummarySlice(others, afterCursor, beforeCursor, size);
+            if (includeTotal) {
+                page.setTotalElements(conversionHistoryRepository.countByOwnerUsernameNot(currentUsername()));
+            }
+            return page;
         } catch (Exception e) {
             logger.error("Erreur lors de la récupération de l'historique des autres utilisateurs", e);
-            return Page.empty();
+            return new ConversionHistoryCursorPage(List.of(), null, null, includeTotal ? 0L : null);
         }
     }
 
-    // Méthodes statistiques pour admin
+    // Méthodes statistiques pour admin: utilisateurs distincts lus sur les compteurs journaliers (cache court)
     public long getTotalActiveUsers() {
         try {
-            return conversionHistoryRepository.countDistinctOwnerUsername();
+            return dailyStatsService.getActiveUsers().getActiveUsers();
         } catch (Exception e) {
             logger.error("Erreur lors du comptage des utilisateurs actifs", e);
             return 0;
@@ -615,7 +1281,7 @@ public class ConversionService {
 
     public long getTotalUsersWithSuccess() {
         try {
-            return conversionHistoryRepository.countDistinctOwnerUsernameByStatus("SUCCESS");
+            return dailyStatsService.getActiveUsers().getUsersWithSuccess();
         } catch (Exception e) {
             logger.error("Erreur lors du comptage des utilisateurs avec succès", e);
             return 0;
@@ -624,22 +1290,17 @@ public class ConversionService {
 
     public long getTotalUsersWithErrors() {
         try {
-            return conversionHistoryRepository.countDistinctOwnerUsernameByStatus("ERROR");
+            return dailyStatsService.getActiveUsers().getUsersWithErrors();
         } catch (Exception e) {
             logger.error("Erreur lors du comptage des utilisateurs avec erreurs", e);
             return 0;
         }
     }
 
-    // Nouvelles méthodes pour les statistiques par utilisateur
+    /** Utilisateurs ayant converti au moins un fichier, tri alphabétique (sélecteur admin). */
     public List<String> getAllUsers() {
         try {
-            return conversionHistoryRepository.findAllWithUsernameOnly()
-                    .stream()
-                    .map(ConversionHistory::getOwnerUsername)
-                    .distinct()
-                    .filter(username -> username != null && !username.trim().isEmpty())
-                    .collect(java.util.stream.Collectors.toList());
+            return dailyStatsService.getActiveUsers().getUsernames();
         } catch (Exception e) {
             logger.error("Erreur lors de la récupération des utilisateurs", e);
             return new ArrayList<>();
@@ -650,9 +1311,10 @@ public class ConversionService {
         try {
             Map<String, Object> stats = new HashMap<>();
 
-            long totalConversions = conversionHistoryRepository.countByOwnerUsername(username);
-            long successfulConversions = conversionHistoryRepository.countByOwnerUsernameAndStatus(username, "SUCCESS");
-            long failedConversions = conversionHistoryRepository.countByOwnerUsernameAndStatus(username, "ERROR");
+            ConversionStatusCount counts = dailyStatsService.countAll(username);
+            long totalConversions = counts.getTotal();
+            long successfulConversions = counts.getValid();
+            long failedConversions = counts.getError();
 
             stats.put("username", username);
             stats.put("totalConversions", totalConversions);
@@ -661,7 +1323,8 @@ public class ConversionService {
             stats.put("successRate", totalConversions > 0 ? (double)successfulConversions / totalConversions * 100 : 0.0);
 
             // Récupérer les dernières conversions
-            List<ConversionHistory> recentConversions = conversionHistoryRepository.findTop5ByOwnerUsernameOrderByConversionDateDesc(username);
+            List<ConversionHistorySummary> recentConversions = conversionHistoryRepository.findSummaries(
+                    ownedBy(username), PageRequest.of(0, 5, BY_DATE_DESC));
             stats.put("recentConversions", recentConversions);
 
             return stats;
@@ -673,17 +1336,14 @@ public class ConversionService {
 
     public Map<String, Object> getUserStatsByDate(String username, String date) {
         try {
-            LocalDateTime startOfDay = LocalDate.parse(date).atStartOfDay();
-            LocalDateTime endOfDay = startOfDay.plusDays(1);
+            LocalDate day = LocalDate.parse(date);
 
             Map<String, Object> stats = new HashMap<>();
-            long totalDay = conversionHistoryRepository.countByOwnerUsernameAndConversionDateBetween(username, startOfDay, endOfDay);
-            long successDay = conversionHistoryRepository.countByOwnerUsernameAndStatusAndConversionDateBetween(username, "SUCCESS", startOfDay, endOfDay);
-            long errorDay = conversionHistoryRepository.countByOwnerUsernameAndStatusAndConversionDateBetween(username, "ERROR", startOfDay, endOfDay);
+            ConversionStatusCount counts = dailyStatsService.countRange(username, day, day);
 
-            stats.put("total", totalDay);
-            stats.put("valid", successDay);
-            stats.put("error", errorDay);
+            stats.put("total", counts.getTotal());
+            stats.put("valid", counts.getValid());
+            stats.put("error", counts.getError());
             stats.put("date", date);
             stats.put("username", username);
 
@@ -0,0 +1,173 @@
+package v1.attijariconverter.service;
+
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Recording JDK Flight Recorder de l'application (une seule à la fois), pilotée par /api/admin/diagnostics/jfr:
+ *  - Démarrée au démarrage si mx.jfr.enabled (enregistrement permanent, réglages JDK "default", surcoût ~1 %)
+ *  - Tampon circulaire borné en durée (mx.jfr.max-age-minutes) et en taille (mx.jfr.max-size-mb): les dernières
+ *    minutes sont disponibles au moment d'un pic de latence
+ *  - dump() fige le contenu courant dans un fichier .jfr à ouvrir dans JDK Mission Control, sans arrêter la recording
+ * Les événements de ConversionFlightEvents y sont activés; les commandes MongoDB plus courtes que
+ * mx.jfr.mongo-threshold-ms ne sont pas enregistrées.
+ */
+@Service
+public class FlightRecorderService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlightRecorderService.class);
+
+    private static final String RECORDING_NAME = "attijari-converter";
+
+    @Value("${mx.jfr.enabled:true}")
+    private boolean enabledOnStartup;
+
+    /** Réglages JDK de la recording démarrée au démarrage: default (permanent) ou profile (plus détaillé). */
+    @Value("${mx.jfr.settings:default}")
+    private String defaultSettings;
+
+    @Value("${mx.jfr.max-age-minutes:30}")
+    private long maxAgeMinutes;
+
+    @Value("${mx.jfr.max-size-mb:256}")
+    private long maxSizeMb;
+
+    @Value("${mx.jfr.mongo-threshold-ms:1}")
+    private long mongoThresholdMillis;
+
+    private Recording recording;
+    private String recordingSettings;
+
+    /** État de la recording (endpoint d'administration). */
+    public static class RecordingStatus {
+        private final boolean available;
+        private final String state;
+        private final String settings;
+        private final Instant startTime;
+        private final long maxAgeMinutes;
+        private final long maxSizeMb;
+
+        public RecordingStatus(boolean available, String state, String settings, Instant startTime, long maxAgeMinutes, long maxSizeMb) {
+            this.available = available;
+            this.state = state;
+            this.settings = settings;
+            this.startTime = startTime;
+            this.maxAgeMinutes = maxAgeMinutes;
+            this.maxSizeMb = maxSizeMb;
+        }
+
+        /** JFR disponible dans cette JVM. */
+        public boolean isAvailable() { return available; }
+        /** NONE si aucune recording, sinon RUNNING / STOPPED... */
+        public String getState() { return state; }
+        public String getSettings() { return settings; }
+        public Instant getStartTime() { return startTime; }
+        public long getMaxAgeMinutes() { return maxAgeMinutes; }
+        public long getMaxSizeMb() { return maxSizeMb; }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startOnReady() {
+        if (!enabledOnStartup) return;
+        try {
+            start(defaultSettings);
+        } catch (Exception e) {
+            logger.error("Démarrage de la recording JFR impossible", e);
+        }
+    }
+
+    /**
+     * Démarre la recording (remplace celle en cours).
+     * @param settings réglages JDK: default ou profile
+     * @throws IllegalArgumentException réglages inconnus
+     * @throws IllegalStateException JFR indisponible dans cette JVM
+     */
+    public synchronized RecordingStatus start(String settings) {
+        if (!FlightRecorder.isAvailable()) {
+            throw new IllegalStateException("JDK Flight Recorder indisponible dans cette JVM");
+        }
+        Configuration configuration;
+        try {
+            configuration = Configuration.getConfiguration(settings);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Réglages JFR inconnus: " + settings);
+        }
+        closeRecording();
+        Recording started = new Recording(configuration);
+        started.setName(RECORDING_NAME);
+        started.setToDisk(true);
+        started.setMaxAge(Duration.ofMinutes(maxAgeMinutes));
+        started.setMaxSize(maxSizeMb * 1024 * 1024);
+        started.enable(ConversionFlightEvents.ConversionEvent.class);
+        started.enable(ConversionFlightEvents.ParsingEvent.class);
+        started.enable(ConversionFlightEvents.ValidationEvent.class);
+        started.enable(ConversionFlightEvents.MongoCommandEvent.class).withThreshold(Duration.ofMillis(mongoThresholdMillis));
+        started.start();
+        recording = started;
+        recordingSettings = settings;
+        logger.info("Recording JFR démarrée (réglages {}, {} min / {} Mo)", settings, maxAgeMinutes, maxSizeMb);
+        return getStatus();
+    }
+
+    /** Arrête et libère la recording en cours (les événements non exportés par dump() sont perdus). */
+    public synchronized RecordingStatus stop() {
+        if (recording != null) {
+            closeRecording();
+            logger.info("Recording JFR arrêtée");
+        }
+        return getStatus();
+    }
+
+    /**
+     * Écrit le contenu courant de la recording dans un fichier temporaire .jfr (à supprimer par l'appelant).
+     * @return null si aucune recording n'est en cours
+     */
+    public synchronized Path dump() throws IOException {
+        if (recording == null || recording.getState() != RecordingState.RUNNING) return null;
+        Path file = Files.createTempFile(RECORDING_NAME + "-", ".jfr");
+        try {
+            recording.dump(file);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        logger.info("Recording JFR exportée: {} octets", Files.size(file));
+        return file;
+    }
+
+    public synchronized RecordingStatus getStatus() {
+        if (recording == null) {
+            return new RecordingStatus(FlightRecorder.isAvailable(), "NONE", null, null, maxAgeMinutes, maxSizeMb);
+        }
+        return new RecordingStatus(true, recording.getState().name(), recordingSettings, recording.getStartTime(),
+                maxAgeMinutes, maxSizeMb);
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        closeRecording();
+    }
+
+    private void closeRecording() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+            recordingSettings = null;
+        }
+    }
+}
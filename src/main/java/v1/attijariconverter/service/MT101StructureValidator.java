@@ -0,0 +1,451 @@
+package v1.attijariconverter.service;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Validation structurelle d'un MT101 (un ou plusieurs messages) en une seule lecture, ligne par ligne:
+ *  - Blocs 1, 2, (3) et 4 dans l'ordre, bloc 4 fermé par "-}"
+ *  - Séquence A: :20:, :28D:, :30: obligatoires, dans cet ordre, une fois chacun; :28D: = rang du message / total
+ *  - Séquences B (une par transaction, ouverte par :21:): :21:, :32B:, :59:, :71A: obligatoires,
+ *    ordre :21: :32B: :50K: :59: :71A: :70: (celui de MT101Writer.sequenceB)
+ * Chaque erreur indique sa ligne (et la transaction concernée); au-delà de maxErrors elles sont seulement comptées.
+ * Un champ obligatoire que MT101Writer a omis en signalant pourquoi (format de :30:, code de frais inconnu...) n'est pas
+ * signalé une seconde fois comme manquant: il rend toujours le MT101 invalide (voir finish).
+ * Le texte est fourni par morceaux quelconques (feed), y compris les octets UTF-8 écrits en flux (tap):
+ * seuls les premiers caractères de chaque ligne sont retenus. Non thread-safe, une instance par MT101.
+ */
+final class MT101StructureValidator {
+
+    private static final String[] SEQUENCE_A_TAGS = {"20", "28D", "30"};
+    private static final String[] SEQUENCE_A_NAMES = {
+            "Champ :20: (Transaction Reference) manquant",
+            "Champ :28D: (Message Index/Total) manquant",
+            "Champ :30: (Requested Execution Date) manquant"};
+    private static final String[] SEQUENCE_B_TAGS = {"21", "32B", "50K", "59", "71A", "70"};
+    private static final String[] SEQUENCE_B_NAMES = {
+            "Champ :21: (Transaction Reference par transaction) manquant",
+            "Champ :32B: (Currency and Amount) manquant",
+            null,
+            "Champ :59: (Beneficiary Customer) manquant",
+            "Champ :71A: (Details of Charges) manquant",
+            null};
+    private static final String[] BLOCK_NAMES = {null,
+            "Bloc 1 (Basic Header) manquant",
+            "Bloc 2 (Application Header) manquant",
+            null,
+            "Bloc 4 (Text Block) manquant"};
+
+    private static final int[] SEQUENCE_A_CODES = codes(SEQUENCE_A_TAGS);
+    private static final int[] SEQUENCE_B_CODES = codes(SEQUENCE_B_TAGS);
+    /** Bits des champs obligatoires (rang dans *_TAGS). */
+    private static final int SEQUENCE_A_MANDATORY = 0b111;
+    private static final int SEQUENCE_B_MANDATORY = 0b11011;
+
+    /** Caractères retenus en début de ligne: tag et valeur de :28D: (5n/5n). */
+    private static final int HEAD = 24;
+
+    private final int maxErrors;
+    private final List<String> errors = new ArrayList<>();
+    /** Tag du champ manquant signalé par chaque erreur listée (null: autre erreur). */
+    private final List<String> missingTags = new ArrayList<>();
+    private int errorCount;
+
+    private final char[] head = new char[HEAD];
+    private int headLength;
+    private boolean lineStarted;
+    private int line = 1;
+
+    /** Dernier bloc ouvert du message en cours (0: entre deux messages, 4: dans le bloc 4). */
+    private int block;
+    private int messages;
+    private boolean inSequenceB;
+    /** Champs vus (bits) et rang du dernier champ de la séquence en cours. */
+    private int seen;
+    private int lastRank;
+    /** Un champ a été ouvert (les lignes sans tag qui suivent en sont la suite). */
+    private boolean inField;
+    private int transactions;
+    private int transactionLine;
+    private int declaredTotal = -1;
+    private int lastIndex;
+
+    MT101StructureValidator(int maxErrors) {
+        this.maxErrors = Math.max(1, maxErrors);
+    }
+
+    /** Texte à la suite du précédent: saut de ligne en ligne (indexOf), seul le début de chaque ligne est copié. */
+    void feed(String text) {
+        int n = text.length();
+        int pos = 0;
+        while (pos < n) {
+            int newline = text.indexOf('\n', pos);
+            int end = newline < 0 ? n : newline;
+            if (end > pos) {
+                int copied = Math.min(end - pos, HEAD - Math.min(headLength, HEAD));
+                text.getChars(pos, pos + copied, head, Math.min(headLength, HEAD));
+                headLength += end - pos;
+                lineStarted = true;
+            }
+            if (newline < 0) return;
+            accept('\n');
+            pos = newline + 1;
+        }
+    }
+
+    /** Octets UTF-8 à la suite des précédents (les octets non ASCII ne sont jamais des délimiteurs). */
+    void feed(byte[] bytes, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            accept(bytes[i]);
+        }
+    }
+
+    private void accept(byte b) {
+        accept(b >= 0 ? (char) b : '\u0080');
+    }
+
+    /** Flux qui valide les octets qui le traversent avant de les transmettre à target. */
+    OutputStream tap(OutputStream target) {
+        return new FilterOutputStream(target) {
+            @Override
+            public void write(int b) throws IOException {
+                accept((byte) b);
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                feed(b, off, len);
+                out.write(b, off, len);
+            }
+        };
+    }
+
+    /**
+     * Termine la lecture et ajoute les erreurs à validationErrors. Les erreurs déjà présentes (celles de la génération)
+     * qui citent un champ obligatoire en expliquent l'absence: le "manquant" correspondant n'est pas ajouté
+     * (Séquence A: pour tous les messages; transactions: un par erreur de génération).
+     * @return true si aucune erreur de structure (champs manquants déjà expliqués compris)
+     */
+    boolean finish(List<String> validationErrors) {
+        if (lineStarted) {
+            endLine();
+        }
+        if (block == 4) {
+            error(line, "Bloc 4 non terminé (-} manquant)");
+            closeMessage(line);
+        } else if (block > 0) {
+            error(line, BLOCK_NAMES[4]);
+        }
+        if (messages == 0 && block == 0) {
+            for (int b = 1; b <= 4; b++) {
+                if (BLOCK_NAMES[b] != null) error(0, BLOCK_NAMES[b]);
+            }
+        } else if (declaredTotal > 0 && lastIndex != declaredTotal) {
+            error(line, "Champ :28D: incohérent: " + lastIndex + " messages pour un total annoncé de " + declaredTotal);
+        }
+        Map<String, Integer> explained = explainedOmissions(validationErrors);
+        for (int i = 0; i < errors.size(); i++) {
+            String tag = missingTags.get(i);
+            int remaining = tag != null ? explained.getOrDefault(tag, 0) : 0;
+            if (remaining > 0) {
+                if (!Arrays.asList(SEQUENCE_A_TAGS).contains(tag)) {
+                    explained.put(tag, remaining - 1);
+                }
+                continue;
+            }
+            validationErrors.add(errors.get(i));
+        }
+        if (errorCount > errors.size()) {
+            validationErrors.add("... et " + (errorCount - errors.size()) + " autre(s) erreur(s) de structure MT101");
+        }
+        return errorCount == 0;
+    }
+
+    /** Nombre d'erreurs citant chaque champ obligatoire (premier tag cité dans le message). */
+    private static Map<String, Integer> explainedOmissions(List<String> generationErrors) {
+        Map<String, Integer> explained = new HashMap<>();
+        for (String message : generationErrors) {
+            String tag = null;
+            int first = Integer.MAX_VALUE;
+            for (String[] tags : new String[][]{SEQUENCE_A_TAGS, SEQUENCE_B_TAGS}) {
+                for (String candidate : tags) {
+                    int at = message.indexOf(':' + candidate + ':');
+                    if (at >= 0 && at < first) {
+                        first = at;
+                        tag = candidate;
+                    }
+                }
+            }
+            if (tag != null) {
+                explained.merge(tag, 1, Integer::sum);
+            }
+        }
+        return explained;
+    }
+
+    // ================= Lecture =================
+
+    private void accept(char c) {
+        if (c == '\n') {
+            endLine();
+            line++;
+            return;
+        }
+        lineStarted = true;
+        if (headLength < HEAD) {
+            head[headLength] = c;
+        }
+        headLength++;
+    }
+
+    private void endLine() {
+        int n = Math.min(headLength, HEAD);
+        if (headLength == 0) {
+            // Ligne vide: séparateur entre deux messages uniquement
+            if (block > 0) error(line, "Ligne vide inattendue dans le message");
+        } else if (n >= 3 && head[0] == '{' && head[2] == ':' && head[1] >= '1' && head[1] <= '5') {
+            blockLine(head[1] - '0');
+        } else if (n >= 2 && head[0] == '-' && head[1] == '}') {
+            endOfBlock4();
+        } else {
+            int tagEnd = tagEnd(n);
+            if (tagEnd > 0) {
+                tagLine(tagEnd, n);
+            } else if (block == 4 && inField) {
+                // Suite du champ précédent
+            } else {
+                error(line, "Contenu inattendu " + (block == 4 ? "dans le bloc 4" : "hors bloc 4"));
+            }
+        }
+        headLength = 0;
+        lineStarted = false;
+    }
+
+    /** Position du ':' fermant un tag :nn: ou :nna: en début de ligne, 0 sinon. */
+    private int tagEnd(int n) {
+        if (n < 4 || head[0] != ':') return 0;
+        if (head[3] == ':') return 3;
+        return n >= 5 && head[4] == ':' ? 4 : 0;
+    }
+
+    // ================= Blocs =================
+
+    private void blockLine(int number) {
+        if (number == 5 && block == 0 && messages > 0) {
+            return; // Bloc 5 (Trailer) du message précédent
+        }
+        if (block == 4) {
+            error(line, "Bloc 4 non terminé (-} manquant)");
+            closeMessage(line);
+        }
+        if (number == 5) {
+            error(line, "Bloc 5 (Trailer) inattendu");
+            return;
+        }
+        if (block == 0) {
+            messages++;
+        }
+        if (number <= block) {
+            error(line, "Bloc " + number + " en double ou hors ordre");
+            return;
+        }
+        for (int b = block + 1; b < number; b++) {
+            if (BLOCK_NAMES[b] != null) error(line, BLOCK_NAMES[b]);
+        }
+        block = number;
+        if (number == 4) {
+            openBlock4();
+        }
+    }
+
+    private void openBlock4() {
+        inSequenceB = false;
+        seen = 0;
+        lastRank = -1;
+        inField = false;
+        transactions = 0;
+    }
+
+    private void endOfBlock4() {
+        if (block != 4) {
+            error(line, "Fin de bloc 4 (-}) sans bloc 4 ouvert");
+            return;
+        }
+        closeMessage(line);
+    }
+
+    private void closeMessage(int atLine) {
+        if (inSequenceB) {
+            closeTransaction();
+        } else {
+            closeSequenceA(atLine);
+            error(atLine, SEQUENCE_B_NAMES[0] + " (aucune transaction)", null);
+        }
+        block = 0;
+        inField = false;
+    }
+
+    // ================= Champs =================
+
+    private void tagLine(int tagEnd, int n) {
+        if (block != 4) {
+            if (block == 0) messages++;
+            for (int b = block + 1; b <= 4; b++) {
+                if (BLOCK_NAMES[b] != null) error(line, BLOCK_NAMES[b]);
+            }
+            block = 4;
+            openBlock4();
+        }
+        int code = code(head, 1, tagEnd);
+        int rankA = rank(SEQUENCE_A_CODES, code);
+        int rankB = rank(SEQUENCE_B_CODES, code);
+        inField = true;
+        if (rankA >= 0) {
+            if (inSequenceB) {
+                error(line, "Champ " + tag(tagEnd) + " de Séquence A dans la transaction " + transactions);
+            } else {
+                fieldInOrder(rankA, tagEnd);
+                if (rankA == 1) checkIndex(tagEnd + 1, n);
+            }
+        } else if (rankB >= 0) {
+            if (!inSequenceB) {
+                closeSequenceA(line);
+                inSequenceB = true;
+                openTransaction();
+            } else if (rankB == 0) {
+                closeTransaction();
+                openTransaction();
+            }
+            fieldInOrder(rankB, tagEnd);
+        } else {
+            error(line, "Champ " + tag(tagEnd) + " inattendu dans le bloc 4");
+        }
+    }
+
+    private void fieldInOrder(int rank, int tagEnd) {
+        if ((seen & (1 << rank)) != 0) {
+            error(line, "Champ " + tag(tagEnd) + " en double" + where());
+        } else if (rank < lastRank) {
+            error(line, "Champ " + tag(tagEnd) + " hors ordre" + where());
+        }
+        seen |= 1 << rank;
+        lastRank = Math.max(lastRank, rank);
+    }
+
+    private void closeSequenceA(int atLine) {
+        for (int r = 0; r < SEQUENCE_A_TAGS.length; r++) {
+            if ((SEQUENCE_A_MANDATORY & (1 << r)) != 0 && (seen & (1 << r)) == 0) {
+                error(atLine, SEQUENCE_A_NAMES[r] + " (Séquence A)", SEQUENCE_A_TAGS[r]);
+            }
+        }
+    }
+
+    private void openTransaction() {
+        transactions++;
+        transactionLine = line;
+        seen = 0;
+        lastRank = -1;
+    }
+
+    private void closeTransaction() {
+        for (int r = 0; r < SEQUENCE_B_TAGS.length; r++) {
+            if ((SEQUENCE_B_MANDATORY & (1 << r)) != 0 && (seen & (1 << r)) == 0) {
+                error(transactionLine, SEQUENCE_B_NAMES[r] + where(), SEQUENCE_B_TAGS[r]);
+            }
+        }
+    }
+
+    /** :28D: rang/total: rang = numéro du message dans le fichier, total identique pour tous les messages. */
+    private void checkIndex(int from, int n) {
+        int slash = -1;
+        for (int i = from; i < n; i++) {
+            if (head[i] == '/') {
+                slash = i;
+                break;
+            }
+        }
+        int index = slash > from ? digits(from, slash) : -1;
+        int total = slash > 0 && n > slash + 1 && headLength <= HEAD ? digits(slash + 1, n) : -1;
+        if (index <= 0 || total <= 0) {
+            error(line, "Format de :28D: invalide (attendu rang/total)");
+            return;
+        }
+        if (index != messages) {
+            error(line, "Champ :28D: incohérent: message " + messages + " numéroté " + index);
+        }
+        if (index > total) {
+            error(line, "Champ :28D: incohérent: rang " + index + " supérieur au total " + total);
+        }
+        if (declaredTotal > 0 && total != declaredTotal) {
+            error(line, "Champ :28D: incohérent: total " + total + " au lieu de " + declaredTotal);
+        } else if (declaredTotal < 0) {
+            declaredTotal = total;
+        }
+        lastIndex = index;
+    }
+
+    private int digits(int from, int to) {
+        if (to - from < 1 || to - from > 5) return -1;
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = head[i];
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private String where() {
+        return inSequenceB ? " (transaction " + transactions + ")" : " (Séquence A)";
+    }
+
+    private String tag(int tagEnd) {
+        return new String(head, 0, tagEnd + 1);
+    }
+
+    private void error(int atLine, String message) {
+        error(atLine, message, null);
+    }
+
+    /** @param missingTag tag du champ obligatoire manquant signalé (null: autre erreur) */
+    private void error(int atLine, String message, String missingTag) {
+        errorCount++;
+        if (errors.size() < maxErrors) {
+            errors.add(atLine > 0 ? "Ligne " + atLine + ": " + message : message);
+            missingTags.add(missingTag);
+        }
+    }
+
+    // ================= Codes de tags =================
+
+    private static int[] codes(String[] tags) {
+        int[] codes = new int[tags.length];
+        for (int i = 0; i < tags.length; i++) {
+            codes[i] = code(tags[i].toCharArray(), 0, tags[i].length());
+        }
+        return codes;
+    }
+
+    /** Tag de 2 ou 3 caractères ASCII en un entier. */
+    private static int code(char[] chars, int from, int to) {
+        int code = 0;
+        for (int i = from; i < to; i++) {
+            code = (code << 8) | (chars[i] & 0xFF);
+        }
+        return code;
+    }
+
+    private static int rank(int[] codes, int code) {
+        for (int i = 0; i < codes.length; i++) {
+            if (codes[i] == code) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,427 @@
+package v1.attijariconverter.service;
+
+import v1.attijariconverter.model.MXMessage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Tampon d'octets MT101 (UTF-8) et rendu des champs du bloc 4, sans chaîne intermédiaire:
+ *  - Les tags (":21:", ":32B:"...) sont des séquences d'octets précalculées
+ *  - Les valeurs sont encodées caractère par caractère directement dans le tampon, avec leurs transformations
+ *    (virgule décimale de :32B:, tirets retirés de :30:, code de frais de :71A:) faites à la copie, sans regex
+ *  - Le tampon est réutilisable (reset) et ne grossit que si nécessaire; forThread() en fournit un par thread et
+ *    borrow()/release() un pool partagé (lots parallèles), conservés tant qu'ils ne dépassent pas RETAINED_CAPACITY
+ * Les octets produits sont identiques à ceux de l'ancien générateur StringBuilder. Les erreurs de champ obligatoire
+ * absent (:20:, :30:, :21:, :59:, :71A:) ne sont plus relevées ici mais par MT101StructureValidator, avec leur ligne;
+ * seules restent les erreurs de valeur (format de :30:, devise / montant de :32B:, code de frais de :71A:).
+ * length() compte les octets, charLength() les caractères (UTF-16) pris en compte par le découpage mx.mt.split.*.
+ * Non thread-safe.
+ */
+public final class MT101Writer {
+
+    /** Capacité au-delà de laquelle un tampon n'est pas conservé d'une conversion à l'autre. */
+    static final int RETAINED_CAPACITY = 1 << 20;
+
+    private static final byte[] BLOCK4_OPEN = ascii("{4:\n");
+    private static final byte[] MESSAGE_END = ascii("-}\n\n");
+    private static final byte[] BLOCK3_OPEN = ascii("{3:{108:REF");
+    private static final byte[] BLOCK3_CLOSE = ascii("}}\n");
+    private static final byte[] TAG_20 = ascii(":20:");
+    private static final byte[] TAG_28D = ascii(":28D:");
+    private static final byte[] TAG_30 = ascii(":30:");
+    private static final byte[] TAG_21 = ascii(":21:");
+    private static final byte[] TAG_32B = ascii(":32B:");
+    private static final byte[] TAG_50K = ascii(":50K:");
+    private static final byte[] TAG_59 = ascii(":59:");
+    private static final byte[] TAG_71A = ascii(":71A:");
+    private static final byte[] TAG_70 = ascii(":70:");
+    private static final byte[] CHARGES_OUR = ascii("OUR");
+    private static final byte[] CHARGES_BEN = ascii("BEN");
+    private static final byte[] CHARGES_SHA = ascii("SHA");
+
+    /** Deux tampons par thread: Séquences B et message assemblé (ConversionService.generateMT101Message). */
+    private static final ThreadLocal<MT101Writer[]> POOL = ThreadLocal.withInitial(() -> new MT101Writer[2]);
+
+    /** Tampons des lots de Séquences B rendus en parallèle: un même thread peut en rendre plusieurs par conversion. */
+    private static final BlockingQueue<MT101Writer> SHARED =
+            new ArrayBlockingQueue<>(4 * Runtime.getRuntime().availableProcessors());
+
+    private byte[] buffer;
+    private int length;
+    private int chars;
+
+    public MT101Writer(int initialCapacity) {
+        this.buffer = new byte[Math.max(64, initialCapacity)];
+    }
+
+    /**
+     * Tampon du thread courant pour l'emplacement slot (0 ou 1), vidé, d'au moins capacity octets.
+     * Valable jusqu'au prochain appel de forThread(slot) sur le même thread.
+     */
+    static MT101Writer forThread(int slot, int capacity) {
+        if (capacity > RETAINED_CAPACITY) {
+            // Gros message: tampon éphémère, celui du thread est gardé pour les suivants
+            return new MT101Writer(capacity);
+        }
+        MT101Writer[] writers = POOL.get();
+        MT101Writer writer = writers[slot];
+        if (writer == null || writer.buffer.length > RETAINED_CAPACITY) {
+            writer = new MT101Writer(capacity);
+            writers[slot] = writer;
+        }
+        writer.reset();
+        writer.ensureCapacity(capacity);
+        return writer;
+    }
+
+    /** Tampon vidé du pool partagé (ou nouveau), d'au moins capacity octets; à rendre par release(). */
+    static MT101Writer borrow(int capacity) {
+        MT101Writer writer = SHARED.poll();
+        if (writer == null) {
+            return new MT101Writer(capacity);
+        }
+        writer.reset();
+        writer.ensureCapacity(capacity);
+        return writer;
+    }
+
+    /** Rend un tampon obtenu par borrow() (ignoré s'il est trop gros ou si le pool est plein). */
+    static void release(MT101Writer writer) {
+        if (writer.buffer.length <= RETAINED_CAPACITY) {
+            SHARED.offer(writer);
+        }
+    }
+
+    /** Vide le tampon (capacité conservée). */
+    public void reset() {
+        length = 0;
+        chars = 0;
+    }
+
+    /** Octets écrits. */
+    public int length() { return length; }
+
+    /** Caractères écrits (unités UTF-16, comme StringBuilder.length()). */
+    public int charLength() { return chars; }
+
+    // ================= Primitives =================
+
+    public MT101Writer newline() {
+        return ch('\n');
+    }
+
+    /** Caractère ASCII. */
+    public MT101Writer ch(char c) {
+        ensureCapacity(length + 1);
+        buffer[length++] = (byte) c;
+        chars++;
+        return this;
+    }
+
+    /** Texte encodé en UTF-8 (une surrogate isolée devient '?', comme String.getBytes). */
+    public MT101Writer text(String value) {
+        int n = value.length();
+        ensureCapacity(length + n * 3);
+        byte[] b = buffer;
+        int pos = length;
+        for (int i = 0; i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                b[pos++] = (byte) c;
+            } else {
+                pos = encode(value, i, c, b, pos);
+                if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    i++;
+                }
+            }
+        }
+        length = pos;
+        chars += n;
+        return this;
+    }
+
+    /** Entier positif ou nul en décimal. */
+    public MT101Writer number(int value) {
+        int width = 1;
+        for (int v = value; v >= 10; v /= 10) width++;
+        digits(value, width);
+        return this;
+    }
+
+    /** Contenu d'un autre tampon. */
+    public MT101Writer append(MT101Writer other) {
+        return append(other, 0, other.length, other.chars);
+    }
+
+    /**
+     * Portion [from, to[ (octets) d'un autre tampon.
+     * @param charCount nombre de caractères de la portion
+     */
+    public MT101Writer append(MT101Writer other, int from, int to, int charCount) {
+        ensureCapacity(length + to - from);
+        System.arraycopy(other.buffer, from, buffer, length, to - from);
+        length += to - from;
+        chars += charCount;
+        return this;
+    }
+
+    /** Fin de bloc 4 et ligne vide séparant deux messages. */
+    public MT101Writer endMessage() {
+        return raw(MESSAGE_END);
+    }
+
+    /** Fin de bloc 4 et ligne vide, écrites directement dans un flux. */
+    public static void writeMessageEnd(OutputStream out) throws IOException {
+        out.write(MESSAGE_END);
+    }
+
+    // ================= Blocs =================
+
+    /** Ligne de bloc 1 ou 2 (déjà construite, une fois par conversion). */
+    public MT101Writer line(String header) {
+        return text(header).newline();
+    }
+
+    /** Ligne de bloc 3 {3:{108:REFaaaaMMjjHHmmss}} horodatée à now. */
+    public MT101Writer bloc3(LocalDateTime now) {
+        raw(BLOCK3_OPEN);
+        digits(now.getYear(), 4);
+        digits(now.getMonthValue(), 2);
+        digits(now.getDayOfMonth(), 2);
+        digits(now.getHour(), 2);
+        digits(now.getMinute(), 2);
+        digits(now.getSecond(), 2);
+        return raw(BLOCK3_CLOSE);
+    }
+
+    /**
+     * Ouverture du bloc 4 et Séquence A (tags :20:, :28D:, :30:).
+     * Un champ obligatoire absent est simplement omis: MT101StructureValidator le signale avec sa ligne.
+     * Seules les causes d'omission qu'il ne peut pas voir (format de :30:...) sont ajoutées à validationErrors.
+     * @param index rang du message (1..total) pour :28D:
+     */
+    public MT101Writer sequenceA(MXMessage mxMessage, List<String> validationErrors, int index, int total) {
+        raw(BLOCK4_OPEN);
+
+        // :20: Transaction Reference Number (obligatoire)
+        String transactionRef = mxMessage.getMessageId();
+        if (hasText(transactionRef)) {
+            raw(TAG_20).text(transactionRef).newline();
+        }
+
+        // :28D: Message Index/Total (obligatoire)
+        raw(TAG_28D).number(index).ch('/').number(total).newline();
+
+        // :30: Requested Execution Date (obligatoire), AAAAMMJJ ou AAAA-MM-JJ
+        String executionDate = mxMessage.getRequestedExecutionDate();
+        if (hasText(executionDate)) {
+            executionDate(executionDate, validationErrors);
+        }
+        return this;
+    }
+
+    /** Séquence B d'une transaction (tags :21:, :32B:, :50K:, :59:, :71A:, :70:), mêmes règles que sequenceA. */
+    public MT101Writer sequenceB(MXMessage.PaymentInstruction payment, List<String> validationErrors) {
+        // :21: EndToEndId / InstructionId (obligatoire)
+        String txnRef = payment.getInstructionId();
+        if (hasText(txnRef)) {
+            raw(TAG_21).text(txnRef).newline();
+        }
+
+        // :32B: Devise et Montant (obligatoire), virgule décimale
+        String currency = payment.getCurrency();
+        String amount = payment.getAmount();
+        boolean hasCurrency = hasText(currency);
+        boolean hasAmount = hasText(amount);
+        if (hasCurrency && hasAmount) {
+            raw(TAG_32B).text(currency).amount(amount).newline();
+        } else {
+            if (!hasCurrency) validationErrors.add("Champ devise manquant pour :32B:");
+            if (!hasAmount) validationErrors.add("Champ montant manquant pour :32B:");
+        }
+
+        // :50K: Donneur d'ordre (optionnel)
+        String debtorName = payment.getDebtorName();
+        if (hasText(debtorName)) {
+            raw(TAG_50K).text(debtorName).newline();
+        }
+
+        // :59: Bénéficiaire (obligatoire)
+        String creditorName = payment.getCreditorName();
+        if (hasText(creditorName)) {
+            raw(TAG_59).text(creditorName).newline();
+        }
+
+        // :71A: Frais (obligatoire) — pas de valeur par défaut
+        String chargeBearer = payment.getChargeBearer();
+        if (hasText(chargeBearer)) {
+            byte[] code = chargesCode(chargeBearer);
+            if (code != null) {
+                raw(TAG_71A).raw(code).newline();
+            } else {
+                validationErrors.add("Code de frais inconnu pour :71A: ('" + chargeBearer + "')");
+            }
+        }
+
+        // :70: Infos (optionnel)
+        String remittanceInfo = payment.getRemittanceInfo();
+        if (hasText(remittanceInfo)) {
+            raw(TAG_70).text(remittanceInfo).newline();
+        }
+        return this;
+    }
+
+    // ================= Sortie =================
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, length);
+    }
+
+    /** Contenu décodé (une seule copie). */
+    @Override
+    public String toString() {
+        return new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // ================= Interne =================
+
+    private MT101Writer raw(byte[] bytes) {
+        ensureCapacity(length + bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+        chars += bytes.length;
+        return this;
+    }
+
+    /** Montant avec virgule décimale (équivalent de amount.replace('.', ',')). */
+    private MT101Writer amount(String amount) {
+        int start = length;
+        int startChars = chars;
+        text(amount);
+        if (length - start == chars - startChars) {
+            // ASCII: substitution en place
+            for (int i = start; i < length; i++) {
+                if (buffer[i] == '.') buffer[i] = ',';
+            }
+        } else {
+            length = start;
+            chars = startChars;
+            text(amount.replace('.', ','));
+        }
+        return this;
+    }
+
+    /**
+     * :30: à partir de AAAAMMJJ ou d'une date contenant des tirets (tirets retirés, 8 premiers caractères):
+     * mêmes règles et messages que replaceAll("-", "").substring(0, 8) suivi de matches("\\d{8}").
+     */
+    private void executionDate(String value, List<String> validationErrors) {
+        boolean dashed = value.indexOf('-') >= 0;
+        int n = value.length();
+        int kept = 0;
+        boolean digits = true;
+        for (int i = 0; i < n && (!dashed || kept < 8); i++) {
+            char c = value.charAt(i);
+            if (dashed && c == '-') continue;
+            if (c < '0' || c > '9') digits = false;
+            kept++;
+        }
+        if (dashed && kept < 8) {
+            validationErrors.add("Format de :30: invalide (exception de parsing)");
+            return;
+        }
+        if (kept != 8 || !digits) {
+            validationErrors.add("Format de :30: invalide (attendu AAAAMMJJ)");
+            return;
+        }
+        raw(TAG_30);
+        ensureCapacity(length + 8);
+        int written = 0;
+        for (int i = 0; written < 8; i++) {
+            char c = value.charAt(i);
+            if (c != '-') {
+                buffer[length++] = (byte) c;
+                written++;
+            }
+        }
+        chars += 8;
+        newline();
+    }
+
+    /** Code :71A: d'un ChrgBr ISO 20022 (ou déjà au format MT), null si inconnu. */
+    private static byte[] chargesCode(String chargeBearer) {
+        switch (chargeBearer.length()) {
+            case 3:
+                if (chargeBearer.equalsIgnoreCase("OUR")) return CHARGES_OUR;
+                if (chargeBearer.equalsIgnoreCase("BEN")) return CHARGES_BEN;
+                if (chargeBearer.equalsIgnoreCase("SHA")) return CHARGES_SHA;
+                return null;
+            case 4:
+                if (chargeBearer.equalsIgnoreCase("DEBT")) return CHARGES_OUR;
+                if (chargeBearer.equalsIgnoreCase("CRED")) return CHARGES_BEN;
+                if (chargeBearer.equalsIgnoreCase("SHAR") || chargeBearer.equalsIgnoreCase("SLEV")) return CHARGES_SHA;
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    private void digits(int value, int width) {
+        ensureCapacity(length + width);
+        for (int i = length + width - 1; i >= length; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += width;
+        chars += width;
+    }
+
+    /** Encode le caractère non ASCII c (rang i de value) et retourne la nouvelle position. */
+    private static int encode(String value, int i, char c, byte[] b, int pos) {
+        if (c < 0x800) {
+            b[pos++] = (byte) (0xC0 | (c >> 6));
+            b[pos++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+            if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(i + 1));
+                b[pos++] = (byte) (0xF0 | (cp >> 18));
+                b[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                b[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                b[pos++] = (byte) (0x80 | (cp & 0x3F));
+            } else {
+                b[pos++] = '?';
+            }
+        } else {
+            b[pos++] = (byte) (0xE0 | (c >> 12));
+            b[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            b[pos++] = (byte) (0x80 | (c & 0x3F));
+        }
+        return pos;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+        }
+    }
+
+    /** Équivalent de value != null &amp;&amp; !value.trim().isEmpty(), sans allocation. */
+    static boolean hasText(String value) {
+        if (value == null) return false;
+        for (int i = 0, n = value.length(); i < n; i++) {
+            if (value.charAt(i) > ' ') return true;
+        }
+        return false;
+    }
+
+    static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
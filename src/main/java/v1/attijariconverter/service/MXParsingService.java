@@ -1,5 +1,6 @@
 package v1.attijariconverter.service;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -11,11 +12,15 @@ import org.slf4j.LoggerFactory;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringReader;
 
 /**
  * Service responsable du parsing d'un fichier pain.001 (SEPA Credit Transfer).
- * Utilise DOM pour extraire les informations nécessaires et construire un MXMessage.
- * Hypothèses:
+ * Deux modes sélectionnables via la propriété mx.parser.mode:
+ *  - stax (défaut): une seule passe événementielle (Pain001StaxParser), mémoire bornée, temps linéaire.
+ *  - dom: construction de l'arbre complet puis extraction par getElementsByTagName (historique).
+ * Hypothèses (mode DOM):
  *  - Pas de gestion avancée des namespaces multiples.
  *  - Prend le premier élément matching (getElementsByTagName) pour chaque tag.
  *  - Loggue et relance une Exception si un élément critique manque.
@@ -25,12 +30,81 @@ public class MXParsingService {
 
     private static final Logger logger = LoggerFactory.getLogger(MXParsingService.class);
 
+    @Value("${mx.parser.mode:stax}")
+    private String parserMode = "stax";
+
     /**
      * Parse le XML pain.001 et retourne un MXMessage peuplé.
      * @param xmlContent contenu XML du fichier.
      * @throws Exception si parsing impossible ou éléments obligatoires manquants.
      */
     public MXMessage parseMXMessage(String xmlContent) throws Exception {
+        ConversionFlightEvents.ParsingEvent event = beginParsing();
+        MXMessage mxMessage = parse(xmlContent);
+        commitParsing(event, isStaxMode() ? "stax" : "dom", xmlContent.length(), mxMessage);
+        return mxMessage;
+    }
+
+    private MXMessage parse(String xmlContent) throws Exception {
+        if (isStaxMode()) {
+            try {
+                MXMessage mxMessage = new MXMessage();
+                new Pain001StaxParser().parse(new StringReader(xmlContent), mxMessage, mxMessage::addPaymentInstruction);
+                logger.info("Message MX parsé avec succès (StAX): {} transactions", mxMessage.getPaymentInstructions().size());
+                return mxMessage;
+            } catch (Exception e) {
+                logger.error("Erreur lors du parsing du message MX", e);
+                throw new Exception("Erreur lors du parsing du message MX: " + e.getMessage(), e);
+            }
+        }
+        return parseWithDom(xmlContent);
+    }
+
+    /**
+     * Parse un flux pain.001 sans le matérialiser en String (mode StAX uniquement, quel que soit mx.parser.mode).
+     * @param in flux XML brut
+     */
+    public MXMessage parseMXMessage(InputStream in) throws Exception {
+        ConversionFlightEvents.ParsingEvent event = beginParsing();
+        try {
+            MXMessage mxMessage = new MXMessage();
+            new Pain001StaxParser().parse(in, mxMessage, mxMessage::addPaymentInstruction);
+            logger.info("Message MX parsé avec succès (StAX): {} transactions", mxMessage.getPaymentInstructions().size());
+            commitParsing(event, "stax", -1, mxMessage);
+            return mxMessage;
+        } catch (Exception e) {
+            logger.error("Erreur lors du parsing du message MX", e);
+            throw new Exception("Erreur lors du parsing du message MX: " + e.getMessage(), e);
+        }
+    }
+
+    /** Événement JFR de parsing commencé, null si les parsings ne sont pas enregistrés. */
+    private static ConversionFlightEvents.ParsingEvent beginParsing() {
+        if (!ConversionFlightEvents.parsingEnabled()) return null;
+        ConversionFlightEvents.ParsingEvent event = new ConversionFlightEvents.ParsingEvent();
+        event.begin();
+        return event;
+    }
+
+    /** Enregistre un parsing réussi (un échec lève une exception: l'événement est abandonné). */
+    private static void commitParsing(ConversionFlightEvents.ParsingEvent event, String parser, long inputSize, MXMessage mxMessage) {
+        if (event == null) return;
+        event.end();
+        if (event.shouldCommit()) {
+            event.parser = parser;
+            event.inputSize = inputSize;
+            event.messageId = mxMessage.getMessageId();
+            event.transactionCount = mxMessage.getPaymentInstructions() != null ? mxMessage.getPaymentInstructions().size() : 0;
+            event.commit();
+        }
+    }
+
+    private boolean isStaxMode() {
+        return !"dom".equalsIgnoreCase(parserMode != null ? parserMode.trim() : null);
+    }
+
+    /** Chemin DOM historique (mx.parser.mode=dom). */
+    private MXMessage parseWithDom(String xmlContent) throws Exception {
         try {
             DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
             factory.setNamespaceAware(true);
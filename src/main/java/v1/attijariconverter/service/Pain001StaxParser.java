@@ -0,0 +1,346 @@
+package v1.attijariconverter.service;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+import v1.attijariconverter.model.MXMessage;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Parseur pain.001 événementiel (StAX) en une seule passe avant.
+ * Produit les mêmes MXMessage / PaymentInstruction que le chemin DOM de MXParsingService,
+ * sans construire l'arbre XML: seul l'état du PmtInf courant et de la transaction courante est conservé.
+ * Pilotable par un flux StAX (parse) ou par des événements SAX (contentHandler), par exemple
+ * en aval d'un ValidatorHandler XSD pour valider et construire le modèle en une seule lecture.
+ * Hypothèses:
+ *  - Ordre des éléments conforme au XSD (GrpHdr puis PmtInf, champs PmtInf avant CdtTrfTxInf).
+ *  - Chaque transaction est remise au sink dès la fermeture de son &lt;CdtTrfTxInf&gt;.
+ * Instance sans état partagé: une instance par document (non thread-safe).
+ */
+public class Pain001StaxParser {
+
+    /** Factory thread-safe une fois configurée; DTD et entités externes désactivées (XXE). */
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private final List<String> path = new ArrayList<>();
+    private final StringBuilder text = new StringBuilder();
+
+    private MXMessage mxMessage;
+    private Consumer<MXMessage.PaymentInstruction> sink;
+    private String rootName;
+    private String rootNamespace;
+    private boolean cstmrCdtTrfInitnFound;
+    private boolean grpHdrFound;
+    private boolean pmtInfFound;
+    private long transactionCount;
+
+    // État du PmtInf courant (recopié sur chaque transaction)
+    private String pmtDebtorName;
+    private String pmtDebtorAccount;
+    private String pmtDebtorBIC;
+    private String pmtRequestedExecutionDate;
+    private String pmtChargeBearer;
+    private String firstTxChargeBearer;
+
+    // Transaction courante
+    private MXMessage.PaymentInstruction current;
+    private String currentChargeBearer;
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        return factory;
+    }
+
+    /**
+     * Parse un flux d'octets pain.001.
+     * @param in flux XML (l'encodage est lu dans le prologue)
+     * @param target message à peupler (en-têtes disponibles avant la première transaction)
+     * @param sink reçoit chaque transaction dans l'ordre du document
+     */
+    public MXMessage parse(InputStream in, MXMessage target, Consumer<MXMessage.PaymentInstruction> sink) throws Exception {
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
+        return parse(reader, target, sink);
+    }
+
+    /**
+     * Parse un flux de caractères pain.001 (évite le ré-encodage d'un String déjà en mémoire).
+     */
+    public MXMessage parse(Reader in, MXMessage target, Consumer<MXMessage.PaymentInstruction> sink) throws Exception {
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
+        return parse(reader, target, sink);
+    }
+
+    /**
+     * Adaptateur SAX: les événements reçus alimentent la même machine à états que le mode StAX.
+     * Aucun contrôle GrpHdr/PmtInf en fin de document: la structure observée est exposée par les getters.
+     * @param target message à peupler
+     * @param sink reçoit chaque transaction dans l'ordre du document
+     */
+    public DefaultHandler contentHandler(MXMessage target, Consumer<MXMessage.PaymentInstruction> sink) {
+        this.mxMessage = target;
+        this.sink = sink;
+        return new DefaultHandler() {
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                String name = localName != null && !localName.isEmpty() ? localName : qName;
+                String ccy = "InstdAmt".equals(name) ? attributes.getValue("", "Ccy") : null;
+                if (ccy == null && "InstdAmt".equals(name)) ccy = attributes.getValue("Ccy");
+                Pain001StaxParser.this.startElement(name, uri, ccy);
+            }
+
+            @Override
+            public void characters(char[] ch, int start, int length) {
+                text.append(ch, start, length);
+            }
+
+            @Override
+            public void ignorableWhitespace(char[] ch, int start, int length) {
+                text.append(ch, start, length);
+            }
+
+            @Override
+            public void endElement(String uri, String localName, String qName) {
+                Pain001StaxParser.this.endElement();
+            }
+        };
+    }
+
+    private MXMessage parse(XMLStreamReader reader, MXMessage target, Consumer<MXMessage.PaymentInstruction> sink) throws Exception {
+        this.mxMessage = target;
+        this.sink = sink;
+        try {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        String name = reader.getLocalName();
+                        startElement(name, reader.getNamespaceURI(),
+                                "InstdAmt".equals(name) ? reader.getAttributeValue(null, "Ccy") : null);
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        endElement();
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            closeQuietly(reader);
+        }
+
+        if (!grpHdrFound) {
+            throw new Exception("Element GrpHdr non trouvé dans le message MX");
+        }
+        if (!pmtInfFound) {
+            throw new Exception("Aucune information de paiement trouvée dans le message MX");
+        }
+        return mxMessage;
+    }
+
+    /**
+     * @param ccy attribut Ccy (seulement pour InstdAmt, sinon null)
+     */
+    private void startElement(String name, String namespaceUri, String ccy) {
+        if (path.isEmpty()) {
+            rootName = name;
+            rootNamespace = namespaceUri;
+        }
+        path.add(name);
+        text.setLength(0);
+
+        switch (name) {
+            case "CstmrCdtTrfInitn":
+                cstmrCdtTrfInitnFound = true;
+                break;
+            case "GrpHdr":
+                grpHdrFound = true;
+                break;
+            case "PmtInf":
+                pmtInfFound = true;
+                pmtDebtorName = null;
+                pmtDebtorAccount = null;
+                pmtDebtorBIC = null;
+                pmtRequestedExecutionDate = null;
+                pmtChargeBearer = null;
+                firstTxChargeBearer = null;
+                break;
+            case "CdtTrfTxInf":
+                transactionCount++;
+                current = new MXMessage.PaymentInstruction();
+                currentChargeBearer = null;
+                current.setDebtorName(pmtDebtorName);
+                current.setDebtorAccount(pmtDebtorAccount);
+                current.setDebtorBIC(pmtDebtorBIC);
+                current.setRequestedExecutionDate(pmtRequestedExecutionDate);
+                break;
+            case "InstdAmt":
+                if (current != null && "Amt".equals(ancestor(1))) {
+                    current.setCurrency(ccy != null ? ccy : "");
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void endElement() {
+        String name = path.get(path.size() - 1);
+        String parent = ancestor(1);
+
+        if (current != null) {
+            endTransactionElement(name, parent);
+        } else if (isInside("GrpHdr")) {
+            endGroupHeaderElement(name, parent);
+        } else if (isInside("PmtInf")) {
+            endPaymentInfoElement(name, parent);
+        }
+
+        path.remove(path.size() - 1);
+        text.setLength(0);
+    }
+
+    private void endGroupHeaderElement(String name, String parent) {
+        if ("GrpHdr".equals(parent)) {
+            switch (name) {
+                case "MsgId": if (mxMessage.getMessageId() == null) mxMessage.setMessageId(trimmed()); break;
+                case "CreDtTm": if (mxMessage.getCreationDateTime() == null) mxMessage.setCreationDateTime(trimmed()); break;
+                case "NbOfTxs": if (mxMessage.getNumberOfTransactions() == null) mxMessage.setNumberOfTransactions(trimmed()); break;
+                case "CtrlSum": if (mxMessage.getControlSum() == null) mxMessage.setControlSum(trimmed()); break;
+                default: break;
+            }
+        } else if ("Nm".equals(name) && "InitgPty".equals(parent) && mxMessage.getInitiatingPartyName() == null) {
+            mxMessage.setInitiatingPartyName(trimmed());
+        }
+    }
+
+    private void endPaymentInfoElement(String name, String parent) {
+        if ("PmtInf".equals(parent)) {
+            switch (name) {
+                case "PmtInfId": mxMessage.setPaymentInformationId(trimmed()); break;
+                case "PmtMtd": mxMessage.setPaymentMethod(trimmed()); break;
+                case "ReqdExctnDt":
+                    pmtRequestedExecutionDate = trimmed();
+                    mxMessage.setRequestedExecutionDate(pmtRequestedExecutionDate);
+                    break;
+                case "ChrgBr": pmtChargeBearer = trimmed(); break;
+                default: break;
+            }
+            return;
+        }
+        String grandParent = ancestor(2);
+        if ("Nm".equals(name) && "Dbtr".equals(parent) && "PmtInf".equals(grandParent)) {
+            pmtDebtorName = trimmed();
+            mxMessage.setDebtorName(pmtDebtorName);
+        } else if ("IBAN".equals(name) && "Id".equals(parent) && "DbtrAcct".equals(grandParent)) {
+            pmtDebtorAccount = trimmed();
+            mxMessage.setDebtorAccount(pmtDebtorAccount);
+        } else if ("Ccy".equals(name) && "DbtrAcct".equals(parent)) {
+            mxMessage.setCurrency(trimmed());
+        } else if ("BIC".equals(name) && "FinInstnId".equals(parent) && "DbtrAgt".equals(grandParent)) {
+            pmtDebtorBIC = trimmed();
+            mxMessage.setDebtorBIC(pmtDebtorBIC);
+        }
+    }
+
+    private void endTransactionElement(String name, String parent) {
+        if ("CdtTrfTxInf".equals(name)) {
+            // Même priorité que le chemin DOM: ChrgBr du PmtInf, sinon le premier ChrgBr rencontré dans le PmtInf
+            if (pmtChargeBearer != null) {
+                current.setChargeBearer(pmtChargeBearer);
+            } else if (firstTxChargeBearer != null) {
+                current.setChargeBearer(firstTxChargeBearer);
+            } else {
+                current.setChargeBearer(currentChargeBearer);
+            }
+            sink.accept(current);
+            current = null;
+            return;
+        }
+
+        String grandParent = ancestor(2);
+        switch (name) {
+            case "InstrId":
+                if ("PmtId".equals(parent) && current.getInstructionId() == null) current.setInstructionId(trimmed());
+                break;
+            case "EndToEndId":
+                if ("PmtId".equals(parent) && current.getEndToEndId() == null) current.setEndToEndId(trimmed());
+                break;
+            case "InstdAmt":
+                // Texte brut (non trimé), comme getTextContent() côté DOM
+                if ("Amt".equals(parent) && current.getAmount() == null) current.setAmount(text.toString());
+                break;
+            case "BIC":
+                if ("FinInstnId".equals(parent) && "CdtrAgt".equals(grandParent) && current.getCreditorBIC() == null) {
+                    current.setCreditorBIC(trimmed());
+                }
+                break;
+            case "Nm":
+                if ("Cdtr".equals(parent) && current.getCreditorName() == null) current.setCreditorName(trimmed());
+                break;
+            case "IBAN":
+                if ("Id".equals(parent) && "CdtrAcct".equals(grandParent) && current.getCreditorAccount() == null) {
+                    current.setCreditorAccount(trimmed());
+                }
+                break;
+            case "Ustrd":
+                if ("RmtInf".equals(parent) && current.getRemittanceInfo() == null) current.setRemittanceInfo(trimmed());
+                break;
+            case "ChrgBr":
+                if ("CdtTrfTxInf".equals(parent)) {
+                    currentChargeBearer = trimmed();
+                    if (firstTxChargeBearer == null) firstTxChargeBearer = currentChargeBearer;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Structure observée jusqu'ici (consultable pendant le parsing, ex: depuis le sink)
+    public String getRootName() { return rootName; }
+    public String getRootNamespace() { return rootNamespace; }
+    public boolean hasCustomerCreditTransferInitiation() { return cstmrCdtTrfInitnFound; }
+    public boolean hasGroupHeader() { return grpHdrFound; }
+    public boolean hasPaymentInformation() { return pmtInfFound; }
+    public long getTransactionCount() { return transactionCount; }
+
+    /** Nom de l'ancêtre au niveau demandé (1 = parent) ou null. */
+    private String ancestor(int level) {
+        int idx = path.size() - 1 - level;
+        return idx >= 0 ? path.get(idx) : null;
+    }
+
+    private boolean isInside(String element) {
+        for (int i = path.size() - 2; i >= 0; i--) {
+            if (element.equals(path.get(i))) return true;
+        }
+        return false;
+    }
+
+    private String trimmed() {
+        return text.toString().trim();
+    }
+
+    private static void closeQuietly(XMLStreamReader reader) {
+        try {
+            reader.close();
+        } catch (XMLStreamException ignored) {
+            // fermeture best-effort
+        }
+    }
+}
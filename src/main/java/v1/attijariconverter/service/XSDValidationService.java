@@ -1,34 +1,225 @@
 package v1.attijariconverter.service;
 
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
 import org.w3c.dom.Document;
 import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import v1.attijariconverter.model.MXMessage;
 
 import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.dom.DOMSource;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
+import javax.xml.validation.ValidatorHandler;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
- * Service de validation basique des messages XML (pain.001).
+ * Service de validation des messages XML (pain.001).
  * Implémente deux niveaux:
  *  - validateMXMessage: vérifications génériques structurelles
- *  - validatePain001: vérifications ciblées éléments obligatoires + structure
- * NOTE: La validation XSD complète pourrait charger le schéma et utiliser Validator; ici simplifiée.
+ *  - validatePain001: validation XSD stricte (pain.001.001.03) + vérifications ciblées éléments obligatoires
+ * Le schéma est compilé une seule fois au démarrage (Schema est thread-safe) et chaque thread
+ * réutilise son propre Validator (non thread-safe); la validation lit un StreamSource, sans DOM.
+ * La validation XSD peut être désactivée (mx.validation.xsd.enabled=false) pour revenir au contrôle simplifié.
+ * validateAndParse réalise l'ingestion complète en une seule lecture: le même flux SAX alimente
+ * le ValidatorHandler XSD et le Pain001StaxParser (modèle MXMessage), sans scans String.contains.
+ * Sans état mutable partagé entre appels: chaque validation dispose de son propre collecteur d'erreurs,
+ * borné par mx.validation.max-errors: la lecture s'arrête à la première erreur au-delà du plafond, le résultat
+ * est alors marqué tronqué. Avec mx.validation.fail-fast=true, la lecture s'arrête dès la première erreur
+ * (conservée, résultat non tronqué: aucune erreur n'a été écartée).
  */
 @Service
 public class XSDValidationService {
 
-    private final List<String> validationErrors = new ArrayList<>();
+    private static final Logger logger = LoggerFactory.getLogger(XSDValidationService.class);
+
+    private static final String PAIN001_XSD = "xsd/pain.001.001.03.xsd";
+
+    @Value("${mx.validation.xsd.enabled:true}")
+    private boolean xsdEnabled = true;
+
+    @Value("${mx.validation.fail-fast:false}")
+    private boolean failFast = false;
+
+    @Value("${mx.validation.max-errors:100}")
+    private int maxErrors = 100;
+
+    private volatile Schema pain001Schema;
+
+    /** Un Validator par thread: instanciation coûteuse, usage non concurrent. */
+    private final ThreadLocal<Validator> validators = ThreadLocal.withInitial(this::newValidator);
+
+    /** Pipeline SAX d'ingestion par thread (lecteur + ValidatorHandler), réutilisé d'un document à l'autre. */
+    private final ThreadLocal<XMLReader> xmlReaders = ThreadLocal.withInitial(XSDValidationService::newXmlReader);
+    private final ThreadLocal<ValidatorHandler> validatorHandlers = ThreadLocal.withInitial(this::newValidatorHandler);
+
+    /**
+     * Compile le schéma pain.001.001.03 (au démarrage du contexte, ou au premier usage hors Spring).
+     */
+    @PostConstruct
+    public synchronized void loadSchema() {
+        if (pain001Schema != null) return;
+        long start = System.currentTimeMillis();
+        try (InputStream xsd = new ClassPathResource(PAIN001_XSD).getInputStream()) {
+            SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+            factory.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+            factory.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+            pain001Schema = factory.newSchema(new StreamSource(xsd, PAIN001_XSD));
+            logger.info("Schéma {} compilé en {} ms", PAIN001_XSD, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            throw new IllegalStateException("Impossible de compiler le schéma " + PAIN001_XSD, e);
+        }
+    }
+
+    private Validator newValidator() {
+        if (pain001Schema == null) loadSchema();
+        Validator validator = pain001Schema.newValidator();
+        try {
+            validator.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+            validator.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+        } catch (SAXException e) {
+            logger.warn("Propriétés de sécurité non supportées par le Validator: {}", e.getMessage());
+        }
+        return validator;
+    }
+
+    private ValidatorHandler newValidatorHandler() {
+        if (pain001Schema == null) loadSchema();
+        ValidatorHandler handler = pain001Schema.newValidatorHandler();
+        try {
+            handler.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+            handler.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+        } catch (SAXException e) {
+            logger.warn("Propriétés de sécurité non supportées par le ValidatorHandler: {}", e.getMessage());
+        }
+        return handler;
+    }
+
+    private static XMLReader newXmlReader() {
+        try {
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+            return factory.newSAXParser().getXMLReader();
+        } catch (Exception e) {
+            throw new IllegalStateException("Impossible de créer le lecteur SAX", e);
+        }
+    }
+
+    /** Nouveau collecteur selon la configuration (un par invocation). */
+    ValidationErrorCollector newCollector() {
+        return failFast ? new ValidationErrorCollector(1, true) : new ValidationErrorCollector(maxErrors, false);
+    }
+
+    /**
+     * Validation XSD stricte contre pain.001.001.03.
+     * @param xmlContent XML pain.001
+     */
+    public ValidationResult validateAgainstSchema(String xmlContent) {
+        ValidationErrorCollector errors = newCollector();
+        validateAgainstSchema(new StreamSource(new StringReader(xmlContent)), errors);
+        return errors.toResult();
+    }
+
+    /**
+     * Validation XSD stricte d'un flux (le flux n'est pas fermé).
+     */
+    public ValidationResult validateAgainstSchema(InputStream in) {
+        ValidationErrorCollector errors = newCollector();
+        validateAgainstSchema(new StreamSource(in), errors);
+        return errors.toResult();
+    }
+
+    private void validateAgainstSchema(Source source, ValidationErrorCollector errors) {
+        Validator validator = validators.get();
+        validator.setErrorHandler(new CustomErrorHandler(errors));
+        try {
+            validator.validate(source);
+        } catch (SAXException e) {
+            // Erreur fatale (document mal formé) ou limite atteinte: déjà enregistrée par le handler
+        } catch (Exception e) {
+            errors.add("Erreur lors de la validation XSD: " + e.getMessage());
+        } finally {
+            validator.setErrorHandler(null);
+        }
+    }
+
+    /**
+     * Ingestion pain.001 en une passe: validation XSD (si activée) et construction du modèle sur une seule
+     * lecture SAX, puis contrôles structurels sur la structure observée par le parseur.
+     * @param source document pain.001 (String, octets ou flux)
+     * @param parser parseur recevant les événements (structure consultable ensuite)
+     * @param target message à peupler
+     * @param sink reçoit chaque transaction dans l'ordre du document
+     * @return verdict de validation (le modèle n'est exploitable que si valide)
+     */
+    public ValidationResult validateAndParse(InputSource source, Pain001StaxParser parser, MXMessage target,
+                                             Consumer<MXMessage.PaymentInstruction> sink) {
+        return validateAndParse(source, parser, target, sink, newCollector());
+    }
+
+    /**
+     * Variante avec collecteur fourni: permet à l'appelant (ex: sink en flux) de consulter les erreurs
+     * déjà relevées pendant la lecture. Les exceptions non contrôlées levées par le sink sont propagées.
+     */
+    ValidationResult validateAndParse(InputSource source, Pain001StaxParser parser, MXMessage target,
+                                      Consumer<MXMessage.PaymentInstruction> sink, ValidationErrorCollector errors) {
+        ConversionFlightEvents.ValidationEvent event = ConversionFlightEvents.beginValidation();
+        XMLReader reader = xmlReaders.get();
+        CustomErrorHandler errorHandler = new CustomErrorHandler(errors);
+        ValidatorHandler validatorHandler = null;
+        reader.setErrorHandler(errorHandler);
+        if (xsdEnabled) {
+            validatorHandler = validatorHandlers.get();
+            validatorHandler.setErrorHandler(errorHandler);
+            validatorHandler.setContentHandler(parser.contentHandler(target, sink));
+            reader.setContentHandler(validatorHandler);
+        } else {
+            reader.setContentHandler(parser.contentHandler(target, sink));
+        }
+
+        try {
+            reader.parse(source);
+        } catch (SAXException e) {
+            // Erreur fatale (document mal formé) ou limite atteinte: déjà enregistrée par le handler
+        } catch (IOException e) {
+            errors.add("Erreur lors de la lecture pain.001: " + e.getMessage());
+        } finally {
+            reader.setContentHandler(null);
+            reader.setErrorHandler(null);
+            if (validatorHandler != null) {
+                validatorHandler.setContentHandler(null);
+                validatorHandler.setErrorHandler(null);
+            }
+        }
+
+        appendStructureErrors(parser, errors);
+        ValidationResult result = errors.toResult();
+        ConversionFlightEvents.commitValidation(event, "pain001_parse", -1, result.isValid(), result.getErrors().size());
+        return result;
+    }
 
     /**
      * Valide un message MX de manière générique (présence d'éléments clés, namespace).
@@ -36,7 +227,7 @@ public class XSDValidationService {
      * @return résultat contenant validité + liste erreurs
      */
     public ValidationResult validateMXMessage(String xmlContent) {
-        validationErrors.clear();
+        ValidationErrorCollector errors = newCollector();
 
         try {
             // Pour l'instant, on fait une validation basique sans XSD strict
@@ -49,31 +240,32 @@ public class XSDValidationService {
             Document document = documentBuilder.parse(new ByteArrayInputStream(xmlContent.getBytes("UTF-8")));
 
             // Vérifications basiques du format PAIN 001
-            if (!xmlContent.contains("urn:iso:std:iso:20022:tech:xsd:pain.001.001.03")) {
-                validationErrors.add("Namespace PAIN 001 v3 manquant ou incorrect");
+            if (!xmlContent.contains("urn:iso:std:iso:20022:tech:xsd:pain.001.001.03")
+                    && !errors.add("Namespace PAIN 001 v3 manquant ou incorrect")) {
+                return errors.toResult();
             }
 
-            if (!xmlContent.contains("<Document")) {
-                validationErrors.add("Élément racine Document manquant");
+            if (!xmlContent.contains("<Document") && !errors.add("Élément racine Document manquant")) {
+                return errors.toResult();
             }
 
-            if (!xmlContent.contains("<CstmrCdtTrfInitn>")) {
-                validationErrors.add("Élément CstmrCdtTrfInitn manquant");
+            if (!xmlContent.contains("<CstmrCdtTrfInitn>") && !errors.add("Élément CstmrCdtTrfInitn manquant")) {
+                return errors.toResult();
             }
 
-            if (!xmlContent.contains("<GrpHdr>")) {
-                validationErrors.add("Élément GrpHdr (Group Header) manquant");
+            if (!xmlContent.contains("<GrpHdr>") && !errors.add("Élément GrpHdr (Group Header) manquant")) {
+                return errors.toResult();
             }
 
             if (!xmlContent.contains("<PmtInf>")) {
-                validationErrors.add("Élément PmtInf (Payment Information) manquant");
+                errors.add("Élément PmtInf (Payment Information) manquant");
             }
 
-            return new ValidationResult(validationErrors.isEmpty(), new ArrayList<>(validationErrors));
+            return errors.toResult();
 
         } catch (Exception e) {
-            validationErrors.add("Erreur lors de la validation XML: " + e.getMessage());
-            return new ValidationResult(false, new ArrayList<>(validationErrors));
+            errors.add("Erreur lors de la validation XML: " + e.getMessage());
+            return errors.toResult();
         }
     }
 
@@ -82,7 +274,20 @@ public class XSDValidationService {
      * @param xmlContent XML pain.001
      */
     public ValidationResult validatePain001(String xmlContent) {
-        validationErrors.clear();
+        ConversionFlightEvents.ValidationEvent event = ConversionFlightEvents.beginValidation();
+        ValidationResult result = validatePain001(xmlContent, newCollector());
+        ConversionFlightEvents.commitValidation(event, "pain001", xmlContent.length(), result.isValid(), result.getErrors().size());
+        return result;
+    }
+
+    private ValidationResult validatePain001(String xmlContent, ValidationErrorCollector errors) {
+
+        if (xsdEnabled) {
+            // Validation XSD (inclut le contrôle de bonne formation), puis tags obligatoires
+            validateAgainstSchema(new StreamSource(new StringReader(xmlContent)), errors);
+            validatePain001Structure(xmlContent, errors);
+            return errors.toResult();
+        }
 
         try {
             // Validation de base du format XML
@@ -94,57 +299,92 @@ public class XSDValidationService {
             Document document = documentBuilder.parse(new ByteArrayInputStream(xmlContent.getBytes("UTF-8")));
 
             // Vérifications spécifiques pain.001
-            validatePain001Structure(xmlContent);
-            validatePain001Content(document);
+            validatePain001Structure(xmlContent, errors);
+            validatePain001Content(document, errors);
 
-            return new ValidationResult(validationErrors.isEmpty(), new ArrayList<>(validationErrors));
+            return errors.toResult();
 
         } catch (Exception e) {
-            validationErrors.add("Erreur lors de la validation pain.001: " + e.getMessage());
-            return new ValidationResult(false, new ArrayList<>(validationErrors));
+            errors.add("Erreur lors de la validation pain.001: " + e.getMessage());
+            return errors.toResult();
+        }
+    }
+
+    /**
+     * Vérifications structurelles pain.001 à partir de la structure observée par un Pain001StaxParser
+     * (mêmes règles que validatePain001, sans relire le contenu). Utilisable pendant le parsing en flux:
+     * l'absence de &lt;CdtTrfTxInf&gt; n'est signalée que si aucune transaction n'a encore été lue.
+     * @param parser parseur en cours ou terminé
+     */
+    public ValidationResult validatePain001Structure(Pain001StaxParser parser) {
+        ValidationErrorCollector errors = newCollector();
+        appendStructureErrors(parser, errors);
+        return errors.toResult();
+    }
+
+    private void appendStructureErrors(Pain001StaxParser parser, ValidationErrorCollector errors) {
+        boolean more = true;
+        if (!"urn:iso:std:iso:20022:tech:xsd:pain.001.001.03".equals(parser.getRootNamespace())) {
+            more = errors.add("Namespace pain.001.001.03 manquant ou incorrect");
+        }
+        if (more && !"Document".equals(parser.getRootName())) {
+            more = errors.add("Élément racine <Document> manquant");
+        }
+        if (more && !parser.hasCustomerCreditTransferInitiation()) {
+            more = errors.add("Élément <CstmrCdtTrfInitn> manquant");
+        }
+        if (more && !parser.hasGroupHeader()) {
+            more = errors.add("Élément <GrpHdr> (Group Header) manquant");
+        }
+        if (more && !parser.hasPaymentInformation()) {
+            more = errors.add("Élément <PmtInf> (Payment Information) manquant");
+        }
+        if (more && parser.getTransactionCount() == 0) {
+            errors.add("Élément <CdtTrfTxInf> (Credit Transfer Transaction Information) manquant");
         }
     }
 
     /** Vérifie la présence des tags obligatoires haut niveau (namespace, balises racine). */
-    private void validatePain001Structure(String xmlContent) {
+    private void validatePain001Structure(String xmlContent, ValidationErrorCollector errors) {
         // Vérification du namespace pain.001
-        if (!xmlContent.contains("urn:iso:std:iso:20022:tech:xsd:pain.001.001.03")) {
-            validationErrors.add("Namespace pain.001.001.03 manquant ou incorrect");
+        if (!xmlContent.contains("urn:iso:std:iso:20022:tech:xsd:pain.001.001.03")
+                && !errors.add("Namespace pain.001.001.03 manquant ou incorrect")) {
+            return;
         }
 
         // Vérification des éléments obligatoires
-        if (!xmlContent.contains("<Document")) {
-            validationErrors.add("Élément racine <Document> manquant");
+        if (!xmlContent.contains("<Document") && !errors.add("Élément racine <Document> manquant")) {
+            return;
         }
 
-        if (!xmlContent.contains("<CstmrCdtTrfInitn>")) {
-            validationErrors.add("Élément <CstmrCdtTrfInitn> manquant");
+        if (!xmlContent.contains("<CstmrCdtTrfInitn>") && !errors.add("Élément <CstmrCdtTrfInitn> manquant")) {
+            return;
         }
 
-        if (!xmlContent.contains("<GrpHdr>")) {
-            validationErrors.add("Élément <GrpHdr> (Group Header) manquant");
+        if (!xmlContent.contains("<GrpHdr>") && !errors.add("Élément <GrpHdr> (Group Header) manquant")) {
+            return;
         }
 
-        if (!xmlContent.contains("<PmtInf>")) {
-            validationErrors.add("Él��ment <PmtInf> (Payment Information) manquant");
+        if (!xmlContent.contains("<PmtInf>") && !errors.add("Élément <PmtInf> (Payment Information) manquant")) {
+            return;
         }
 
         if (!xmlContent.contains("<CdtTrfTxInf>")) {
-            validationErrors.add("Élément <CdtTrfTxInf> (Credit Transfer Transaction Information) manquant");
+            errors.add("Élément <CdtTrfTxInf> (Credit Transfer Transaction Information) manquant");
         }
     }
 
     /** Vérifications internes supplémentaires (placeholder extensible). */
-    private void validatePain001Content(Document document) {
+    private void validatePain001Content(Document document, ValidationErrorCollector errors) {
         // Validation du contenu (structure interne)
         // Cette méthode peut être étendue pour des validations plus spécifiques
         try {
             // Vérifier que le document a une structure valide
             if (document.getDocumentElement() == null) {
-                validationErrors.add("Document XML invalide");
+                errors.add("Document XML invalide");
             }
         } catch (Exception e) {
-            validationErrors.add("Erreur lors de la validation du contenu: " + e.getMessage());
+            errors.add("Erreur lors de la validation du contenu: " + e.getMessage());
         }
     }
 
@@ -154,40 +394,96 @@ public class XSDValidationService {
     public static class ValidationResult {
         private final boolean valid;
         private final List<String> errors;
+        private final boolean truncated;
 
         public ValidationResult(boolean valid, List<String> errors) {
+            this(valid, errors, false);
+        }
+
+        public ValidationResult(boolean valid, List<String> errors, boolean truncated) {
             this.valid = valid;
             this.errors = errors != null ? errors : new ArrayList<>();
+            this.truncated = truncated;
         }
 
         public boolean isValid() { return valid; }
         public List<String> getErrors() { return errors; }
+        /** true si au moins une erreur a été écartée, le plafond mx.validation.max-errors étant atteint. */
+        public boolean isTruncated() { return truncated; }
+    }
+
+    /**
+     * Collecteur d'erreurs propre à une invocation: liste allouée à la première erreur,
+     * bornée à maxErrors entrées; toute erreur au-delà est écartée et marque le résultat tronqué.
+     * En fail-fast, la validation est arrêtée dès que le plafond est atteint, sans attendre l'erreur suivante.
+     */
+    public static class ValidationErrorCollector {
+        private final int maxErrors;
+        private final boolean stopAtMax;
+        private List<String> errors;
+        private int errorCount;
+        private boolean truncated;
+
+        ValidationErrorCollector(int maxErrors, boolean stopAtMax) {
+            this.maxErrors = Math.max(1, maxErrors);
+            this.stopAtMax = stopAtMax;
+        }
+
+        /**
+         * Enregistre une erreur.
+         * @return false si l'appelant doit arrêter la validation: erreur écartée (plafond déjà atteint),
+         *         ou plafond atteint par cette erreur en fail-fast
+         */
+        boolean add(String error) {
+            if (errorCount >= maxErrors) {
+                truncated = true;
+                return false;
+            }
+            errorCount++;
+            if (errors == null) errors = new ArrayList<>(Math.min(maxErrors, 16));
+            errors.add(error);
+            return !(stopAtMax && errorCount >= maxErrors);
+        }
+
+        ValidationResult toResult() {
+            if (errorCount == 0) {
+                return new ValidationResult(true, Collections.emptyList(), false);
+            }
+            return new ValidationResult(false, errors, truncated);
+        }
     }
 
     /**
-     * Gestionnaire SAX personnalisé (non utilisé actuellement dans la validation simplifiée).
+     * Adaptateur SAX vers le collecteur de l'invocation en cours (une instance par appel).
+     * Les avertissements XSD sont ignorés; la validation est interrompue quand le collecteur le demande (voir add).
      */
     private static class CustomErrorHandler implements ErrorHandler {
-        private final List<String> errors = new ArrayList<>();
+        private final ValidationErrorCollector errors;
+
+        CustomErrorHandler(ValidationErrorCollector errors) {
+            this.errors = errors;
+        }
 
         @Override
-        public void warning(SAXParseException exception) throws SAXException {
-            errors.add("Warning: " + exception.getMessage());
+        public void warning(SAXParseException exception) {
+            // non bloquant
         }
 
         @Override
         public void error(SAXParseException exception) throws SAXException {
-            errors.add("Error: " + exception.getMessage());
+            if (!errors.add("Error: " + describe(exception))) {
+                throw exception;
+            }
         }
 
         @Override
         public void fatalError(SAXParseException exception) throws SAXException {
-            errors.add("Fatal Error: " + exception.getMessage());
+            errors.add("Fatal Error: " + describe(exception));
             throw exception;
         }
 
-        public List<String> getErrors() {
-            return errors;
+        private static String describe(SAXParseException exception) {
+            return "ligne " + exception.getLineNumber() + ", colonne " + exception.getColumnNumber() + ": " + exception.getMessage();
         }
     }
 }
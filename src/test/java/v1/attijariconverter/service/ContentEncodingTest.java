@@ -0,0 +1,46 @@
+package v1.attijariconverter.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ContentEncodingTest {
+
+    private static final String MT101 = "{4:\n:20:MSG001\n:28D:1/1\n:30:20250813\n:21:INSTR001\n:32B:MAD100,00\n"
+            + ":59:Fournisseur XYZ\n:71A:SHA\n-}\n";
+
+    /** MT101 ci-dessus tel que stocké en "deflate" avant deflate-v2: le premier dictionnaire doit rester inchangé. */
+    private static final String STORED_DEFLATE = "g5WzvsHuwEIMqbQFFrBGBkamBhaGxuCC1tMvOCQIrARa4BoaGOgYGIALXLd8YEGZWVycWlqkEBEZhVzycgEA";
+
+    @Test
+    void storedDeflateContentStaysReadable() throws Exception {
+        try (InputStream in = ContentEncoding.fromKey("deflate").decode(
+                new ByteArrayInputStream(Base64.getDecoder().decode(STORED_DEFLATE)))) {
+            assertEquals(MT101, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void everyEncodingRoundTrips() throws Exception {
+        byte[] data = (MT101 + ":70:Société Générale – Agadir 💶\n").getBytes(StandardCharsets.UTF_8);
+        for (ContentEncoding encoding : ContentEncoding.values()) {
+            byte[] stored = encoding.encode(data, 6);
+            try (InputStream in = ContentEncoding.fromKey(encoding.getKey()).decode(new ByteArrayInputStream(stored))) {
+                assertArrayEquals(data, in.readAllBytes(), encoding.getKey());
+            }
+        }
+    }
+
+    @Test
+    void deflateSettingWritesLatestDictionary() {
+        assertEquals(ContentEncoding.DEFLATE_V2, ContentEncoding.fromSetting(" Deflate "));
+        assertEquals(ContentEncoding.IDENTITY, ContentEncoding.fromSetting("none"));
+        assertEquals(ContentEncoding.IDENTITY, ContentEncoding.fromKey(null));
+    }
+}
@@ -0,0 +1,82 @@
+package v1.attijariconverter.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import v1.attijariconverter.model.ConversionHistory;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Index de conversion_history contre un MongoDB réel (conteneur Docker): création des index déclarés
+ * et absence de COLLSCAN dans les plans des requêtes des repositories. Ignoré si Docker n'est pas disponible.
+ */
+@SpringBootTest(properties = {"mx.history.async.enabled=false", "mx.history.index.explain-on-startup=false"})
+@Testcontainers(disabledWithoutDocker = true)
+class ConversionHistoryIndexServiceTest {
+
+    @Container
+    @ServiceConnection
+    static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+    @Autowired
+    private ConversionHistoryIndexService indexService;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @BeforeEach
+    void populate() {
+        mongoTemplate.dropCollection(ConversionHistory.class);
+        List<ConversionHistory> entries = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < 2000; i++) {
+            ConversionHistory entry = new ConversionHistory(i % 5 == 0 ? "ERROR" : "SUCCESS", "pain.001", "MT101");
+            entry.setConversionDate(now.minusMinutes(i));
+            entry.setOwnerUsername(i % 7 == 0 ? null : "user" + (i % 20));
+            entry.setMxContentHash(String.format("%064x", i));
+            entries.add(entry);
+        }
+        mongoTemplate.insertAll(entries);
+    }
+
+    @Test
+    void createsDeclaredIndexes() {
+        int declared = indexService.ensureIndexes();
+
+        Set<String> names = mongoTemplate.indexOps(ConversionHistory.class).getIndexInfo().stream()
+                .map(IndexInfo::getName).collect(Collectors.toSet());
+        assertEquals(6, declared);
+        assertTrue(names.containsAll(Set.of("owner_date", "owner_status_date", "status_date",
+                "conversion_date", "mx_content_hash", "mt_content_hash")), names.toString());
+    }
+
+    @Test
+    void repositoryQueriesUseIndexes() {
+        indexService.ensureIndexes();
+
+        assertEquals(List.of(), indexService.findCollectionScans());
+    }
+
+    @Test
+    void reportsCollectionScansWithoutIndexes() {
+        mongoTemplate.getCollection("conversion_history").dropIndexes();
+
+        List<String> scans = indexService.findCollectionScans();
+        assertTrue(scans.contains("findSummaries(ownerUsername)"), scans.toString());
+    }
+}
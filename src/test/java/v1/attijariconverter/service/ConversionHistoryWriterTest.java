@@ -0,0 +1,76 @@
+package v1.attijariconverter.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import v1.attijariconverter.model.ConversionHistory;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConversionHistoryWriterTest {
+
+    private MongoTemplate mongoTemplate;
+    private ConversionDailyStatsService dailyStatsService;
+    private ConversionHistoryWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        dailyStatsService = mock(ConversionDailyStatsService.class);
+        writer = new ConversionHistoryWriter();
+        ReflectionTestUtils.setField(writer, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(writer, "dailyStatsService", dailyStatsService);
+        ReflectionTestUtils.setField(writer, "asyncEnabled", false);
+        writer.start();
+    }
+
+    @Test
+    void batchIsCountedOnceAfterInsert() {
+        List<ConversionHistory> batch = List.of(new ConversionHistory(), new ConversionHistory());
+        doThrow(new IllegalStateException("stats indisponibles")).when(dailyStatsService).recordConversions(anyList());
+
+        insert(batch);
+
+        verify(mongoTemplate).insert(batch, ConversionHistory.class);
+        verify(mongoTemplate, never()).save(any());
+        verify(dailyStatsService, times(1)).recordConversions(batch);
+        assertEquals(2, writer.getStats().getWritten());
+        assertEquals(0, writer.getStats().getFailed());
+        assertEquals(1, writer.getStats().getBatches());
+    }
+
+    @Test
+    void failedInsertCountsOnlyEntriesSavedByRetry() {
+        ConversionHistory saved = new ConversionHistory();
+        ConversionHistory lost = new ConversionHistory();
+        List<ConversionHistory> batch = List.of(saved, lost);
+        when(mongoTemplate.insert(anyList(), eq(ConversionHistory.class))).thenThrow(new IllegalStateException("lot refusé"));
+        when(mongoTemplate.save(lost)).thenThrow(new IllegalStateException("entrée refusée"));
+
+        insert(batch);
+
+        verify(mongoTemplate).save(saved);
+        verify(mongoTemplate).save(lost);
+        verify(dailyStatsService, times(1)).recordConversions(List.of(saved));
+        verify(dailyStatsService, never()).recordConversion(any());
+        assertEquals(1, writer.getStats().getWritten());
+        assertEquals(1, writer.getStats().getFailed());
+        assertEquals(0, writer.getStats().getBatches());
+    }
+
+    private void insert(List<ConversionHistory> batch) {
+        ReflectionTestUtils.invokeMethod(writer, "insert", batch);
+    }
+}
@@ -0,0 +1,73 @@
+package v1.attijariconverter.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversionJobServiceTest {
+
+    private ConversionJobService service;
+    private Path workDir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        service = new ConversionJobService();
+        ReflectionTestUtils.setField(service, "workers", 1);
+        ReflectionTestUtils.setField(service, "queueCapacity", 1);
+        ReflectionTestUtils.setField(service, "retentionMinutes", 60L);
+        service.start();
+        workDir = (Path) ReflectionTestUtils.getField(service, "workDir");
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stop();
+    }
+
+    @Test
+    void resultBeingReadIsNotPurged() throws Exception {
+        ConversionJobService.ConversionJob job = expiredJob("job-1", "{1:F01}\n-}\n");
+        Path output = workDir.resolve("job-1.mt101.txt");
+
+        InputStream in = service.openResult(job).orElseThrow();
+        assertEquals('{', in.read());
+        service.purgeExpiredJobs();
+        assertTrue(Files.exists(output), "résultat supprimé pendant la lecture");
+        assertEquals("1:F01}\n-}\n", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+
+        in.close();
+        in.close(); // une double fermeture ne libère pas une autre lecture
+        service.purgeExpiredJobs();
+        assertFalse(Files.exists(output));
+        assertTrue(jobs().isEmpty());
+        assertTrue(service.openResult(job).isEmpty());
+    }
+
+    private ConversionJobService.ConversionJob expiredJob(String id, String mt101) throws Exception {
+        Path output = workDir.resolve(id + ".mt101.txt");
+        Files.writeString(output, mt101, StandardCharsets.UTF_8);
+        ConversionJobService.ConversionJob job = new ConversionJobService.ConversionJob(id, id + ".xml", "user",
+                workDir.resolve(id + ".xml"), output);
+        ReflectionTestUtils.setField(job, "status", ConversionJobService.JobStatus.SUCCESS);
+        ReflectionTestUtils.setField(job, "finishedAt", LocalDateTime.now().minusMinutes(61));
+        jobs().put(id, job);
+        return job;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, ConversionJobService.ConversionJob> jobs() {
+        return (Map<String, ConversionJobService.ConversionJob>) ReflectionTestUtils.getField(service, "jobs");
+    }
+}
@@ -0,0 +1,134 @@
+package v1.attijariconverter.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConversionServiceStreamingTest {
+
+    private static final String HEAD = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <Document xmlns="urn:iso:std:iso:20022:tech:xsd:pain.001.001.03">
+              <CstmrCdtTrfInitn>
+                <GrpHdr>
+                  <MsgId>MSG001</MsgId>
+                  <CreDtTm>2025-08-12T14:30:00</CreDtTm>
+                  <NbOfTxs>4</NbOfTxs>
+                  <InitgPty><Nm>Attijariwafa Bank</Nm></InitgPty>
+                </GrpHdr>
+                <PmtInf>
+                  <PmtInfId>PMT001</PmtInfId>
+                  <PmtMtd>TRF</PmtMtd>
+                  <ReqdExctnDt>2025-08-13</ReqdExctnDt>
+                  <Dbtr><Nm>Entreprise ABC</Nm></Dbtr>
+                  <DbtrAcct><Id><IBAN>MA64011519000001205000000161</IBAN></Id></DbtrAcct>
+                  <DbtrAgt><FinInstnId><BIC>ATIJMAMC</BIC></FinInstnId></DbtrAgt>
+                  <ChrgBr>SHAR</ChrgBr>
+            """;
+
+    private static final String TAIL = """
+                </PmtInf>
+              </CstmrCdtTrfInitn>
+            </Document>
+            """;
+
+    private ConversionService service;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        XSDValidationService xsdValidationService = new XSDValidationService();
+        xsdValidationService.loadSchema();
+        ConversionMetrics metrics = new ConversionMetrics();
+        ReflectionTestUtils.setField(metrics, "registry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(metrics, "historyWriter", new ConversionHistoryWriter());
+        ReflectionTestUtils.setField(metrics, "resultCache", new ConversionResultCache());
+        metrics.init();
+
+        service = new ConversionService();
+        ReflectionTestUtils.setField(service, "xsdValidationService", xsdValidationService);
+        ReflectionTestUtils.setField(service, "mxParsingService", new MXParsingService());
+        ReflectionTestUtils.setField(service, "resultCache", new ConversionResultCache());
+        ReflectionTestUtils.setField(service, "metrics", metrics);
+        ReflectionTestUtils.setField(service, "receiverBic", "BMCEMAMCXXX");
+        ReflectionTestUtils.setField(service, "block2Suffix", "N");
+        ReflectionTestUtils.setField(service, "splitMaxTransactions", 2);
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /** Découpage par nombre de transactions (NbOfTxs déclaré): le premier message part avant la fin de l'entrée. */
+    @Test
+    void firstMessageIsWrittenBeforeInputEnds() throws Exception {
+        PipedOutputStream request = new PipedOutputStream();
+        PipedInputStream in = new PipedInputStream(request, 64 * 1024);
+        CountDownLatch firstMessage = new CountDownLatch(1);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        OutputStream response = new OutputStream() {
+            @Override
+            public void write(int b) {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                received.write(b, off, len);
+                if (received.toString(StandardCharsets.UTF_8).contains("-}\n")) {
+                    firstMessage.countDown();
+                }
+            }
+        };
+        Future<ConversionService.StreamingConversionResult> conversion =
+                executor.submit(() -> service.convertMXToMT101Streaming(in, () -> response));
+
+        // Trois transactions: la troisième ouvre le message 2/2 et clôt donc le premier
+        request.write((HEAD + transaction(1) + transaction(2) + transaction(3)).getBytes(StandardCharsets.UTF_8));
+        request.flush();
+        assertTrue(firstMessage.await(10, TimeUnit.SECONDS), "premier message non reçu avant la fin de l'entrée");
+        String first;
+        synchronized (response) {
+            first = received.toString(StandardCharsets.UTF_8);
+        }
+        assertTrue(first.contains(":28D:1/2\n") && !first.contains("INSTR003"), first);
+
+        request.write((transaction(4) + TAIL).getBytes(StandardCharsets.UTF_8));
+        request.close();
+        ConversionService.StreamingConversionResult result = conversion.get(10, TimeUnit.SECONDS);
+        assertTrue(result.isSuccess(), String.valueOf(result.getValidationErrors()));
+        assertEquals(4, result.getTransactionCount());
+        assertTrue(received.toString(StandardCharsets.UTF_8).contains(":28D:2/2\n"));
+    }
+
+    private static String transaction(int n) {
+        String id = String.format("%03d", n);
+        return """
+                      <CdtTrfTxInf>
+                        <PmtId><InstrId>INSTR%s</InstrId><EndToEndId>E2E%s</EndToEndId></PmtId>
+                        <Amt><InstdAmt Ccy="MAD">100.00</InstdAmt></Amt>
+                        <CdtrAgt><FinInstnId><BIC>BMCEMAMC</BIC></FinInstnId></CdtrAgt>
+                        <Cdtr><Nm>Fournisseur XYZ</Nm></Cdtr>
+                        <CdtrAcct><Id><IBAN>MA64007007000000000000012345</IBAN></Id></CdtrAcct>
+                      </CdtTrfTxInf>
+                """.formatted(id, id);
+    }
+}
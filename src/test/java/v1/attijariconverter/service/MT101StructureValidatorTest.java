@@ -0,0 +1,182 @@
+package v1.attijariconverter.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MT101StructureValidatorTest {
+
+    /** Deux messages (découpage), trois transactions; numéros de ligne en commentaire. */
+    private static final String VALID = String.join("\n",
+            "{1:F01BMCEMAMCXXX0000000000}",     // 1
+            "{2:I101BMCEMAMCXXXN}",             // 2
+            "{3:{108:REF20250813103000}}",      // 3
+            "{4:",                              // 4
+            ":20:MSG001",                       // 5
+            ":28D:1/2",                         // 6
+            ":30:20250813",                     // 7
+            ":21:INSTR001",                     // 8
+            ":32B:MAD100,00",                   // 9
+            ":50K:Société Générale – Agadir",   // 10
+            ":59:Fournisseur XYZ",              // 11
+            ":71A:SHA",                         // 12
+            ":70:Facture 1",                    // 13
+            ":21:INSTR002",                     // 14
+            ":32B:MAD250,50",                   // 15
+            ":59:Fournisseur ABC",              // 16
+            ":71A:OUR",                         // 17
+            "-}",                               // 18
+            "",                                 // 19
+            "{1:F01BMCEMAMCXXX0000000000}",     // 20
+            "{2:I101BMCEMAMCXXXN}",             // 21
+            "{3:{108:REF20250813103000}}",      // 22
+            "{4:",                              // 23
+            ":20:MSG001",                       // 24
+            ":28D:2/2",                         // 25
+            ":30:20250813",                     // 26
+            ":21:INSTR003",                     // 27
+            ":32B:EUR10,00",                    // 28
+            ":59:Bénéficiaire 💶",              // 29
+            ":71A:BEN",                         // 30
+            "-}",                               // 31
+            "") + "\n";
+
+    @Test
+    void acceptsWellFormedMessages() throws Exception {
+        assertEquals(List.of(), validate(VALID));
+
+        // Mêmes verdicts en octets UTF-8, par morceaux coupant les caractères multi-octets, et à travers tap()
+        byte[] bytes = VALID.getBytes(StandardCharsets.UTF_8);
+        for (int chunk : new int[]{1, 3, 7, 8192}) {
+            MT101StructureValidator validator = new MT101StructureValidator(100);
+            for (int i = 0; i < bytes.length; i += chunk) {
+                validator.feed(bytes, i, Math.min(chunk, bytes.length - i));
+            }
+            List<String> errors = new ArrayList<>();
+            assertTrue(validator.finish(errors), "chunk " + chunk);
+            assertEquals(List.of(), errors);
+        }
+        MT101StructureValidator validator = new MT101StructureValidator(100);
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        try (OutputStream out = validator.tap(copy)) {
+            out.write(bytes, 0, 10);
+            out.write(bytes[10]);
+            out.write(bytes, 11, bytes.length - 11);
+        }
+        assertArrayEquals(bytes, copy.toByteArray());
+        assertTrue(validator.finish(new ArrayList<>()));
+
+        // Bloc 5 (Trailer) après la fin de bloc 4
+        assertEquals(List.of(), validate(VALID.replaceFirst("-}\n", "-}\n{5:{CHK:123456789ABC}}\n")));
+    }
+
+    @Test
+    void reportsDroppedFields() {
+        assertEquals(List.of("Ligne 14: Champ :59: (Beneficiary Customer) manquant (transaction 2)"),
+                validate(VALID.replace(":59:Fournisseur ABC\n", "")));
+        assertEquals(List.of("Ligne 7: Champ :20: (Transaction Reference) manquant (Séquence A)"),
+                validate(VALID.replaceFirst(":20:MSG001\n", "")));
+        assertEquals(List.of("Ligne 1: Bloc 1 (Basic Header) manquant"),
+                validate(VALID.replaceFirst("\\{1:[^\n]*\n", "")));
+        assertEquals(List.of("Ligne 27: Champ :21: (Transaction Reference par transaction) manquant (aucune transaction)"),
+                validate(VALID.replaceAll("(?s):21:INSTR003\n.*:71A:BEN\n", "")));
+    }
+
+    @Test
+    void reportsDuplicatedAndSwappedFields() {
+        assertEquals(List.of("Ligne 13: Champ :71A: en double (transaction 1)"),
+                validate(VALID.replace(":71A:SHA\n", ":71A:SHA\n:71A:SHA\n")));
+        assertEquals(List.of("Ligne 12: Champ :59: hors ordre (transaction 1)"),
+                validate(VALID.replace(":59:Fournisseur XYZ\n:71A:SHA\n", ":71A:SHA\n:59:Fournisseur XYZ\n")));
+        assertEquals(List.of("Ligne 7: Champ :28D: hors ordre (Séquence A)"),
+                validate(VALID.replace(":28D:1/2\n:30:20250813\n", ":30:20250813\n:28D:1/2\n")));
+        assertEquals(List.of("Ligne 10: Champ :30: de Séquence A dans la transaction 1"),
+                validate(VALID.replace(":32B:MAD100,00\n", ":32B:MAD100,00\n:30:20250813\n")));
+    }
+
+    @Test
+    void reportsMissingEndOfBlock4() {
+        assertEquals(List.of("Ligne 18: Ligne vide inattendue dans le message", "Ligne 19: Bloc 4 non terminé (-} manquant)"),
+                validate(VALID.replaceFirst("-}\n", "")));
+        assertEquals(List.of("Ligne 31: Bloc 4 non terminé (-} manquant)"),
+                validate(VALID.substring(0, VALID.lastIndexOf("-}\n"))));
+    }
+
+    @Test
+    void reportsInconsistentMessageIndex() {
+        assertEquals(List.of("Ligne 25: Champ :28D: incohérent: total 3 au lieu de 2"),
+                validate(VALID.replace(":28D:2/2", ":28D:2/3")));
+        assertEquals(List.of("Ligne 25: Champ :28D: incohérent: message 2 numéroté 1",
+                        "Ligne 33: Champ :28D: incohérent: 1 messages pour un total annoncé de 2"),
+                validate(VALID.replace(":28D:2/2", ":28D:1/2")));
+        assertEquals(List.of("Ligne 6: Format de :28D: invalide (attendu rang/total)"),
+                validate(VALID.replace(":28D:1/2", ":28D:1-2")));
+    }
+
+    @Test
+    void reportsUnknownTags() {
+        assertEquals(List.of("Ligne 13: Champ :72: inattendu dans le bloc 4"),
+                validate(VALID.replace(":70:Facture 1", ":72:Facture 1")));
+        assertEquals(List.of("Ligne 19: Contenu inattendu hors bloc 4"),
+                validate(VALID.replaceFirst("-}\n\n", "-}\nbruit\n")));
+    }
+
+    @Test
+    void omissionExplainedByGenerationIsNotRepeated() {
+        String noCharges = VALID.replace(":71A:OUR\n", "");
+        List<String> errors = new ArrayList<>(List.of("Code de frais inconnu pour :71A: ('XXXX')"));
+        MT101StructureValidator validator = new MT101StructureValidator(100);
+        validator.feed(noCharges);
+        assertFalse(validator.finish(errors));
+        assertEquals(List.of("Code de frais inconnu pour :71A: ('XXXX')"), errors);
+
+        // Séquence A: une erreur de génération explique l'absence dans tous les messages du découpage
+        String noDate = VALID.replace(":30:20250813\n", "");
+        errors = new ArrayList<>(List.of("Format de :30: invalide (attendu AAAAMMJJ)"));
+        validator = new MT101StructureValidator(100);
+        validator.feed(noDate);
+        assertFalse(validator.finish(errors));
+        assertEquals(List.of("Format de :30: invalide (attendu AAAAMMJJ)"), errors);
+
+        // Autre absence du même champ, non expliquée: toujours signalée
+        errors = new ArrayList<>(List.of("Code de frais inconnu pour :71A: ('XXXX')"));
+        validator = new MT101StructureValidator(100);
+        validator.feed(noCharges.replace(":71A:SHA\n", ""));
+        assertFalse(validator.finish(errors));
+        assertEquals(2, errors.size());
+    }
+
+    @Test
+    void errorsBeyondMaxAreCounted() {
+        String noBeneficiary = VALID.replaceAll(":59:[^\n]*\n", "");
+        List<String> errors = new ArrayList<>();
+        MT101StructureValidator validator = new MT101StructureValidator(1);
+        validator.feed(noBeneficiary);
+        assertFalse(validator.finish(errors));
+        assertEquals(List.of("Ligne 8: Champ :59: (Beneficiary Customer) manquant (transaction 1)",
+                "... et 2 autre(s) erreur(s) de structure MT101"), errors);
+
+        errors = new ArrayList<>();
+        assertFalse(new MT101StructureValidator(100).finish(errors));
+        assertEquals(List.of("Bloc 1 (Basic Header) manquant", "Bloc 2 (Application Header) manquant",
+                "Bloc 4 (Text Block) manquant"), errors);
+    }
+
+    private static List<String> validate(String mt101) {
+        MT101StructureValidator validator = new MT101StructureValidator(100);
+        validator.feed(mt101);
+        List<String> errors = new ArrayList<>();
+        boolean valid = validator.finish(errors);
+        assertEquals(errors.isEmpty(), valid);
+        return errors;
+    }
+}
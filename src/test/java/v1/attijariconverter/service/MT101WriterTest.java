@@ -0,0 +1,157 @@
+package v1.attijariconverter.service;
+
+import org.junit.jupiter.api.Test;
+import v1.attijariconverter.model.MXMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Parité de MT101Writer avec la construction par StringBuilder qu'il remplace
+ * (String.getBytes(UTF_8), replace('.', ','), replaceAll("-", "").substring(0, 8)).
+ */
+class MT101WriterTest {
+
+    /** ASCII, 2 et 3 octets, paire de surrogates (4 octets), surrogates isolées (deviennent '?'). */
+    private static final List<String> TEXTS = List.of(
+            "",
+            "Fournisseur XYZ",
+            "Société Générale – Casablanca",
+            "شركة المغرب",
+            "Paiement 💶 reçu",
+            "haute seule \uD83D fin",
+            "basse seule \uDCB6 fin",
+            "\uD83D",
+            "fin sur haute \uD83D",
+            "\uDCB6\uD83D inversées"
+    );
+
+    @Test
+    void textMatchesStringGetBytes() throws Exception {
+        for (String text : TEXTS) {
+            MT101Writer writer = new MT101Writer(4);
+            writer.text(text);
+            byte[] expected = text.getBytes(StandardCharsets.UTF_8);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writer.writeTo(out);
+            assertArrayEquals(expected, out.toByteArray(), text);
+            assertEquals(expected.length, writer.length(), text);
+            assertEquals(text.length(), writer.charLength(), text);
+            assertEquals(new String(expected, StandardCharsets.UTF_8), writer.toString(), text);
+        }
+    }
+
+    @Test
+    void appendKeepsBytesAndCharCounts() {
+        MT101Writer source = new MT101Writer(8);
+        for (String text : TEXTS) {
+            source.text(text).newline();
+        }
+        MT101Writer target = new MT101Writer(1);
+        target.ch('>').append(source);
+        assertEquals(">" + source, target.toString());
+        assertEquals(source.length() + 1, target.length());
+        assertEquals(source.charLength() + 1, target.charLength());
+    }
+
+    @Test
+    void amountUsesDecimalComma() {
+        String[] amounts = {"100.00", "100", "1234567.5", "0.01", "1.2.3", ".5", "12٫50.00", "1 000.00", "١٠٠.٥"};
+        for (String amount : amounts) {
+            List<String> errors = new ArrayList<>();
+            String mt = new MT101Writer(16).sequenceB(payment("MAD", amount, "SHAR"), errors).toString();
+            assertTrue(mt.contains(":32B:MAD" + amount.replace('.', ',') + "\n"), amount);
+            assertEquals(List.of(), errors, amount);
+        }
+    }
+
+    @Test
+    void executionDateMatchesReference() {
+        String[] dates = {"20250813", "2025-08-13", "2025-08-13T10:00:00", "2025-08-1", "2025-8-13", "2025-0813",
+                "--20250813", "2025081", "202508130", "2025-08-1x", "2025O813", "20250813 ", "abcdefgh", "-", "٢٠٢٥٠٨١٣"};
+        for (String date : dates) {
+            MXMessage message = new MXMessage();
+            message.setMessageId("MSG001");
+            message.setRequestedExecutionDate(date);
+            List<String> errors = new ArrayList<>();
+            String mt = new MT101Writer(16).sequenceA(message, errors, 1, 1).toString();
+
+            List<String> expectedErrors = new ArrayList<>();
+            String expectedLine = referenceExecutionDate(date, expectedErrors);
+            assertEquals(expectedErrors, errors, date);
+            if (expectedLine != null) {
+                assertTrue(mt.endsWith(":28D:1/1\n" + expectedLine), date);
+            } else {
+                assertTrue(mt.endsWith(":28D:1/1\n") && !mt.contains(":30:"), date);
+            }
+        }
+    }
+
+    @Test
+    void chargesCodeMapsIsoAndMtValues() {
+        String[][] cases = {
+                {"OUR", "OUR"}, {"BEN", "BEN"}, {"SHA", "SHA"},
+                {"DEBT", "OUR"}, {"CRED", "BEN"}, {"SHAR", "SHA"}, {"SLEV", "SHA"},
+                {"debt", "OUR"}, {"Shar", "SHA"}, {"sha", "SHA"}
+        };
+        for (String[] c : cases) {
+            List<String> errors = new ArrayList<>();
+            String mt = new MT101Writer(16).sequenceB(payment("MAD", "1.00", c[0]), errors).toString();
+            assertTrue(mt.contains(":71A:" + c[1] + "\n"), c[0]);
+            assertEquals(List.of(), errors, c[0]);
+        }
+        for (String unknown : new String[]{"XYZ", "SHARE", "SH", "DEB", "OURS"}) {
+            List<String> errors = new ArrayList<>();
+            String mt = new MT101Writer(16).sequenceB(payment("MAD", "1.00", unknown), errors).toString();
+            assertFalse(mt.contains(":71A:"), unknown);
+            assertEquals(List.of("Code de frais inconnu pour :71A: ('" + unknown + "')"), errors, unknown);
+        }
+        // Absence simple: signalée par MT101StructureValidator, pas par le générateur
+        List<String> errors = new ArrayList<>();
+        String mt = new MT101Writer(16).sequenceB(payment("MAD", "1.00", " "), errors).toString();
+        assertFalse(mt.contains(":71A:"));
+        assertEquals(List.of(), errors);
+    }
+
+    @Test
+    void bloc3AndNumbersArePadded() {
+        MT101Writer writer = new MT101Writer(2);
+        writer.bloc3(LocalDateTime.of(2025, 1, 2, 3, 4, 5)).number(0).ch('/').number(1234567);
+        assertEquals("{3:{108:REF20250102030405}}\n0/1234567", writer.toString());
+        assertEquals(writer.toString().length(), writer.charLength());
+    }
+
+    /** Construction :30: d'origine: ligne attendue (null si rejetée) et message d'erreur. */
+    private static String referenceExecutionDate(String value, List<String> errors) {
+        String date;
+        try {
+            date = value.contains("-") ? value.replaceAll("-", "").substring(0, 8) : value;
+        } catch (Exception e) {
+            errors.add("Format de :30: invalide (exception de parsing)");
+            return null;
+        }
+        if (!date.matches("[0-9]{8}")) {
+            errors.add("Format de :30: invalide (attendu AAAAMMJJ)");
+            return null;
+        }
+        return ":30:" + date + "\n";
+    }
+
+    private static MXMessage.PaymentInstruction payment(String currency, String amount, String chargeBearer) {
+        MXMessage.PaymentInstruction payment = new MXMessage.PaymentInstruction();
+        payment.setInstructionId("INSTR001");
+        payment.setCurrency(currency);
+        payment.setAmount(amount);
+        payment.setCreditorName("Fournisseur XYZ");
+        payment.setChargeBearer(chargeBearer);
+        return payment;
+    }
+}
@@ -0,0 +1,182 @@
+package v1.attijariconverter.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class XSDValidationServiceConcurrencyTest {
+
+    private static final String VALID = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <Document xmlns="urn:iso:std:iso:20022:tech:xsd:pain.001.001.03">
+              <CstmrCdtTrfInitn>
+                <GrpHdr>
+                  <MsgId>MSG001</MsgId>
+                  <CreDtTm>2025-08-12T14:30:00</CreDtTm>
+                  <NbOfTxs>1</NbOfTxs>
+                  <InitgPty><Nm>Attijariwafa Bank</Nm></InitgPty>
+                </GrpHdr>
+                <PmtInf>
+                  <PmtInfId>PMT001</PmtInfId>
+                  <PmtMtd>TRF</PmtMtd>
+                  <ReqdExctnDt>2025-08-13</ReqdExctnDt>
+                  <Dbtr><Nm>Entreprise ABC</Nm></Dbtr>
+                  <DbtrAcct><Id><IBAN>MA64011519000001205000000161</IBAN></Id></DbtrAcct>
+                  <DbtrAgt><FinInstnId><BIC>ATIJMAMC</BIC></FinInstnId></DbtrAgt>
+                  <ChrgBr>SHAR</ChrgBr>
+                  <CdtTrfTxInf>
+                    <PmtId><InstrId>INSTR001</InstrId><EndToEndId>E2E001</EndToEndId></PmtId>
+                    <Amt><InstdAmt Ccy="MAD">100.00</InstdAmt></Amt>
+                    <CdtrAgt><FinInstnId><BIC>BMCEMAMC</BIC></FinInstnId></CdtrAgt>
+                    <Cdtr><Nm>Fournisseur XYZ</Nm></Cdtr>
+                    <CdtrAcct><Id><IBAN>MA64007007000000000000012345</IBAN></Id></CdtrAcct>
+                  </CdtTrfTxInf>
+                </PmtInf>
+              </CstmrCdtTrfInitn>
+            </Document>
+            """.strip();
+
+    /** Documents aux erreurs distinctes: un mélange de résultats doit se voir immédiatement. */
+    private static final List<String> DOCUMENTS = List.of(
+            VALID,
+            VALID.replace("<ChrgBr>SHAR</ChrgBr>", "<ChrgBr>OUR</ChrgBr>"),
+            VALID.replace("<MsgId>MSG001</MsgId>", ""),
+            VALID.replace("<BIC>BMCEMAMC</BIC>", "<BIC>bad</BIC>").replace("<PmtMtd>TRF</PmtMtd>", "<PmtMtd>XXX</PmtMtd>"),
+            VALID.replace("</Document>", ""),
+            VALID.replace("pain.001.001.03", "pain.001.001.09")
+    );
+
+    private XSDValidationService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new XSDValidationService();
+        service.loadSchema();
+    }
+
+    @Test
+    void concurrentValidationsKeepTheirOwnErrors() throws Exception {
+        List<XSDValidationService.ValidationResult> expected = new ArrayList<>();
+        for (String doc : DOCUMENTS) {
+            expected.add(service.validatePain001(doc));
+        }
+        assertTrue(expected.get(0).isValid());
+        for (int i = 1; i < expected.size(); i++) {
+            assertFalse(expected.get(i).isValid(), "document " + i);
+        }
+
+        int threads = 64;
+        int tasks = 4000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int t = 0; t < tasks; t++) {
+                int index = t % DOCUMENTS.size();
+                Callable<Integer> task = () -> {
+                    start.await();
+                    XSDValidationService.ValidationResult result = service.validatePain001(DOCUMENTS.get(index));
+                    assertEquals(expected.get(index).isValid(), result.isValid(), "document " + index);
+                    assertEquals(expected.get(index).getErrors(), result.getErrors(), "document " + index);
+                    return index;
+                };
+                futures.add(pool.submit(task));
+            }
+            start.countDown();
+            for (Future<Integer> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void failFastStopsAtFirstError() throws Exception {
+        // Une seule erreur en tête de document, suivie d'un volume important de transactions valides
+        String tx = VALID.substring(VALID.indexOf("<CdtTrfTxInf>"), VALID.indexOf("</PmtInf>"));
+        StringBuilder doc = new StringBuilder(VALID.replace("</GrpHdr>", "<Inconnu/></GrpHdr>"));
+        int insertAt = doc.indexOf("</PmtInf>");
+        doc.insert(insertAt, tx.repeat(20_000));
+        byte[] bytes = doc.toString().getBytes(StandardCharsets.UTF_8);
+
+        XSDValidationService.ValidationResult all = service.validateAgainstSchema(doc.toString());
+        assertEquals(1, all.getErrors().size());
+
+        ReflectionTestUtils.setField(service, "failFast", true);
+        CountingInputStream in = new CountingInputStream(new ByteArrayInputStream(bytes));
+        XSDValidationService.ValidationResult result = service.validateAgainstSchema(in);
+        assertFalse(result.isValid());
+        assertEquals(all.getErrors(), result.getErrors());
+        assertFalse(result.isTruncated());
+        assertTrue(in.read < bytes.length / 100, "lu " + in.read + " octets sur " + bytes.length);
+    }
+
+    @Test
+    void exactlyMaxErrorsIsNotTruncated() {
+        XSDValidationService.ValidationResult all = service.validatePain001(DOCUMENTS.get(3));
+        assertTrue(all.getErrors().size() > 1);
+        assertFalse(all.isTruncated());
+        ReflectionTestUtils.setField(service, "maxErrors", all.getErrors().size());
+        XSDValidationService.ValidationResult result = service.validatePain001(DOCUMENTS.get(3));
+        assertEquals(all.getErrors(), result.getErrors());
+        assertFalse(result.isTruncated());
+    }
+
+    @Test
+    void errorListIsCapped() {
+        ReflectionTestUtils.setField(service, "maxErrors", 2);
+        StringBuilder manyErrors = new StringBuilder(VALID);
+        String badTx = "<CdtTrfTxInf><PmtId><EndToEndId>E2E</EndToEndId></PmtId><Amt><InstdAmt Ccy=\"MAD\">1</InstdAmt></Amt>"
+                + "<Cdtr><Nm>X</Nm></Cdtr><CdtrAcct><Id><IBAN>bad</IBAN></Id></CdtrAcct></CdtTrfTxInf>";
+        int insertAt = manyErrors.indexOf("</PmtInf>");
+        for (int i = 0; i < 50; i++) {
+            manyErrors.insert(insertAt, badTx);
+        }
+        XSDValidationService.ValidationResult result = service.validatePain001(manyErrors.toString());
+        assertFalse(result.isValid());
+        assertEquals(2, result.getErrors().size());
+        assertTrue(result.isTruncated());
+    }
+
+    /** Octets effectivement lus par le validateur. */
+    private static class CountingInputStream extends FilterInputStream {
+        private long read;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) read++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) read += n;
+            return n;
+        }
+    }
+}